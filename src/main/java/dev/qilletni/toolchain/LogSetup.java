@@ -1,6 +1,9 @@
 package dev.qilletni.toolchain;
 
+import dev.qilletni.toolchain.logging.ProgressDisplayAppender;
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LogEvent;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.appender.ConsoleAppender;
 import org.apache.logging.log4j.core.appender.SocketAppender;
@@ -8,6 +11,7 @@ import org.apache.logging.log4j.core.config.LoggerConfig;
 import org.apache.logging.log4j.core.layout.JsonLayout;
 import org.apache.logging.log4j.core.net.Protocol;
 
+import java.io.Closeable;
 import java.nio.charset.StandardCharsets;
 
 public class LogSetup {
@@ -70,4 +74,63 @@ public class LogSetup {
         ctx.updateLoggers();
     }
 
+    /**
+     * Prints the log events <code>--verbose</code> would add to the console, until the returned handle is closed. The
+     * daemon uses this for verbose clients, as its console otherwise only follows its own <code>--verbose</code>.
+     * Errors are left out, as they're always printed.
+     *
+     * @return The handle that removes the added output when closed
+     */
+    public static Closeable addVerboseConsole() {
+        if (QilletniToolchainApplication.isVerbose()) {
+            return () -> {};
+        }
+
+        var ctx = (LoggerContext) LogManager.getContext(false);
+        var cfg = ctx.getConfiguration();
+
+        var appender = new VerboseConsoleAppender();
+        appender.start();
+
+        cfg.getRootLogger().addAppender(appender, null, null);
+        for (LoggerConfig lc : cfg.getLoggers().values()) {
+            lc.addAppender(appender, null, null);
+        }
+
+        ctx.updateLoggers();
+
+        return () -> {
+            cfg.getRootLogger().removeAppender(appender.getName());
+            for (LoggerConfig lc : cfg.getLoggers().values()) {
+                lc.removeAppender(appender.getName());
+            }
+
+            ctx.updateLoggers();
+            appender.stop();
+        };
+    }
+
+    /**
+     * Prints the warnings and info messages the console leaves out without <code>--verbose</code>.
+     */
+    private static class VerboseConsoleAppender extends ProgressDisplayAppender {
+
+        VerboseConsoleAppender() {
+            super("VerboseConsole", null, null);
+        }
+
+        @Override
+        public void append(LogEvent event) {
+            // Already printed by ProgressDisplay itself, or by the configured console
+            if (event.getMarker() != null && event.getMarker().getName().equals("PRETTY_PRINTED")) {
+                return;
+            }
+
+            if (event.getLevel().isMoreSpecificThan(Level.ERROR)) {
+                return;
+            }
+
+            super.append(event);
+        }
+    }
 }
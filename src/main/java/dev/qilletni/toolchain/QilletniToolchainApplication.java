@@ -1,6 +1,9 @@
 package dev.qilletni.toolchain;
 
+import dev.qilletni.toolchain.command.CommandBench;
 import dev.qilletni.toolchain.command.CommandBuild;
+import dev.qilletni.toolchain.command.CommandCds;
+import dev.qilletni.toolchain.command.CommandDaemon;
 import dev.qilletni.toolchain.command.CommandDoc;
 import dev.qilletni.toolchain.command.CommandInit;
 import dev.qilletni.toolchain.command.CommandPersist;
@@ -14,7 +17,7 @@ import picocli.CommandLine;
 import java.util.Arrays;
 import java.util.stream.Collectors;
 
-@CommandLine.Command(name = "qilletni", versionProvider = VersionProvider.class, subcommands = {CommandRun.class, CommandBuild.class, CommandDoc.class, CommandInit.class, CommandPersist.class})
+@CommandLine.Command(name = "qilletni", versionProvider = VersionProvider.class, subcommands = {CommandRun.class, CommandBuild.class, CommandDoc.class, CommandInit.class, CommandPersist.class, CommandDaemon.class, CommandCds.class, CommandBench.class})
 public class QilletniToolchainApplication {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(QilletniToolchainApplication.class);
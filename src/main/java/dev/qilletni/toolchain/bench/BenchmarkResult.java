@@ -0,0 +1,65 @@
+package dev.qilletni.toolchain.bench;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The results of a {@link ProgramBenchmark}. All times are in nanoseconds.
+ *
+ * @param program                     The benchmarked .ql file
+ * @param warmupIterations            The number of unmeasured iterations
+ * @param measureIterations           The number of measured iterations
+ * @param meanNanos                   The mean time of an iteration
+ * @param p50Nanos                    The median time of an iteration
+ * @param p99Nanos                    The 99th percentile time of an iteration
+ * @param minNanos                    The fastest iteration
+ * @param maxNanos                    The slowest iteration
+ * @param allocatedBytesPerIteration  The mean bytes allocated by an iteration, or -1 if it couldn't be measured
+ * @param gcCount                     The number of garbage collections during the measured iterations
+ * @param gcTimeMillis                The time spent in garbage collection during the measured iterations, in milliseconds
+ * @param iterationNanos              The time of every measured iteration, in order
+ */
+public record BenchmarkResult(Path program, int warmupIterations, int measureIterations, double meanNanos,
+                              long p50Nanos, long p99Nanos, long minNanos, long maxNanos,
+                              double allocatedBytesPerIteration, long gcCount, long gcTimeMillis,
+                              List<Long> iterationNanos) {
+
+    /**
+     * Serializes the results, along with the toolchain and library versions they were measured with.
+     *
+     * @param toolchainVersion            The version of the toolchain
+     * @param libraries                   The <code>name@version</code> of every loaded library
+     * @return The results as pretty-printed JSON
+     */
+    public String toJson(String toolchainVersion, List<String> libraries) {
+        var root = new JsonObject();
+        root.addProperty("program", program.toString());
+        root.addProperty("toolchainVersion", toolchainVersion);
+        root.addProperty("javaVersion", Runtime.version().toString());
+
+        var librariesArray = new JsonArray();
+        libraries.forEach(librariesArray::add);
+        root.add("libraries", librariesArray);
+
+        root.addProperty("warmupIterations", warmupIterations);
+        root.addProperty("measureIterations", measureIterations);
+        root.addProperty("meanNanos", meanNanos);
+        root.addProperty("p50Nanos", p50Nanos);
+        root.addProperty("p99Nanos", p99Nanos);
+        root.addProperty("minNanos", minNanos);
+        root.addProperty("maxNanos", maxNanos);
+        root.addProperty("allocatedBytesPerIteration", allocatedBytesPerIteration);
+        root.addProperty("gcCount", gcCount);
+        root.addProperty("gcTimeMillis", gcTimeMillis);
+
+        var iterations = new JsonArray();
+        iterationNanos.forEach(iterations::add);
+        root.add("iterationNanos", iterations);
+
+        return new GsonBuilder().setPrettyPrinting().create().toJson(root) + "\n";
+    }
+}
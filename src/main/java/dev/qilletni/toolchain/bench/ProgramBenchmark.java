@@ -0,0 +1,148 @@
+package dev.qilletni.toolchain.bench;
+
+import com.sun.management.ThreadMXBean;
+import dev.qilletni.toolchain.run.LibraryEnvironment;
+import dev.qilletni.toolchain.run.OutputCapture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Benchmarks a program by running it repeatedly with an already loaded {@link LibraryEnvironment}, each iteration on a
+ * fresh program runner. Warmup iterations are run first and not measured.
+ */
+public class ProgramBenchmark {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProgramBenchmark.class);
+
+    private final LibraryEnvironment environment;
+    private final boolean showOutput;
+
+    /**
+     * @param environment The environment to run the program with
+     * @param showOutput  If the program's output should be printed, instead of being discarded
+     */
+    public ProgramBenchmark(LibraryEnvironment environment, boolean showOutput) {
+        this.environment = environment;
+        this.showOutput = showOutput;
+    }
+
+    /**
+     * Runs the benchmark. Allocation is measured for the current thread only, so it doesn't include threads the
+     * program starts itself.
+     *
+     * @param program           The .ql file to benchmark
+     * @param warmupIterations  The number of unmeasured iterations to run first
+     * @param measureIterations The number of measured iterations
+     * @return The results, or throws if any iteration fails
+     */
+    public BenchmarkResult run(Path program, int warmupIterations, int measureIterations) throws IOException {
+        var threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var measureAllocation = threadMXBean.isThreadAllocatedMemorySupported() && threadMXBean.isThreadAllocatedMemoryEnabled();
+
+        // Output is discarded rather than printed, so terminal speed doesn't affect the results
+        try (var outputCapture = showOutput ? null : OutputCapture.install()) {
+            for (int i = 0; i < warmupIterations; i++) {
+                LOGGER.debug("Warmup iteration {}", i + 1);
+                runIteration(outputCapture, program);
+            }
+
+            return measure(outputCapture, program, warmupIterations, measureIterations, threadMXBean, measureAllocation);
+        }
+    }
+
+    private BenchmarkResult measure(OutputCapture outputCapture, Path program, int warmupIterations, int measureIterations, ThreadMXBean threadMXBean, boolean measureAllocation) throws IOException {
+        var iterationNanos = new long[measureIterations];
+        var allocatedBytes = new long[measureIterations];
+
+        var gcCountBefore = totalGcCount();
+        var gcTimeBefore = totalGcTimeMillis();
+
+        for (int i = 0; i < measureIterations; i++) {
+            LOGGER.debug("Measurement iteration {}", i + 1);
+
+            var allocatedBefore = measureAllocation ? threadMXBean.getCurrentThreadAllocatedBytes() : 0;
+            var start = System.nanoTime();
+
+            runIteration(outputCapture, program);
+
+            iterationNanos[i] = System.nanoTime() - start;
+            allocatedBytes[i] = measureAllocation ? threadMXBean.getCurrentThreadAllocatedBytes() - allocatedBefore : -1;
+        }
+
+        var sortedNanos = iterationNanos.clone();
+        Arrays.sort(sortedNanos);
+
+        return new BenchmarkResult(
+                program,
+                warmupIterations,
+                measureIterations,
+                Arrays.stream(iterationNanos).average().orElse(0),
+                percentile(sortedNanos, 50),
+                percentile(sortedNanos, 99),
+                sortedNanos.length > 0 ? sortedNanos[0] : 0,
+                sortedNanos.length > 0 ? sortedNanos[sortedNanos.length - 1] : 0,
+                measureAllocation ? Arrays.stream(allocatedBytes).average().orElse(0) : -1,
+                totalGcCount() - gcCountBefore,
+                totalGcTimeMillis() - gcTimeBefore,
+                toList(iterationNanos));
+    }
+
+    private void runIteration(OutputCapture outputCapture, Path program) throws IOException {
+        int exitCode;
+
+        if (outputCapture == null) {
+            exitCode = environment.runProgram(program);
+        } else {
+            try (var discarded = outputCapture.capture()) {
+                exitCode = environment.runProgram(program);
+            }
+        }
+
+        if (exitCode != 0) {
+            throw new IOException("%s exited with code %d".formatted(program.getFileName(), exitCode));
+        }
+    }
+
+    /**
+     * Gets a percentile with the nearest-rank method.
+     */
+    static long percentile(long[] sortedValues, int percentile) {
+        if (sortedValues.length == 0) {
+            return 0;
+        }
+
+        var rank = (int) Math.ceil(percentile / 100.0 * sortedValues.length);
+        return sortedValues[Math.max(0, rank - 1)];
+    }
+
+    private static long totalGcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionCount)
+                .filter(count -> count > 0)
+                .sum();
+    }
+
+    private static long totalGcTimeMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(GarbageCollectorMXBean::getCollectionTime)
+                .filter(time -> time > 0)
+                .sum();
+    }
+
+    private static List<Long> toList(long[] values) {
+        var list = new ArrayList<Long>(values.length);
+        for (var value : values) {
+            list.add(value);
+        }
+
+        return list;
+    }
+}
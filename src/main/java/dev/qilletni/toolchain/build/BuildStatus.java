@@ -0,0 +1,37 @@
+package dev.qilletni.toolchain.build;
+
+/**
+ * How the build of a single library ended.
+ */
+public enum BuildStatus {
+    /**
+     * The .qll was packaged from the library's sources and native jar
+     */
+    PACKAGED(true),
+    /**
+     * The .qll was copied from the build cache
+     */
+    RESTORED(true),
+    /**
+     * Nothing changed since the last build, so the existing .qll was kept
+     */
+    UP_TO_DATE(true),
+    /**
+     * The library couldn't be built
+     */
+    FAILED(false),
+    /**
+     * The library wasn't built, as a library it depends on failed
+     */
+    SKIPPED(false);
+
+    private final boolean successful;
+
+    BuildStatus(boolean successful) {
+        this.successful = successful;
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+}
@@ -0,0 +1,188 @@
+package dev.qilletni.toolchain.build;
+
+import dev.qilletni.api.lib.qll.QilletniInfoData;
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.VersionProvider;
+import dev.qilletni.toolchain.logging.ProgressDisplay;
+import dev.qilletni.toolchain.qll.BuildCache;
+import dev.qilletni.toolchain.qll.NativeJarShrinker;
+import dev.qilletni.toolchain.qll.QllPackager;
+import dev.qilletni.toolchain.timing.PhaseTimer;
+import dev.qilletni.toolchain.utils.PathUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packages a library into its .qll once its native jar has been built, skipping the build if it's up to date and
+ * restoring it from the {@link BuildCache} if it was built before. Native jars are optionally shrunk by the
+ * {@link NativeJarShrinker} before they're packaged.
+ */
+public class LibraryBuilder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LibraryBuilder.class);
+
+    private final QllPackager qllPackager;
+    private final String packagingOptions;
+    private final boolean shrinkNativeJars;
+    private final List<String> keepRules;
+    private final boolean useBuildCache;
+    private final PhaseTimer phaseTimer;
+
+    /**
+     * @param compressionLevel How hard to compress files
+     * @param layout           How to write native classes and sources
+     * @param packageThreads   The number of files of a library to compress concurrently
+     * @param shrinkNativeJars If classes unreachable from the library's native classes are removed from its native jar
+     * @param keepRules        The classes to keep when shrinking, on top of each project's own keep rules
+     * @param useBuildCache    If up to date builds are skipped, and .qll files are restored from the build cache
+     * @param phaseTimer       The timer to record fingerprinting and packaging with
+     */
+    public LibraryBuilder(QllPackager.CompressionLevel compressionLevel, QllPackager.Layout layout, int packageThreads, boolean shrinkNativeJars, List<String> keepRules, boolean useBuildCache, PhaseTimer phaseTimer) {
+        this.qllPackager = new QllPackager(compressionLevel, packageThreads, layout);
+        this.packagingOptions = "%s %s".formatted(compressionLevel, layout);
+        this.shrinkNativeJars = shrinkNativeJars;
+        this.keepRules = List.copyOf(keepRules);
+        this.useBuildCache = useBuildCache;
+        this.phaseTimer = phaseTimer;
+    }
+
+    /**
+     * Gets the .qll a library is built to.
+     *
+     * @param projectRoot    The root directory of the library
+     * @param qilletniInfo   The info of the library
+     * @param outputFilePath The .qll file or directory given to build to, or <code>null</code> to build to the
+     *                       project's <code>build/ql-build</code> directory
+     * @return The .qll to write. Its parent directory is created
+     */
+    public static Path getDestination(Path projectRoot, QilletniInfoData qilletniInfo, Path outputFilePath) throws IOException {
+        var defaultQllFileName = "%s-%s.qll".formatted(qilletniInfo.name(), qilletniInfo.version().getVersionString());
+
+        if (outputFilePath != null) {
+            if (outputFilePath.getFileName().toString().endsWith(".qll")) {
+                Files.createDirectories(outputFilePath.toAbsolutePath().getParent());
+                return outputFilePath;
+            }
+
+            // Is a parent directory
+            Files.createDirectories(outputFilePath);
+            return outputFilePath.resolve(defaultQllFileName);
+        }
+
+        var outDir = projectRoot.resolve("build").resolve("ql-build");
+        Files.createDirectories(outDir);
+        return outDir.resolve(defaultQllFileName);
+    }
+
+    /**
+     * Packages a library, unless it's up to date or cached.
+     *
+     * @param projectRoot     The root directory of the library
+     * @param qilletniInfo    The info of the library
+     * @param nativeJar       The native jar of the library, or <code>null</code> if it has none
+     * @param destinationFile The .qll to write
+     * @return How the .qll was built, which is never {@link BuildStatus#FAILED} or {@link BuildStatus#SKIPPED}
+     */
+    public BuildStatus build(Path projectRoot, QilletniInfoData qilletniInfo, Path nativeJar, Path destinationFile) throws IOException {
+        var sourcePath = projectRoot.resolve("qilletni-src");
+        var buildDirectory = projectRoot.resolve("build");
+        var phaseName = destinationFile.getFileName().toString();
+
+        LOGGER.debug("Writing package to: {}", destinationFile);
+
+        var projectKeepRules = new ArrayList<>(keepRules);
+
+        if (shrinkNativeJars) {
+            projectKeepRules.addAll(NativeJarShrinker.readKeepRules(projectRoot));
+        }
+
+        if (!useBuildCache) {
+            packageLibrary(projectRoot, qilletniInfo, nativeJar, projectKeepRules, destinationFile);
+            return BuildStatus.PACKAGED;
+        }
+
+        var buildOptions = shrinkNativeJars ? "%s shrink keep=%s".formatted(packagingOptions, projectKeepRules) : packagingOptions;
+
+        String fingerprint;
+        try (var phase = phaseTimer.start("fingerprint " + phaseName)) {
+            fingerprint = BuildCache.fingerprint(getToolchainVersion(), buildOptions, sourcePath, nativeJar);
+        }
+
+        LOGGER.debug("Build fingerprint of {}: {}", qilletniInfo.name(), fingerprint);
+
+        if (BuildCache.isUpToDate(buildDirectory, fingerprint, destinationFile)) {
+            return BuildStatus.UP_TO_DATE;
+        }
+
+        var buildCache = new BuildCache(PathUtility.getBuildCachePath());
+        BuildStatus buildStatus;
+
+        boolean restored;
+        try (var phase = phaseTimer.start("restoreQll " + phaseName)) {
+            restored = buildCache.restore(fingerprint, destinationFile);
+        }
+
+        if (restored) {
+            buildStatus = BuildStatus.RESTORED;
+        } else {
+            packageLibrary(projectRoot, qilletniInfo, nativeJar, projectKeepRules, destinationFile);
+            buildCache.store(fingerprint, destinationFile);
+            buildStatus = BuildStatus.PACKAGED;
+        }
+
+        BuildCache.recordBuild(buildDirectory, fingerprint, destinationFile);
+
+        return buildStatus;
+    }
+
+    private void packageLibrary(Path projectRoot, QilletniInfoData qilletniInfo, Path nativeJar, List<String> projectKeepRules, Path destinationFile) throws IOException {
+        var packagedJar = nativeJar;
+
+        if (shrinkNativeJars && nativeJar != null) {
+            packagedJar = shrinkNativeJar(projectRoot, qilletniInfo, nativeJar, projectKeepRules);
+        }
+
+        try (var phase = phaseTimer.start("packageQll " + destinationFile.getFileName())) {
+            qllPackager.packageLibrary(new QllInfo(qilletniInfo), projectRoot.resolve("qilletni-src"), packagedJar, destinationFile);
+        }
+    }
+
+    /**
+     * Shrinks a native jar into the project's <code>build/qilletni-shrunk</code> directory, reporting how much was
+     * removed. If it can't be shrunk, the whole jar is packaged instead.
+     *
+     * @return The jar to package
+     */
+    private Path shrinkNativeJar(Path projectRoot, QilletniInfoData qilletniInfo, Path nativeJar, List<String> projectKeepRules) {
+        var shrunkJar = projectRoot.resolve("build").resolve("qilletni-shrunk").resolve(nativeJar.getFileName());
+
+        try (var phase = phaseTimer.start("shrinkNativeJar " + qilletniInfo.name())) {
+            var shrinkResult = new NativeJarShrinker(projectKeepRules).shrink(nativeJar, NativeJarShrinker.getEntryPoints(qilletniInfo), shrunkJar);
+
+            ProgressDisplay.info("[%s] Removed %d of %d native classes, %s of %s", qilletniInfo.name(),
+                    shrinkResult.removedClasses(), shrinkResult.keptClasses() + shrinkResult.removedClasses(),
+                    ProgressDisplay.formatBytes(shrinkResult.removedBytes()), ProgressDisplay.formatBytes(shrinkResult.keptBytes() + shrinkResult.removedBytes()));
+
+            return shrunkJar;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to shrink {}", nativeJar, e);
+            ProgressDisplay.warn("[%s] Unable to shrink the native jar, packaging all of it", qilletniInfo.name());
+            return nativeJar;
+        }
+    }
+
+    /**
+     * Gets the version of the toolchain, including the commit it was built from so development builds of the same
+     * version don't share build cache entries.
+     */
+    private static String getToolchainVersion() throws IOException {
+        var properties = new VersionProvider().loadProperties();
+        return "%s+%s".formatted(properties.getProperty("toolchain.version", "unknown"), properties.getProperty("commit", "unknown"));
+    }
+}
@@ -0,0 +1,377 @@
+package dev.qilletni.toolchain.build;
+
+import dev.qilletni.api.lib.qll.QilletniInfoData;
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.config.QilletniInfoParser;
+import dev.qilletni.toolchain.logging.ProgressDisplay;
+import dev.qilletni.toolchain.qll.DependencyGraph;
+import dev.qilletni.toolchain.qll.GradleProjectHelper;
+import dev.qilletni.toolchain.timing.PhaseTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds every library under a directory. The native jars of libraries in the same Gradle build are built by a single
+ * Gradle invocation, and separate Gradle builds run concurrently. Libraries are then packaged in the order of the
+ * <code>dependencies</code> in their <code>qilletni_info.yml</code>, with libraries that don't depend on each other
+ * packaged concurrently. If a library fails, the libraries depending on it are skipped.
+ */
+public class MultiLibraryBuilder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MultiLibraryBuilder.class);
+
+    /**
+     * Directories never searched for libraries.
+     */
+    private static final Set<String> IGNORED_DIRECTORIES = Set.of("build", "node_modules", "qilletni-src", "out", "target");
+
+    private final LibraryBuilder libraryBuilder;
+    private final int maxConcurrency;
+    private final boolean buildJars;
+    private final boolean verboseGradleOutput;
+    private final Path outputDirectory;
+
+    /**
+     * @param libraryBuilder      The builder packaging each library
+     * @param maxConcurrency      The maximum number of libraries packaged at once
+     * @param buildJars           If native jars are built, instead of only running Gradle for jars that aren't cached
+     * @param verboseGradleOutput Whether to print verbose output from Gradle
+     * @param outputDirectory     The directory to write every .qll to, or <code>null</code> to write each to its
+     *                            project's <code>build/ql-build</code> directory
+     */
+    public MultiLibraryBuilder(LibraryBuilder libraryBuilder, int maxConcurrency, boolean buildJars, boolean verboseGradleOutput, Path outputDirectory) {
+        this.libraryBuilder = libraryBuilder;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.buildJars = buildJars;
+        this.verboseGradleOutput = verboseGradleOutput;
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Finds the root directory of every library under a directory, being every directory with a
+     * <code>qilletni-src/qilletni_info.yml</code>. Hidden directories and build outputs aren't searched.
+     *
+     * @param root The directory to search
+     * @return The library roots, sorted by path
+     */
+    public static List<Path> findLibraryRoots(Path root) throws IOException {
+        var libraryRoots = new ArrayList<Path>();
+
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                var directoryName = directory.getFileName() == null ? "" : directory.getFileName().toString();
+
+                if (!directory.equals(root) && (directoryName.startsWith(".") || IGNORED_DIRECTORIES.contains(directoryName))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                if (Files.isRegularFile(directory.resolve("qilletni-src").resolve("qilletni_info.yml"))) {
+                    libraryRoots.add(directory);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        return libraryRoots.stream().sorted().toList();
+    }
+
+    /**
+     * Builds every library, printing a summary once all have finished.
+     *
+     * @param libraryRoots The root directories of the libraries to build
+     * @param phaseTimer   The timer to record Gradle runs with
+     * @return The results of each library, in the order they finished
+     */
+    public List<LibraryResult> buildAll(List<Path> libraryRoots, PhaseTimer phaseTimer) throws IOException {
+        var buildStart = System.nanoTime();
+
+        var libraries = new LinkedHashMap<DependencyGraph.LibraryKey, Library>();
+
+        for (var libraryRoot : libraryRoots) {
+            var qilletniInfo = QilletniInfoParser.readQilletniInfo(libraryRoot.resolve("qilletni-src"));
+            var qllInfo = new QllInfo(qilletniInfo);
+            var existing = libraries.putIfAbsent(DependencyGraph.LibraryKey.of(qllInfo), new Library(libraryRoot, qilletniInfo, qllInfo));
+
+            if (existing != null) {
+                ProgressDisplay.error("Library %s is in both %s and %s".formatted(DependencyGraph.LibraryKey.of(qllInfo), existing.projectRoot(), libraryRoot));
+                return List.of(new LibraryResult(libraryRoot, qilletniInfo.name(), BuildStatus.FAILED, 0));
+            }
+        }
+
+        var dependencyGraph = DependencyGraph.build(libraries.values().stream().map(Library::qllInfo).toList());
+
+        dependencyGraph.getProblems().stream()
+                .filter(problem -> problem.kind() == DependencyGraph.ProblemKind.CYCLE)
+                .forEach(problem -> ProgressDisplay.warn(problem.message()));
+
+        ProgressDisplay.info("Building native jars...");
+
+        Map<Path, Path> nativeJars;
+        try (var phase = phaseTimer.start("shadowJar")) {
+            nativeJars = buildNativeJars(libraries.values());
+        }
+
+        ProgressDisplay.info("Packaging %d libraries...".formatted(libraries.size()));
+
+        var results = packageAll(libraries, dependencyGraph, nativeJars);
+
+        printSummary(results, (System.nanoTime() - buildStart) / 1_000_000.0);
+
+        return results;
+    }
+
+    /**
+     * Builds the native jars of every Gradle library, with one Gradle invocation per Gradle build.
+     *
+     * @return The native jar of each library that has one, by its project root
+     */
+    private Map<Path, Path> buildNativeJars(Iterable<Library> libraries) {
+        var projectsByRootDir = new LinkedHashMap<Path, List<GradleProjectHelper>>();
+        var nativeJars = new HashMap<Path, Path>();
+
+        for (var library : libraries) {
+            if (!GradleProjectHelper.isGradleProject(library.projectRoot())) {
+                continue;
+            }
+
+            var projectHelperOptional = GradleProjectHelper.createProjectHelper(library.projectRoot());
+
+            if (projectHelperOptional.isEmpty()) {
+                LOGGER.error("Unable to configure Gradle project {}", library.projectRoot());
+                continue;
+            }
+
+            var projectHelper = projectHelperOptional.get();
+
+            if (!buildJars) {
+                var cachedJar = projectHelper.getCachedProjectJar();
+
+                if (cachedJar.isPresent()) {
+                    nativeJars.put(projectHelper.getProjectRoot(), cachedJar.get());
+                    continue;
+                }
+            }
+
+            projectsByRootDir.computeIfAbsent(projectHelper.getRootDir(), rootDir -> new ArrayList<>()).add(projectHelper);
+        }
+
+        if (projectsByRootDir.isEmpty()) {
+            return nativeJars;
+        }
+
+        // Each Gradle build runs on its own thread, as most of their time is spent waiting on the Gradle daemon
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<Future<Map<Path, Path>>>();
+
+            projectsByRootDir.forEach((rootDir, projectHelpers) -> {
+                LOGGER.debug("Building {} native jars in Gradle build {}", projectHelpers.size(), rootDir);
+                futures.add(executor.submit(() -> GradleProjectHelper.findProjectJars(projectHelpers, verboseGradleOutput)));
+            });
+
+            for (var future : futures) {
+                try {
+                    nativeJars.putAll(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    LOGGER.error("Unable to run Gradle", e.getCause());
+                }
+            }
+        }
+
+        return nativeJars;
+    }
+
+    /**
+     * Packages every library once the libraries it depends on have been packaged. The libraries of a dependency cycle
+     * are packaged together once nothing else can be and everything the cycle depends on has been packaged.
+     */
+    private List<LibraryResult> packageAll(Map<DependencyGraph.LibraryKey, Library> libraries, DependencyGraph dependencyGraph, Map<Path, Path> nativeJars) {
+        var remainingDependencies = new HashMap<DependencyGraph.LibraryKey, Integer>();
+        var dependents = new HashMap<DependencyGraph.LibraryKey, List<DependencyGraph.LibraryKey>>();
+        var ready = new ArrayDeque<DependencyGraph.LibraryKey>();
+
+        for (var key : libraries.keySet()) {
+            var dependencies = dependencyGraph.getDependencies(key);
+            remainingDependencies.put(key, dependencies.size());
+            dependencies.forEach(dependency -> dependents.computeIfAbsent(dependency, dependencyKey -> new ArrayList<>()).add(key));
+
+            if (dependencies.isEmpty()) {
+                ready.add(key);
+            }
+        }
+
+        var results = new ArrayList<LibraryResult>(libraries.size());
+        var started = new HashSet<DependencyGraph.LibraryKey>();
+        var finished = new HashSet<DependencyGraph.LibraryKey>();
+
+        // Packaging is CPU bound, so this is a pool of platform threads
+        var executor = Executors.newFixedThreadPool(maxConcurrency);
+
+        try {
+            var completionService = new ExecutorCompletionService<LibraryResult>(executor);
+            var running = new HashMap<Future<LibraryResult>, DependencyGraph.LibraryKey>();
+
+            while (finished.size() < libraries.size()) {
+                while (!ready.isEmpty()) {
+                    var key = ready.poll();
+
+                    if (started.add(key)) {
+                        var library = libraries.get(key);
+                        running.put(completionService.submit(() -> packageLibrary(library, nativeJars.get(library.projectRoot().toAbsolutePath()))), key);
+                    }
+                }
+
+                if (running.isEmpty()) {
+                    // Everything left is waiting on a dependency cycle, or on libraries depending on one
+                    ready.addAll(findReleasableCycle(dependencyGraph, started, finished)
+                            .orElseGet(() -> libraries.keySet().stream().filter(key -> !started.contains(key)).toList()));
+                    continue;
+                }
+
+                var future = completionService.take();
+                var key = running.remove(future);
+                var result = await(future, libraries.get(key));
+
+                // Skipping a library finishes it too, so its own dependents are skipped with it
+                var newlyFinished = new ArrayDeque<Map.Entry<DependencyGraph.LibraryKey, LibraryResult>>();
+                newlyFinished.add(Map.entry(key, result));
+
+                while (!newlyFinished.isEmpty()) {
+                    var finishedEntry = newlyFinished.poll();
+                    var finishedKey = finishedEntry.getKey();
+                    var finishedResult = finishedEntry.getValue();
+
+                    finished.add(finishedKey);
+                    results.add(finishedResult);
+
+                    for (var dependent : dependents.getOrDefault(finishedKey, List.of())) {
+                        if (started.contains(dependent)) {
+                            continue;
+                        }
+
+                        if (!finishedResult.status().isSuccessful()) {
+                            var dependentLibrary = libraries.get(dependent);
+                            LOGGER.warn("Skipping {}, as its dependency {} failed", dependent, finishedKey);
+
+                            started.add(dependent);
+                            newlyFinished.add(Map.entry(dependent, new LibraryResult(dependentLibrary.projectRoot(), dependentLibrary.qilletniInfo().name(), BuildStatus.SKIPPED, 0)));
+                        } else if (remainingDependencies.merge(dependent, -1, Integer::sum) == 0) {
+                            ready.add(dependent);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while packaging libraries");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return results;
+    }
+
+    /**
+     * Finds a cycle none of whose libraries have started, which only depends on finished libraries outside of itself.
+     *
+     * @return The libraries of the cycle, if there is one
+     */
+    private static Optional<List<DependencyGraph.LibraryKey>> findReleasableCycle(DependencyGraph dependencyGraph, Set<DependencyGraph.LibraryKey> started, Set<DependencyGraph.LibraryKey> finished) {
+        return dependencyGraph.getCycles().stream()
+                .filter(cycle -> cycle.stream().noneMatch(started::contains))
+                .filter(cycle -> cycle.stream()
+                        .flatMap(key -> dependencyGraph.getDependencies(key).stream())
+                        .allMatch(dependency -> cycle.contains(dependency) || finished.contains(dependency)))
+                .findFirst();
+    }
+
+    private LibraryResult packageLibrary(Library library, Path nativeJar) {
+        var start = System.nanoTime();
+        var name = library.qilletniInfo().name();
+
+        try {
+            if (nativeJar == null && GradleProjectHelper.isGradleProject(library.projectRoot())) {
+                ProgressDisplay.error("[%s] Unable to find native jar in Gradle project".formatted(name));
+                return new LibraryResult(library.projectRoot(), name, BuildStatus.FAILED, (System.nanoTime() - start) / 1_000_000.0);
+            }
+
+            if (nativeJar != null && Files.notExists(nativeJar)) {
+                ProgressDisplay.warn("[%s] The expected native jar path was identified but the file does not exist.".formatted(name));
+                nativeJar = null;
+            }
+
+            var destinationFile = LibraryBuilder.getDestination(library.projectRoot(), library.qilletniInfo(), outputDirectory);
+            var buildStatus = libraryBuilder.build(library.projectRoot(), library.qilletniInfo(), nativeJar, destinationFile);
+
+            LOGGER.info("Built library {} to {} ({})", name, destinationFile.toAbsolutePath(), buildStatus);
+
+            return new LibraryResult(library.projectRoot(), name, buildStatus, (System.nanoTime() - start) / 1_000_000.0);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to build library {}", name, e);
+            return new LibraryResult(library.projectRoot(), name, BuildStatus.FAILED, (System.nanoTime() - start) / 1_000_000.0);
+        }
+    }
+
+    private static LibraryResult await(Future<LibraryResult> future, Library library) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            LOGGER.error("Unable to build library {}", library.qilletniInfo().name(), e.getCause());
+            return new LibraryResult(library.projectRoot(), library.qilletniInfo().name(), BuildStatus.FAILED, 0);
+        }
+    }
+
+    private static void printSummary(List<LibraryResult> results, double totalMillis) {
+        var nameWidth = Math.max(7, results.stream().mapToInt(result -> result.name().length()).max().orElse(0));
+        var failed = results.stream().filter(result -> !result.status().isSuccessful()).count();
+
+        var summary = new StringBuilder("Built %d libraries in %.1f ms, %d failed\n".formatted(results.size(), totalMillis, failed));
+        summary.append(("  %-" + nameWidth + "s  %-10s  %10s\n").formatted("Library", "Status", "Wall (ms)"));
+
+        for (var result : results) {
+            summary.append(("  %-" + nameWidth + "s  %-10s  %10.1f\n").formatted(result.name(), result.status(), result.wallMillis()));
+        }
+
+        if (failed == 0) {
+            ProgressDisplay.success(summary.toString().stripTrailing());
+        } else {
+            ProgressDisplay.error(summary.toString().stripTrailing());
+        }
+    }
+
+    private record Library(Path projectRoot, QilletniInfoData qilletniInfo, QllInfo qllInfo) {}
+
+    /**
+     * The result of building a single library.
+     *
+     * @param projectRoot The root directory of the library
+     * @param name        The name of the library
+     * @param status      How the build ended
+     * @param wallMillis  The wall time of packaging the library, in milliseconds
+     */
+    public record LibraryResult(Path projectRoot, String name, BuildStatus status, double wallMillis) {}
+}
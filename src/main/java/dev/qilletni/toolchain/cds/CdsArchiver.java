@@ -0,0 +1,193 @@
+package dev.qilletni.toolchain.cds;
+
+import dev.qilletni.toolchain.utils.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Creates class-data sharing archives of the toolchain, by running it once as a training run. On JDK 24 and newer
+ * this is an AOT cache (JEP 483), otherwise a dynamic AppCDS archive. Archives are named
+ * <code>&lt;toolchain version&gt;-&lt;JDK version&gt;-&lt;lockfile hash&gt;</code>, which is the same name the
+ * <code>qilletni</code> launcher script looks for, so it picks the archive up automatically. Archives only work with
+ * the exact JDK that created them, so switching JDKs never picks up another JDK's archive.
+ */
+public class CdsArchiver {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CdsArchiver.class);
+
+    /**
+     * The first JDK feature version supporting <code>-XX:AOTMode</code> and <code>-XX:AOTCache</code>.
+     */
+    private static final int AOT_CACHE_FEATURE_VERSION = 24;
+
+    public enum ArchiveKind {
+        DYNAMIC_CDS(".jsa"),
+        AOT_CACHE(".aot");
+
+        private final String extension;
+
+        ArchiveKind(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private final Path javaExecutable;
+    private final Path toolchainJar;
+    private final ArchiveKind archiveKind;
+
+    private CdsArchiver(Path javaExecutable, Path toolchainJar, ArchiveKind archiveKind) {
+        this.javaExecutable = javaExecutable;
+        this.toolchainJar = toolchainJar;
+        this.archiveKind = archiveKind;
+    }
+
+    /**
+     * Creates an archiver for the running JDK and toolchain jar.
+     *
+     * @return The archiver, or empty if the toolchain is not running from a jar
+     */
+    public static Optional<CdsArchiver> forCurrentRuntime() {
+        var javaExecutable = Path.of(System.getProperty("java.home"), "bin", "java");
+
+        try {
+            var codeSource = Path.of(CdsArchiver.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+            if (!Files.isRegularFile(codeSource) || !codeSource.getFileName().toString().endsWith(".jar")) {
+                LOGGER.debug("Toolchain is running from {}, not a jar", codeSource);
+                return Optional.empty();
+            }
+
+            var archiveKind = Runtime.version().feature() >= AOT_CACHE_FEATURE_VERSION ? ArchiveKind.AOT_CACHE : ArchiveKind.DYNAMIC_CDS;
+
+            return Optional.of(new CdsArchiver(javaExecutable, codeSource, archiveKind));
+        } catch (URISyntaxException | SecurityException e) {
+            LOGGER.debug("Unable to locate the toolchain jar", e);
+            return Optional.empty();
+        }
+    }
+
+    public ArchiveKind getArchiveKind() {
+        return archiveKind;
+    }
+
+    /**
+     * Gets the name of the archive for a toolchain version and lockfile on the running JDK, without its extension.
+     * This must be kept in sync with the <code>qilletni</code> launcher script, which reads the JDK version from the
+     * <code>release</code> file of the JDK it runs.
+     *
+     * @param toolchainVersion The version of the toolchain
+     * @param lockfilePath     The lockfile the archive is trained with, which may not exist
+     * @return The archive name
+     */
+    public static String getArchiveName(String toolchainVersion, Path lockfilePath) throws IOException {
+        var lockfileHash = Files.isRegularFile(lockfilePath) ? HashUtil.sha256(lockfilePath).substring(0, 16) : "nolock";
+
+        return "%s-%s-%s".formatted(toolchainVersion, Runtime.version(), lockfileHash);
+    }
+
+    /**
+     * Runs the toolchain with the given arguments as a training run, writing an archive of the classes it loads.
+     *
+     * @param archivePath  The path of the archive to write, ending in the {@link ArchiveKind}'s extension
+     * @param trainingArgs The toolchain arguments of the training run, such as <code>run example.ql</code>
+     * @return If the archive was written
+     */
+    public boolean createArchive(Path archivePath, List<String> trainingArgs) throws IOException, InterruptedException {
+        Files.createDirectories(archivePath.getParent());
+        Files.deleteIfExists(archivePath);
+
+        switch (archiveKind) {
+            case DYNAMIC_CDS -> {
+                var exitCode = runToolchain(List.of("-XX:ArchiveClassesAtExit=" + archivePath), trainingArgs);
+                logTrainingExit(exitCode);
+            }
+            case AOT_CACHE -> {
+                var configurationPath = archivePath.resolveSibling(archivePath.getFileName() + "conf");
+
+                try {
+                    var exitCode = runToolchain(List.of("-XX:AOTMode=record", "-XX:AOTConfiguration=" + configurationPath), trainingArgs);
+                    logTrainingExit(exitCode);
+
+                    // The application itself isn't run when creating the cache
+                    var createExitCode = runToolchain(List.of("-XX:AOTMode=create", "-XX:AOTConfiguration=" + configurationPath, "-XX:AOTCache=" + archivePath), List.of());
+                    if (createExitCode != 0) {
+                        LOGGER.error("Creating the AOT cache exited with code {}", createExitCode);
+                    }
+                } finally {
+                    Files.deleteIfExists(configurationPath);
+                }
+            }
+        }
+
+        return Files.exists(archivePath);
+    }
+
+    /**
+     * Gets the JVM arguments that use an archive.
+     *
+     * @param archivePath The path of the archive
+     * @return The JVM arguments
+     */
+    public List<String> getArchiveJvmArgs(Path archivePath) {
+        return switch (archiveKind) {
+            case DYNAMIC_CDS -> List.of("-XX:SharedArchiveFile=" + archivePath);
+            case AOT_CACHE -> List.of("-XX:AOTCache=" + archivePath);
+        };
+    }
+
+    /**
+     * Measures the average wall time of running the toolchain, including JVM startup.
+     *
+     * @param jvmArgs      Additional JVM arguments, such as those from {@link #getArchiveJvmArgs(Path)}
+     * @param toolchainArgs The toolchain arguments
+     * @param iterations   The number of times to run the toolchain
+     * @return The average wall time, in milliseconds
+     */
+    public double measureStartup(List<String> jvmArgs, List<String> toolchainArgs, int iterations) throws IOException, InterruptedException {
+        long totalNanos = 0;
+
+        for (int i = 0; i < iterations; i++) {
+            var start = System.nanoTime();
+            runToolchain(jvmArgs, toolchainArgs);
+            totalNanos += System.nanoTime() - start;
+        }
+
+        return totalNanos / (iterations * 1_000_000.0);
+    }
+
+    private int runToolchain(List<String> jvmArgs, List<String> toolchainArgs) throws IOException, InterruptedException {
+        var command = new ArrayList<String>();
+        command.add(javaExecutable.toString());
+        command.addAll(jvmArgs);
+        command.add("-jar");
+        command.add(toolchainJar.toString());
+        command.addAll(toolchainArgs);
+
+        LOGGER.debug("Running: {}", String.join(" ", command));
+
+        var process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+
+        return process.waitFor();
+    }
+
+    private static void logTrainingExit(int exitCode) {
+        if (exitCode != 0) {
+            LOGGER.warn("The training run exited with code {}, the archive may be incomplete", exitCode);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package dev.qilletni.toolchain.command;
+
+import dev.qilletni.pkgutil.manifest.ManifestFinder;
+import dev.qilletni.toolchain.LogSetup;
+import dev.qilletni.toolchain.VersionProvider;
+import dev.qilletni.toolchain.bench.ProgramBenchmark;
+import dev.qilletni.toolchain.logging.ProgressDisplay;
+import dev.qilletni.toolchain.run.LibraryEnvironmentLoader;
+import dev.qilletni.toolchain.run.LibraryEnvironmentOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "bench", description = "Benchmarks a Qilletni program by running it repeatedly with its libraries loaded once")
+public class CommandBench implements Callable<Integer> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandBench.class);
+
+    @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display a help message")
+    private boolean helpRequested = false;
+
+    @CommandLine.Parameters(description = "The .ql file to benchmark", index = "0")
+    private Path file;
+
+    @CommandLine.Option(names = {"--lockfile", "-k"}, description = "The path to the qilletni.lock file")
+    private Path lockfilePath;
+
+    @CommandLine.Option(names = {"--local-library", "-l"}, arity = "0..1", fallbackValue = ".", description = "If benchmarking a library example, the path of the library root it's in")
+    private Path localLibrary;
+
+    @CommandLine.Option(names = {"--use-native-jar", "-j"}, description = "If benchmarking a library example, use the native jar of it")
+    private boolean useNativeJar;
+
+    @CommandLine.Option(names = {"--warmup", "-w"}, defaultValue = "5", description = "The number of unmeasured iterations run first")
+    private int warmupIterations;
+
+    @CommandLine.Option(names = {"--iterations", "-i"}, defaultValue = "20", description = "The number of measured iterations")
+    private int measureIterations;
+
+    @CommandLine.Option(names = {"--output", "-o"}, description = "The file to write the results to as JSON")
+    private Path outputPath;
+
+    @CommandLine.Option(names = {"--show-output"}, description = "Print the program's output, instead of discarding it")
+    private boolean showOutput;
+
+    @CommandLine.Option(names = {"--log-port", "-p"}, defaultValue = "-1", description = "The port to use for logging")
+    private int logPort;
+
+    @Override
+    public Integer call() throws IOException {
+        if (logPort > 0) {
+            LogSetup.setupLogSocket(logPort);
+        }
+
+        if (Files.notExists(file)) {
+            LOGGER.error("Qilletni input file {} does not exist!", file.toAbsolutePath());
+            return 1;
+        }
+
+        if (measureIterations < 1) {
+            LOGGER.error("At least one measured iteration is needed");
+            return 1;
+        }
+
+        if (lockfilePath == null) {
+            lockfilePath = ManifestFinder.getLockfile();
+        }
+
+        Path environmentLockfile = null;
+        if (Files.exists(lockfilePath)) {
+            environmentLockfile = lockfilePath.toAbsolutePath();
+        } else {
+            LOGGER.warn("qilletni.lock not found, no libraries will be used");
+        }
+
+        var environmentLocalLibrary = localLibrary != null ? localLibrary.toAbsolutePath() : null;
+        var environmentOptions = new LibraryEnvironmentOptions(environmentLockfile, environmentLocalLibrary, useNativeJar, Runtime.getRuntime().availableProcessors(), true);
+        var environment = new LibraryEnvironmentLoader().load(environmentOptions);
+
+        if (environment.isEmpty()) {
+            return 1;
+        }
+
+        ProgressDisplay.info("Benchmarking %s (%d warmup, %d measured iterations)...", file.getFileName(), warmupIterations, measureIterations);
+
+        var result = new ProgramBenchmark(environment.get(), showOutput).run(file, warmupIterations, measureIterations);
+
+        ProgressDisplay.info("  mean:  %10.3f ms", result.meanNanos() / 1_000_000.0);
+        ProgressDisplay.info("  p50:   %10.3f ms", result.p50Nanos() / 1_000_000.0);
+        ProgressDisplay.info("  p99:   %10.3f ms", result.p99Nanos() / 1_000_000.0);
+        ProgressDisplay.info("  min:   %10.3f ms", result.minNanos() / 1_000_000.0);
+        ProgressDisplay.info("  max:   %10.3f ms", result.maxNanos() / 1_000_000.0);
+
+        if (result.allocatedBytesPerIteration() >= 0) {
+            ProgressDisplay.info("  alloc: %10s / iteration", ProgressDisplay.formatBytes((long) result.allocatedBytesPerIteration()));
+        }
+
+        ProgressDisplay.info("  GCs:   %10d (%d ms)", result.gcCount(), result.gcTimeMillis());
+
+        if (outputPath != null) {
+            var toolchainVersion = new VersionProvider().loadProperties().getProperty("toolchain.version", "unknown");
+            var libraries = environment.get().getLibraries().stream()
+                    .map(library -> "%s@%s".formatted(library.name(), library.version().getVersionString()))
+                    .toList();
+
+            var parent = outputPath.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+
+            Files.writeString(outputPath, result.toJson(toolchainVersion, libraries));
+            ProgressDisplay.success("Wrote results to %s", outputPath.toAbsolutePath());
+        }
+
+        return 0;
+    }
+}
@@ -1,11 +1,13 @@
 package dev.qilletni.toolchain.command;
 
-import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.api.lib.qll.QilletniInfoData;
+import dev.qilletni.toolchain.build.LibraryBuilder;
+import dev.qilletni.toolchain.build.MultiLibraryBuilder;
 import dev.qilletni.toolchain.qll.*;
-import dev.qilletni.toolchain.utils.FileUtil;
 import dev.qilletni.toolchain.LogSetup;
 import dev.qilletni.toolchain.config.QilletniInfoParser;
 import dev.qilletni.toolchain.logging.ProgressDisplay;
+import dev.qilletni.toolchain.timing.PhaseTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
@@ -13,6 +15,9 @@ import picocli.CommandLine;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.Callable;
 
 @CommandLine.Command(name = "build", description = "Build a Qilletni library")
@@ -23,9 +28,15 @@ public class CommandBuild implements Callable<Integer> {
     @CommandLine.Option(names = { "-h", "--help" }, usageHelp = true, description = "Display a help message")
     private boolean helpRequested = false;
 
-    @CommandLine.Parameters(description = "The root directory of the project", index = "0", defaultValue = ".")
+    @CommandLine.Parameters(description = "The root directory of the project, or with --all, the directory to find libraries in", index = "0", defaultValue = ".")
     public Path projectRoot;
 
+    @CommandLine.Option(names = {"--all"}, description = "Build every library under the root directory, in the order of their dependencies")
+    public boolean buildAll;
+
+    @CommandLine.Option(names = {"--build-threads"}, description = "With --all, the number of libraries to package concurrently. Defaults to the number of available processors")
+    private int buildThreads = Runtime.getRuntime().availableProcessors();
+
     // Ends in .qll: use as file. Otherwise, use as a destination directory
     @CommandLine.Option(names = {"--output-file", "-o"}, description = "The directory or file name of the build .qll")
     public Path outputFilePath;
@@ -36,15 +47,46 @@ public class CommandBuild implements Callable<Integer> {
     @CommandLine.Option(names = {"--gradle-verbose", "-g"}, description = "Verbose Gradle output")
     public boolean verboseGradleOutput;
 
+    @CommandLine.Option(names = {"--compression"}, defaultValue = "NORMAL", caseInsensitiveEnumValuesAllowed = true, description = "How hard to compress the .qll: ${COMPLETION-CANDIDATES}. Use fast for local development builds")
+    private QllPackager.CompressionLevel compressionLevel;
+
+    @CommandLine.Option(names = {"--layout"}, defaultValue = "COMPRESSED", caseInsensitiveEnumValuesAllowed = true, description = "How native classes and sources are written: ${COMPLETION-CANDIDATES}. stored leaves them uncompressed and page-aligned, so they're read straight from the memory-mapped .qll")
+    private QllPackager.Layout layout;
+
+    @CommandLine.Option(names = {"--package-threads"}, description = "The number of files to compress concurrently. With --all, these are split between the libraries packaged concurrently. Defaults to the number of available processors")
+    private int packageThreads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"--shrink"}, description = "Remove the classes of the native jar which aren't reachable from native_classes, provider or native_bind_factory")
+    public boolean shrinkNativeJar;
+
+    @CommandLine.Option(names = {"--keep"}, description = "With --shrink, classes to keep even if they aren't reachable, such as those loaded by reflection. * matches within a package, ** across packages. Added to native.keep in .qilletni_build.properties")
+    private List<String> keepRules = new ArrayList<>();
+
+    @CommandLine.Option(names = {"--no-build-cache"}, description = "Always package the .qll, instead of skipping up to date builds or restoring them from the build cache")
+    public boolean noBuildCache;
+
     @CommandLine.Option(names = {"--log-port", "-p"}, defaultValue = "-1", description = "The port to use for logging")
     private int logPort;
 
+    @CommandLine.Mixin
+    private TimingOptions timingOptions = new TimingOptions();
+
     @Override
     public Integer call() throws IOException {
         if (logPort > 0) {
             LogSetup.setupLogSocket(logPort);
         }
 
+        var phaseTimer = timingOptions.createTimer();
+
+        try {
+            return buildAll ? buildAll(phaseTimer) : build(phaseTimer);
+        } finally {
+            timingOptions.report("build", phaseTimer);
+        }
+    }
+
+    private int build(PhaseTimer phaseTimer) throws IOException {
         LOGGER.debug("Called build! {}", this);
 
         LOGGER.debug("Project root: {}", projectRoot);
@@ -54,38 +96,37 @@ public class CommandBuild implements Callable<Integer> {
         ProgressDisplay.info("Building Qilletni library...");
 
         var sourcePath = projectRoot.resolve("qilletni-src");
-        var buildDirectory = projectRoot.resolve("build");
 
-        var qilletniInfo = QilletniInfoParser.readQilletniInfo(sourcePath);
+        QilletniInfoData qilletniInfo;
+        try (var phase = phaseTimer.start("readQilletniInfo")) {
+            qilletniInfo = QilletniInfoParser.readQilletniInfo(sourcePath);
+        }
 
         LOGGER.debug("Qilletni Info = {}", qilletniInfo);
 
-        var qilletniSourceHandler = new QilletniSourceHandler();
-
-        var qllBuildPath = buildDirectory.resolve("ql-build").resolve(qilletniInfo.name());
-
-        FileUtil.clearAndCreateDirectory(qllBuildPath);
+        Path nativeJar = null;
 
         if (GradleProjectHelper.isGradleProject(projectRoot)) {
             ProgressDisplay.info("Building native jar...");
 
             var gradleProjectHelper = GradleProjectHelper.createProjectHelper(projectRoot).orElseThrow(() -> new RuntimeException("Unable to configure Gradle project"));
-            var gradleJarOptional = gradleProjectHelper.findProjectJar(verboseGradleOutput);
+            Optional<Path> gradleJarOptional;
+            try (var phase = phaseTimer.start("shadowJar")) {
+                // Unless told to NOT rebuild, build the jar and find its path in one Gradle run. Otherwise, only run
+                // Gradle if the jar's path isn't known or the jar doesn't exist yet
+                gradleJarOptional = noBuildJar
+                        ? gradleProjectHelper.getCachedProjectJar().or(() -> gradleProjectHelper.findProjectJar(verboseGradleOutput))
+                        : gradleProjectHelper.findProjectJar(verboseGradleOutput);
+            }
             
             if (gradleJarOptional.isPresent()) {
-                LOGGER.debug("Project jar will be extracted from: {}", gradleJarOptional);
+                LOGGER.debug("Project jar will be packaged from: {}", gradleJarOptional);
 
                 var gradleJar = gradleJarOptional.get();
 
-                // Build the jar if it doesn't exist, or if it's not told to NOT rebuild
-                if (!Files.exists(gradleJar) || !noBuildJar) {
-                    LOGGER.debug("Building Java .jar with shadowJar task");
-                    gradleProjectHelper.runShadowJarTask(verboseGradleOutput);
-                }
-
-                // Copy it if it's been created
+                // Package it if it's been created
                 if (Files.exists(gradleJar)) {
-                    QllJarExtractor.copyExtractedJar(gradleJar, qllBuildPath);
+                    nativeJar = gradleJar;
                 } else {
                     ProgressDisplay.warn("The expected native jar path was identified but the file does not exist.");
                 }
@@ -95,40 +136,50 @@ public class CommandBuild implements Callable<Integer> {
             }
         }
 
-        qilletniSourceHandler.moveQilletniSource(qllBuildPath, sourcePath);
+        var destinationFile = LibraryBuilder.getDestination(projectRoot, qilletniInfo, outputFilePath);
+        var libraryBuilder = new LibraryBuilder(compressionLevel, layout, packageThreads, shrinkNativeJar, keepRules, !noBuildCache, phaseTimer);
 
-        QllInfoGenerator.writeQllInfo(new QllInfo(qilletniInfo), qllBuildPath);
+        switch (libraryBuilder.build(projectRoot, qilletniInfo, nativeJar, destinationFile)) {
+            case UP_TO_DATE -> {
+                ProgressDisplay.success("Library is up to date\n  Destination: %s".formatted(destinationFile));
+                return 0;
+            }
+            case RESTORED -> ProgressDisplay.info("Restored library from the build cache");
+            default -> {}
+        }
 
-        var defaultQllFileName = "%s-%s.qll".formatted(qilletniInfo.name(), qilletniInfo.version().getVersionString());
-        Path destinationFile;
+        LOGGER.info("Built library to {}", destinationFile.toAbsolutePath());
 
-        if (outputFilePath != null) {
-            if (outputFilePath.getFileName().toString().endsWith(".qll")) {
-                Files.createDirectories(outputFilePath.getParent());
-                Files.deleteIfExists(outputFilePath);
-                destinationFile = outputFilePath;
-            } else {
-                // Is a parent directory
-                Files.createDirectories(outputFilePath);
-                destinationFile = outputFilePath.resolve(defaultQllFileName);
-            }
-        } else {
-            var outDir = projectRoot.resolve("build").resolve("ql-build");
-            Files.createDirectories(outDir);
-            destinationFile = outDir.resolve(defaultQllFileName);
+        ProgressDisplay.success("Library built successfully!\n  Destination: %s".formatted(destinationFile));
+
+        return 0;
+    }
+
+    private int buildAll(PhaseTimer phaseTimer) throws IOException {
+        if (outputFilePath != null && outputFilePath.getFileName().toString().endsWith(".qll")) {
+            ProgressDisplay.error("--output-file must be a directory when building with --all");
+            return 1;
         }
 
-        LOGGER.debug("Writing package to: {}", destinationFile);
+        var libraryRoots = MultiLibraryBuilder.findLibraryRoots(projectRoot);
+
+        if (libraryRoots.isEmpty()) {
+            ProgressDisplay.error("No libraries found in %s".formatted(projectRoot.toAbsolutePath()));
+            return 1;
+        }
 
-        var qllPackager = new QllPackager();
+        ProgressDisplay.info("Building %d Qilletni libraries...".formatted(libraryRoots.size()));
 
-        qllPackager.packageQll(qllBuildPath, destinationFile);
+        // Every library packaged concurrently compresses its files concurrently too, so they share the package threads
+        var libraryPackageThreads = Math.max(1, packageThreads / Math.max(1, buildThreads));
+        LOGGER.debug("Packaging up to {} libraries at once, with {} threads each", buildThreads, libraryPackageThreads);
 
-        LOGGER.info("Built library to {}", destinationFile.toAbsolutePath());
+        var libraryBuilder = new LibraryBuilder(compressionLevel, layout, libraryPackageThreads, shrinkNativeJar, keepRules, !noBuildCache, phaseTimer);
+        var multiLibraryBuilder = new MultiLibraryBuilder(libraryBuilder, buildThreads, !noBuildJar, verboseGradleOutput, outputFilePath);
 
-        ProgressDisplay.success("Library built successfully!\n  Destination: %s".formatted(destinationFile));
+        var results = multiLibraryBuilder.buildAll(libraryRoots, phaseTimer);
 
-        return 0;
+        return results.stream().allMatch(result -> result.status().isSuccessful()) ? 0 : 1;
     }
 
     @Override
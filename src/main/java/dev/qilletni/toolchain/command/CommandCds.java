@@ -0,0 +1,90 @@
+package dev.qilletni.toolchain.command;
+
+import dev.qilletni.toolchain.VersionProvider;
+import dev.qilletni.toolchain.cds.CdsArchiver;
+import dev.qilletni.toolchain.logging.ProgressDisplay;
+import dev.qilletni.toolchain.utils.PathUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "cds", description = "Creates a class-data sharing archive to speed up the toolchain's startup")
+public class CommandCds implements Callable<Integer> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandCds.class);
+
+    @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display a help message")
+    private boolean helpRequested = false;
+
+    @CommandLine.Parameters(description = "A .ql file to run as the training run. If not given, only the toolchain's own startup is trained", index = "0", arity = "0..1")
+    private Path trainingFile;
+
+    @CommandLine.Option(names = {"--lockfile", "-k"}, description = "The qilletni.lock the archive is for. Defaults to the qilletni.lock in the current directory, which is the one the launcher looks for")
+    private Path lockfilePath = Path.of("qilletni.lock");
+
+    @CommandLine.Option(names = {"--iterations", "-i"}, defaultValue = "3", description = "The number of runs to average when reporting startup times")
+    private int iterations;
+
+    @CommandLine.Option(names = {"--no-report"}, description = "Do not measure startup time with and without the archive")
+    private boolean noReport;
+
+    @Override
+    public Integer call() throws Exception {
+        var cdsArchiverOptional = CdsArchiver.forCurrentRuntime();
+        if (cdsArchiverOptional.isEmpty()) {
+            LOGGER.error("Class-data sharing archives can only be created when running from the toolchain jar");
+            return 1;
+        }
+
+        var cdsArchiver = cdsArchiverOptional.get();
+
+        if (trainingFile != null && Files.notExists(trainingFile)) {
+            LOGGER.error("Training file {} does not exist!", trainingFile.toAbsolutePath());
+            return 1;
+        }
+
+        var trainingArgs = new ArrayList<String>();
+        if (trainingFile != null) {
+            trainingArgs.addAll(List.of("run", "--no-startup-cache"));
+
+            if (Files.exists(lockfilePath)) {
+                trainingArgs.addAll(List.of("--lockfile", lockfilePath.toAbsolutePath().toString()));
+            }
+
+            trainingArgs.add(trainingFile.toAbsolutePath().toString());
+        } else {
+            trainingArgs.add("--version");
+        }
+
+        var toolchainVersion = new VersionProvider().loadProperties().getProperty("toolchain.version", "unknown");
+        var archiveName = CdsArchiver.getArchiveName(toolchainVersion, lockfilePath);
+        var archivePath = PathUtility.getCdsPath().resolve(archiveName + cdsArchiver.getArchiveKind().getExtension());
+
+        ProgressDisplay.info("Creating %s archive with a training run...", cdsArchiver.getArchiveKind() == CdsArchiver.ArchiveKind.AOT_CACHE ? "AOT cache" : "AppCDS");
+
+        if (!cdsArchiver.createArchive(archivePath, trainingArgs)) {
+            LOGGER.error("The archive was not created, run with -v for details");
+            return 1;
+        }
+
+        ProgressDisplay.success("Created archive\n  Destination: %s\n  Size: %s", archivePath, ProgressDisplay.formatBytes(Files.size(archivePath)));
+
+        if (!noReport && iterations > 0) {
+            ProgressDisplay.info("Measuring startup time over %d runs...", iterations);
+
+            var withoutArchive = cdsArchiver.measureStartup(List.of(), trainingArgs, iterations);
+            var withArchive = cdsArchiver.measureStartup(cdsArchiver.getArchiveJvmArgs(archivePath), trainingArgs, iterations);
+
+            ProgressDisplay.info("  Without archive: %8.1f ms", withoutArchive);
+            ProgressDisplay.info("  With archive:    %8.1f ms  (%.2fx)", withArchive, withoutArchive / withArchive);
+        }
+
+        return 0;
+    }
+}
@@ -0,0 +1,65 @@
+package dev.qilletni.toolchain.command;
+
+import dev.qilletni.toolchain.LogSetup;
+import dev.qilletni.toolchain.daemon.DaemonClient;
+import dev.qilletni.toolchain.daemon.DaemonServer;
+import dev.qilletni.toolchain.logging.ProgressDisplay;
+import dev.qilletni.toolchain.utils.PathUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "daemon", description = "Runs a long-lived process that runs programs for `qilletni run --daemon`")
+public class CommandDaemon implements Callable<Integer> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CommandDaemon.class);
+
+    @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "Display a help message")
+    private boolean helpRequested = false;
+
+    @CommandLine.Option(names = {"--socket", "-s"}, description = "The path of the daemon's Unix domain socket. Defaults to ~/.qilletni/daemon.sock")
+    private Path socketPath;
+
+    @CommandLine.Option(names = {"--stop"}, description = "Stop the running daemon")
+    private boolean stop;
+
+    @CommandLine.Option(names = {"--load-threads", "-t"}, description = "The maximum number of libraries to load concurrently. Defaults to the number of available processors")
+    private int loadThreads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"--log-port", "-p"}, defaultValue = "-1", description = "The port to use for logging")
+    private int logPort;
+
+    @Override
+    public Integer call() throws IOException {
+        if (logPort > 0) {
+            LogSetup.setupLogSocket(logPort);
+        }
+
+        if (socketPath == null) {
+            socketPath = PathUtility.getDaemonSocketPath();
+        }
+
+        if (stop) {
+            if (!DaemonClient.stop(socketPath)) {
+                LOGGER.error("No daemon is running on {}", socketPath);
+                return 1;
+            }
+
+            ProgressDisplay.success("Stopped the daemon");
+            return 0;
+        }
+
+        if (DaemonClient.isRunning(socketPath)) {
+            LOGGER.error("A daemon is already running on {}", socketPath);
+            return 1;
+        }
+
+        new DaemonServer(socketPath, loadThreads).serve();
+
+        return 0;
+    }
+}
@@ -5,14 +5,15 @@ import dev.qilletni.toolchain.utils.FileUtil;
 import dev.qilletni.toolchain.utils.PathUtility;
 import dev.qilletni.toolchain.config.QilletniInfoParser;
 import dev.qilletni.toolchain.docs.DocumentationOrchestrator;
+import dev.qilletni.toolchain.qll.QllArchive;
 import dev.qilletni.toolchain.qll.QllExtractor;
 import dev.qilletni.toolchain.qll.QllInfoGenerator;
 import dev.qilletni.toolchain.logging.ProgressDisplay;
+import dev.qilletni.toolchain.timing.PhaseTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Optional;
 import java.util.concurrent.Callable;
@@ -36,9 +37,22 @@ public class CommandDoc implements Callable<Integer> {
 
     @CommandLine.Option(names = {"--regen-all", "-r"}, description = "Regenerate all doc files from every package in cache")
     public boolean regenerateAll;
+
+    @CommandLine.Mixin
+    private TimingOptions timingOptions = new TimingOptions();
     
     @Override
     public Integer call() throws Exception {
+        var phaseTimer = timingOptions.createTimer();
+
+        try {
+            return generateDocs(phaseTimer);
+        } finally {
+            timingOptions.report("doc", phaseTimer);
+        }
+    }
+
+    private int generateDocs(PhaseTimer phaseTimer) throws Exception {
         LOGGER.debug("Generating docs from: {}", sourcePath);
         LOGGER.debug("Doc output path: {}", outputFilePath);
         
@@ -54,7 +68,9 @@ public class CommandDoc implements Callable<Integer> {
 
                 ProgressDisplay.info("Regenerating all docs from cache...");
 
-                return documentationOrchestrator.regenerateAllPackages();
+                try (var phase = phaseTimer.start("regenerateAllPackages")) {
+                    return documentationOrchestrator.regenerateAllPackages();
+                }
             }
 
             LOGGER.error("Unexpected source path when regenerating all: {}", sourcePath);
@@ -74,21 +90,29 @@ public class CommandDoc implements Callable<Integer> {
 
         try {
             if (sourcePath.getFileName().toString().endsWith(".qll")) {
-                Optional<Path> path = QllExtractor.extractToTmp(sourcePath);
-                if (path.isEmpty()) {
-                    LOGGER.error("Unable to extract QLL from {}", sourcePath);
-                    return 1;
-                }
+                try (var phase = phaseTimer.start("extractQll");
+                     var qllArchive = QllArchive.open(sourcePath)) {
+
+                    Optional<Path> path = QllExtractor.extractToTmp(qllArchive);
+                    if (path.isEmpty()) {
+                        LOGGER.error("Unable to extract QLL from {}", sourcePath);
+                        return 1;
+                    }
 
-                extractedDir = path.get();
+                    extractedDir = path.get();
 
-                sourcePath = extractedDir.resolve("qilletni-src");
-                qllInfo = QllInfoGenerator.readPackagedQllInfo(Files.newInputStream(extractedDir.resolve("qll.info")));
+                    sourcePath = extractedDir.resolve("qilletni-src");
+                    qllInfo = QllInfoGenerator.readPackagedQllInfo(qllArchive.getInputStream(qllArchive.getEntry("qll.info").orElseThrow()));
+                }
             } else {
-                qllInfo = new QllInfo(QilletniInfoParser.readQilletniInfo(sourcePath));
+                try (var phase = phaseTimer.start("readQilletniInfo")) {
+                    qllInfo = new QllInfo(QilletniInfoParser.readQilletniInfo(sourcePath));
+                }
             }
 
-            return documentationOrchestrator.beginDocGen(qllInfo, sourcePath);
+            try (var phase = phaseTimer.start("generateDocs")) {
+                return documentationOrchestrator.beginDocGen(qllInfo, sourcePath);
+            }
         } finally {
             if (extractedDir != null) {
                 FileUtil.deleteDirectory(extractedDir);
@@ -1,26 +1,22 @@
 package dev.qilletni.toolchain.command;
 
-import dev.qilletni.api.exceptions.QilletniException;
-import dev.qilletni.api.lib.qll.QllInfo;
-import dev.qilletni.impl.ServiceManager;
-import dev.qilletni.impl.lang.runner.QilletniProgramRunner;
-import dev.qilletni.impl.lib.LibrarySourceFileResolver;
 import dev.qilletni.pkgutil.manifest.ManifestFinder;
 import dev.qilletni.toolchain.LogSetup;
+import dev.qilletni.toolchain.QilletniToolchainApplication;
+import dev.qilletni.toolchain.daemon.DaemonClient;
+import dev.qilletni.toolchain.daemon.DaemonProtocol;
+import dev.qilletni.toolchain.run.BatchRunner;
+import dev.qilletni.toolchain.run.LibraryEnvironmentLoader;
+import dev.qilletni.toolchain.run.LibraryEnvironmentOptions;
+import dev.qilletni.toolchain.run.RunWatcher;
 import dev.qilletni.toolchain.utils.PathUtility;
-import dev.qilletni.toolchain.qll.GradleProjectHelper;
-import dev.qilletni.toolchain.qll.LibraryValidator;
-import dev.qilletni.toolchain.qll.QllJarExtractor;
-import dev.qilletni.toolchain.qll.QllLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
 import java.io.IOException;
-import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 
@@ -44,10 +40,34 @@ public class CommandRun implements Callable<Integer> {
     @CommandLine.Option(names = {"--use-native-jar", "-j"}, description = "If running a library example, use the native jar of it")
     private boolean useNativeJar;
 
+    @CommandLine.Option(names = {"--load-threads", "-t"}, description = "The maximum number of libraries to load concurrently. Defaults to the number of available processors")
+    private int loadThreads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"--no-startup-cache"}, description = "Always resolve and validate libraries, instead of using the cached startup snapshot")
+    private boolean noStartupCache;
+
+    @CommandLine.Option(names = {"--daemon"}, description = "Run the program in the running `qilletni daemon`, if there is one")
+    private boolean useDaemon;
+
+    @CommandLine.Option(names = {"--watch", "-w"}, description = "Keep libraries loaded and run the program again whenever it or the local library's sources change")
+    private boolean watch;
+
+    @CommandLine.Option(names = {"--batch", "-b"}, description = "Run every .ql file in a directory, or matching a glob, concurrently instead of a single file")
+    private String batch;
+
+    @CommandLine.Option(names = {"--batch-threads"}, description = "The maximum number of programs run concurrently with --batch. Defaults to the number of available processors")
+    private int batchThreads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"--batch-output"}, description = "With --batch, write each program's output to <path>.out and <path>.err in this directory, named by its path relative to the batch directory, instead of printing it")
+    private Path batchOutput;
+
     @CommandLine.Option(names = {"--log-port", "-p"}, defaultValue = "-1", description = "The port to use for logging")
     private int logPort;
+
+    @CommandLine.Mixin
+    private TimingOptions timingOptions = new TimingOptions();
     
-    @CommandLine.Parameters(description = "The .ql file to run", index = "0")
+    @CommandLine.Parameters(description = "The .ql file to run", index = "0", arity = "0..1")
     private Path file; // first is the file to run, after is the params
     
     @CommandLine.Parameters(description = "The program arguments", index = "1..")
@@ -60,7 +80,25 @@ public class CommandRun implements Callable<Integer> {
             LogSetup.setupLogSocket(logPort);
         }
 
-        if (Files.notExists(file)) {
+        BatchRunner.Batch batchPrograms = null;
+
+        if (batch != null) {
+            batchPrograms = BatchRunner.findPrograms(batch);
+
+            if (batchPrograms.programs().isEmpty()) {
+                LOGGER.error("No .ql files found for batch {}", batch);
+                return 1;
+            }
+
+            if (useDaemon || watch) {
+                LOGGER.warn("--daemon and --watch can't be used with --batch, running directly");
+                useDaemon = false;
+                watch = false;
+            }
+        } else if (file == null) {
+            LOGGER.error("No .ql file to run given");
+            return 1;
+        } else if (Files.notExists(file)) {
             LOGGER.error("Qilletni input file {} does not exist!", file.toAbsolutePath());
             return 1;
         }
@@ -79,122 +117,47 @@ public class CommandRun implements Callable<Integer> {
             dependencyPath = PathUtility.getDependencyPath();
         }
 
-        var qllLoader = new QllLoader();
-        var qllJarExtractor = new QllJarExtractor();
-        var librarySourceFileResolver = new LibrarySourceFileResolver();
-        
-        var loadedLibraries = new ArrayList<QllInfo>();
-        QllInfo localLibraryQll = null;
-
-        if (localLibrary != null) {
-            LOGGER.info("Loading local library at {}", localLibrary);
-            localLibraryQll = qllLoader.loadLocalLibrary(librarySourceFileResolver, localLibrary);
-            loadedLibraries.add(localLibraryQll);
-
-            if (useNativeJar) {
-                LOGGER.debug("Using native jar");
-                if (GradleProjectHelper.isGradleProject(localLibrary)) {
-                    var gradleProjectHelper = GradleProjectHelper.createProjectHelper(localLibrary).orElseThrow(() -> new RuntimeException("Unable to interact with Gradle project"));
-                    var gradleJarOptional = gradleProjectHelper.findProjectJar(false);
-
-                    if (gradleJarOptional.isPresent()) {
-                        LOGGER.debug("Project jar will be extracted from: {}", gradleJarOptional);
-
-                        var gradleJar = gradleJarOptional.get();
-
-                        // Copy it if it's been created
-                        if (Files.exists(gradleJar)) {
-                            qllJarExtractor.addLocalLibraryJar(gradleJar);
-                        } else {
-                            LOGGER.error("Expected to find jar file {}, has it been built?", gradleJar);
-                        }
-                    } else {
-                        LOGGER.error("Unable to find jar output found in Gradle project");
-                        return 1;
-                    }
-                }
-            }
+        var environmentLockfile = useLockfile ? lockfilePath.toAbsolutePath() : null;
+        var environmentLocalLibrary = localLibrary != null ? localLibrary.toAbsolutePath() : null;
 
-            // TODO: Test local libraries with dependencies
-        }
+        if (useDaemon && watch) {
+            LOGGER.warn("--daemon can't be used with --watch, running directly");
+        } else if (useDaemon) {
+            var runRequest = new DaemonProtocol.RunRequest(file.toAbsolutePath(), environmentLockfile, environmentLocalLibrary, useNativeJar, args,
+                    Path.of("").toAbsolutePath(), QilletniToolchainApplication.isVerbose());
+            var exitCode = DaemonClient.run(PathUtility.getDaemonSocketPath(), runRequest);
 
-        var dependencyPath = PathUtility.getDependencyPath();
-        var localDependencyPath = PathUtility.getLocalDependencyPath();
-
-        var localLibraryName = localLibraryQll != null ? localLibraryQll.name() : null;
-
-        if (useLockfile) {
-            try {
-                qllLoader.getResolvedPackages(lockfilePath)
-                        .forEach(resolvedPackage -> {
-                            var qllPath = localDependencyPath.resolve(resolvedPackage.resolved() + ".qll");
-                            if (!Files.exists(qllPath)) {
-                                qllPath = dependencyPath.resolve(resolvedPackage.resolved() + ".qll");
-                            }
-
-                            if (Files.notExists(qllPath)) {
-                                LOGGER.error("Unable to find package {}", resolvedPackage.name());
-                                return;
-                            }
-
-                            qllJarExtractor.registerInnerJar(qllPath);
-
-                            try {
-                                var loadedQll = qllLoader.loadQll(librarySourceFileResolver, qllPath);
-
-                                if (loadedQll.name().equals(localLibraryName)) {
-                                    LOGGER.debug("Skipping loading local library {} from dependencies", localLibraryName);
-                                    return;
-                                }
-
-                                loadedLibraries.add(loadedQll);
-                            } catch (IOException | URISyntaxException e) {
-                                throw new RuntimeException(e);
-                            }
-                });
-            } catch (IOException e) {
-                LOGGER.error("An exception occurred while reading dependencies", e);
+            if (exitCode.isPresent()) {
+                return exitCode.get();
             }
-        }
 
-        var qllJarClassLoader = qllJarExtractor.createClassLoader();
-
-        var libraryValidator = new LibraryValidator(loadedLibraries);
-        if (!libraryValidator.validate()) {
-            LOGGER.error("Exiting due to unmet dependencies. Try deleting qilletni.lock and re-installing dependencies");
-            return 1;
+            LOGGER.warn("Unable to run with the Qilletni daemon, running directly");
         }
 
-        LOGGER.debug("Loaded libraries!");
-
-        final ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
+        var phaseTimer = timingOptions.createTimer();
 
         try {
-            Thread.currentThread().setContextClassLoader(qllJarClassLoader);
-            
-            var dynamicProvider = ServiceManager.createDynamicProvider(loadedLibraries);
-
-            var runner = new QilletniProgramRunner(dynamicProvider, librarySourceFileResolver, loadedLibraries);
-
-            LOGGER.debug("Importing initial files");
-            
-            runner.importInitialFiles();
-
-            try {
-                LOGGER.debug("Running program: {}", file.getFileName());
-                runner.runProgram(file);
-            } catch (QilletniException | IOException e) {
-                LOGGER.error("An exception occurred while running {}", file.getFileName(), e);
-                runner.shutdown();
+            var environmentOptions = new LibraryEnvironmentOptions(environmentLockfile, environmentLocalLibrary, useNativeJar, loadThreads, !noStartupCache);
+            var environmentLoader = new LibraryEnvironmentLoader(phaseTimer);
+            var environment = environmentLoader.load(environmentOptions);
+
+            if (environment.isEmpty()) {
                 return 1;
             }
 
-            runner.shutdown();
+            if (batchPrograms != null) {
+                var results = new BatchRunner(environment.get(), batchThreads, batchOutput).runAll(batchPrograms);
+                return results.stream().allMatch(BatchRunner.ProgramResult::isSuccessful) ? 0 : 1;
+            }
+
+            if (watch) {
+                return new RunWatcher(environmentLoader, environmentOptions, file).watch(environment.get());
+            }
+
+            return environment.get().runProgram(file, phaseTimer);
         } finally {
-            Thread.currentThread().setContextClassLoader(currentClassLoader);
+            timingOptions.report("run", phaseTimer);
         }
-
-        return 0;
     }
 
     @Override
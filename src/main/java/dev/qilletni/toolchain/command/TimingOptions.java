@@ -0,0 +1,64 @@
+package dev.qilletni.toolchain.command;
+
+import dev.qilletni.toolchain.VersionProvider;
+import dev.qilletni.toolchain.logging.ProgressDisplay;
+import dev.qilletni.toolchain.timing.PhaseTimer;
+import dev.qilletni.toolchain.timing.TimingReporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The <code>--timings</code> options shared by commands which report how long each of their phases took.
+ */
+public class TimingOptions {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimingOptions.class);
+
+    public enum TimingsFormat {
+        TABLE,
+        JSON
+    }
+
+    @CommandLine.Option(names = {"--timings"}, arity = "0..1", fallbackValue = "TABLE", caseInsensitiveEnumValuesAllowed = true, description = "Report the wall and CPU time of each phase, as a table or as json (${COMPLETION-CANDIDATES})")
+    private TimingsFormat timingsFormat;
+
+    @CommandLine.Option(names = {"--timings-file"}, defaultValue = "qilletni-timings.json", description = "The file to write --timings=json to")
+    private Path timingsFile;
+
+    /**
+     * @return A timer which records phases if <code>--timings</code> was given, or a disabled timer otherwise
+     */
+    public PhaseTimer createTimer() {
+        return timingsFormat != null ? PhaseTimer.create() : PhaseTimer.disabled();
+    }
+
+    /**
+     * Reports the recorded phases in the requested format. Nothing is reported if <code>--timings</code> wasn't given.
+     *
+     * @param command    The name of the command that was timed
+     * @param phaseTimer The timer created by {@link #createTimer()}
+     */
+    public void report(String command, PhaseTimer phaseTimer) {
+        if (timingsFormat == null || !phaseTimer.isEnabled()) {
+            return;
+        }
+
+        switch (timingsFormat) {
+            case TABLE -> TimingReporter.printTable(command, phaseTimer);
+            case JSON -> {
+                try {
+                    var toolchainVersion = new VersionProvider().loadProperties().getProperty("toolchain.version", "unknown");
+                    TimingReporter.writeJson(command, toolchainVersion, phaseTimer, timingsFile);
+
+                    ProgressDisplay.info("Wrote timings to %s", timingsFile.toAbsolutePath());
+                } catch (IOException e) {
+                    LOGGER.error("Unable to write timings to {}", timingsFile, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package dev.qilletni.toolchain.daemon;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Sends requests to a running {@link DaemonServer}.
+ */
+public class DaemonClient {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonClient.class);
+
+    /**
+     * Checks if a daemon is accepting connections on the given socket.
+     *
+     * @param socketPath The path of the daemon's socket
+     * @return If a daemon is running
+     */
+    public static boolean isRunning(Path socketPath) {
+        if (Files.notExists(socketPath)) {
+            return false;
+        }
+
+        try (var ignored = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Runs a program in the daemon, streaming its output to this process' stdout and stderr.
+     *
+     * @param socketPath The path of the daemon's socket
+     * @param runRequest The program to run
+     * @return The exit code of the program, or empty if the daemon could not be reached or can't run it
+     */
+    public static Optional<Integer> run(Path socketPath, DaemonProtocol.RunRequest runRequest) {
+        if (Files.notExists(socketPath)) {
+            return Optional.empty();
+        }
+
+        try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+
+            var output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            DaemonProtocol.writeHeader(output, DaemonProtocol.REQUEST_RUN);
+            DaemonProtocol.writeRunRequest(output, runRequest);
+            output.flush();
+
+            return readFrames(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel))));
+        } catch (IOException e) {
+            LOGGER.debug("Unable to run {} in the daemon at {}", runRequest.file(), socketPath, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Asks the daemon to stop once it has finished its current request.
+     *
+     * @param socketPath The path of the daemon's socket
+     * @return If the daemon acknowledged the request
+     */
+    public static boolean stop(Path socketPath) {
+        try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+
+            var output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            DaemonProtocol.writeHeader(output, DaemonProtocol.REQUEST_STOP);
+            output.flush();
+
+            return readFrames(new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))).orElse(1) == 0;
+        } catch (IOException e) {
+            LOGGER.debug("Unable to stop the daemon at {}", socketPath, e);
+            return false;
+        }
+    }
+
+    /**
+     * Reads frames until the exit code, writing output to this process' stdout and stderr.
+     *
+     * @return The exit code, or empty if the daemon rejected the request
+     */
+    private static Optional<Integer> readFrames(DataInputStream input) throws IOException {
+        while (true) {
+            var frameType = input.readByte();
+
+            switch (frameType) {
+                case DaemonProtocol.FRAME_STDOUT, DaemonProtocol.FRAME_STDERR -> {
+                    var data = new byte[input.readInt()];
+                    input.readFully(data);
+
+                    var stream = frameType == DaemonProtocol.FRAME_STDOUT ? System.out : System.err;
+                    stream.write(data);
+                    stream.flush();
+                }
+                case DaemonProtocol.FRAME_EXIT -> {
+                    return Optional.of(input.readInt());
+                }
+                case DaemonProtocol.FRAME_REJECTED -> {
+                    LOGGER.warn("The daemon can't run this request: {}", input.readUTF());
+                    return Optional.empty();
+                }
+                default -> throw new IOException("Unknown daemon frame type " + frameType);
+            }
+        }
+    }
+}
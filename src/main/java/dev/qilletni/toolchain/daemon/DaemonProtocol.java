@@ -0,0 +1,104 @@
+package dev.qilletni.toolchain.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The wire format spoken between {@link DaemonClient} and {@link DaemonServer} over a Unix domain socket.
+ * <p>
+ * A client opens a connection per request and sends the {@link #MAGIC}, the {@link #VERSION} and a request type,
+ * followed by the {@link RunRequest} for {@link #REQUEST_RUN}. The server answers with a sequence of frames, each
+ * starting with a frame type: {@link #FRAME_STDOUT} and {@link #FRAME_STDERR} are followed by a length and that many
+ * bytes of output, and the final {@link #FRAME_EXIT} is followed by the exit code. A request the server can't run is
+ * answered with a single {@link #FRAME_REJECTED}, followed by the reason, so the client can run it itself.
+ */
+public class DaemonProtocol {
+
+    public static final int MAGIC = 0x51444d4e; // "QDMN"
+    public static final int VERSION = 2;
+
+    public static final byte REQUEST_RUN = 1;
+    public static final byte REQUEST_STOP = 2;
+
+    public static final byte FRAME_STDOUT = 1;
+    public static final byte FRAME_STDERR = 2;
+    public static final byte FRAME_EXIT = 3;
+    public static final byte FRAME_REJECTED = 4;
+
+    /**
+     * A request to run a program.
+     *
+     * @param file             The absolute path of the .ql file to run
+     * @param lockfilePath     The absolute path of the qilletni.lock to use, or <code>null</code> for none
+     * @param localLibrary     The absolute path of the local library root, or <code>null</code> for none
+     * @param useNativeJar     If the local library's native jar should be used
+     * @param args             The program arguments
+     * @param workingDirectory The absolute path of the client's working directory
+     * @param verbose          If the client was run with <code>--verbose</code>, so its log output is shown
+     */
+    public record RunRequest(Path file, Path lockfilePath, Path localLibrary, boolean useNativeJar, List<String> args, Path workingDirectory, boolean verbose) {}
+
+    public static void writeHeader(DataOutputStream output, byte requestType) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeByte(requestType);
+    }
+
+    /**
+     * Reads the header of a request.
+     *
+     * @param input The stream to read from
+     * @return The request type
+     * @throws IOException If the header is not from a client of the same protocol version
+     */
+    public static byte readHeader(DataInputStream input) throws IOException {
+        if (input.readInt() != MAGIC) {
+            throw new IOException("Not a Qilletni daemon request");
+        }
+
+        var version = input.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported daemon protocol version %d, expected %d".formatted(version, VERSION));
+        }
+
+        return input.readByte();
+    }
+
+    public static void writeRunRequest(DataOutputStream output, RunRequest runRequest) throws IOException {
+        output.writeUTF(runRequest.file().toString());
+        output.writeUTF(runRequest.lockfilePath() == null ? "" : runRequest.lockfilePath().toString());
+        output.writeUTF(runRequest.localLibrary() == null ? "" : runRequest.localLibrary().toString());
+        output.writeBoolean(runRequest.useNativeJar());
+
+        var args = runRequest.args() == null ? List.<String>of() : runRequest.args();
+        output.writeInt(args.size());
+        for (var arg : args) {
+            output.writeUTF(arg);
+        }
+
+        output.writeUTF(runRequest.workingDirectory().toString());
+        output.writeBoolean(runRequest.verbose());
+    }
+
+    public static RunRequest readRunRequest(DataInputStream input) throws IOException {
+        var file = Path.of(input.readUTF());
+        var lockfilePath = input.readUTF();
+        var localLibrary = input.readUTF();
+        var useNativeJar = input.readBoolean();
+
+        var argCount = input.readInt();
+        var args = new ArrayList<String>(argCount);
+        for (int i = 0; i < argCount; i++) {
+            args.add(input.readUTF());
+        }
+
+        var workingDirectory = Path.of(input.readUTF());
+        var verbose = input.readBoolean();
+
+        return new RunRequest(file, lockfilePath.isEmpty() ? null : Path.of(lockfilePath), localLibrary.isEmpty() ? null : Path.of(localLibrary), useNativeJar, args, workingDirectory, verbose);
+    }
+}
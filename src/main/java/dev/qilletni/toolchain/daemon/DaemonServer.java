@@ -0,0 +1,580 @@
+package dev.qilletni.toolchain.daemon;
+
+import dev.qilletni.toolchain.LogSetup;
+import dev.qilletni.toolchain.run.LibraryEnvironment;
+import dev.qilletni.toolchain.run.LibraryEnvironmentLoader;
+import dev.qilletni.toolchain.run.LibraryEnvironmentOptions;
+import dev.qilletni.toolchain.logging.ProgressDisplay;
+import dev.qilletni.toolchain.utils.PathUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A long-lived process that runs Qilletni programs on behalf of {@link DaemonClient}s, over a Unix domain socket.
+ * Loaded {@link LibraryEnvironment}s are kept between requests, so a program only pays for loading its libraries the
+ * first time its lockfile is used (or after the lockfile or any of its packages change). Every run still gets its own
+ * program runner.
+ * <p>
+ * Each connection is read on its own virtual thread, and dropped if its request doesn't arrive within
+ * {@link #REQUEST_TIMEOUT_SECONDS}. Runs happen one at a time. {@link System#out} and {@link System#err} are routed per
+ * thread, so only the running program's thread (and the threads it starts) write to its client, and its output is
+ * queued for a writer thread. A client that stops reading for {@link #OUTPUT_TIMEOUT_SECONDS} has its run aborted and
+ * its connection closed, so it can't hold up the requests after it. Programs run with no stdin, and as a JVM can't
+ * change its working directory, requests from any other working directory than the daemon's are rejected, for the
+ * client to run itself.
+ */
+public class DaemonServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonServer.class);
+
+    /**
+     * How long a client has to send its request once connected.
+     */
+    private static final int REQUEST_TIMEOUT_SECONDS = 10;
+
+    /**
+     * How long output may wait for a client to read it before its run is aborted.
+     */
+    private static final int OUTPUT_TIMEOUT_SECONDS = 30;
+
+    /**
+     * The number of output frames queued for a client before writes block.
+     */
+    private static final int OUTPUT_QUEUE_FRAMES = 1024;
+
+    /**
+     * How long to wait before accepting connections again after accepting one failed, e.g. when out of file
+     * descriptors.
+     */
+    private static final int ACCEPT_RETRY_MILLIS = 100;
+
+    private final Path socketPath;
+    private final int loadThreads;
+    private final Path workingDirectory = Path.of("").toAbsolutePath();
+
+    // Held for the duration of every run, and guards the cached environments
+    private final ReentrantLock runLock = new ReentrantLock();
+
+    // Environments with a local library are never cached, as their sources may change between runs
+    private final Map<Path, CachedEnvironment> environments = new HashMap<>();
+
+    private volatile boolean running = true;
+    private ServerSocketChannel serverChannel;
+
+    private RoutingOutputStream stdoutRouter;
+    private RoutingOutputStream stderrRouter;
+
+    /**
+     * @param socketPath  The path to bind the socket to
+     * @param loadThreads The maximum number of libraries read concurrently when loading an environment
+     */
+    public DaemonServer(Path socketPath, int loadThreads) {
+        this.socketPath = socketPath;
+        this.loadThreads = loadThreads;
+    }
+
+    /**
+     * Accepts and handles requests until a stop request is received.
+     */
+    public void serve() throws IOException {
+        // A socket file left behind by a daemon that didn't shut down cleanly
+        Files.deleteIfExists(socketPath);
+
+        var timeoutScheduler = Executors.newSingleThreadScheduledExecutor();
+
+        var originalOut = System.out;
+        var originalErr = System.err;
+        stdoutRouter = new RoutingOutputStream(originalOut);
+        stderrRouter = new RoutingOutputStream(originalErr);
+
+        try (var serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            this.serverChannel = serverChannel;
+            serverChannel.bind(UnixDomainSocketAddress.of(socketPath));
+
+            System.setOut(new PrintStream(stdoutRouter, true));
+            System.setErr(new PrintStream(stderrRouter, true));
+
+            ProgressDisplay.info("Qilletni daemon listening on %s", socketPath);
+
+            while (running) {
+                SocketChannel channel;
+                try {
+                    channel = serverChannel.accept();
+                } catch (ClosedChannelException e) {
+                    // Closed by a stop request
+                    break;
+                } catch (IOException e) {
+                    LOGGER.error("Unable to accept daemon connection", e);
+                    sleepBeforeRetry();
+                    continue;
+                }
+
+                Thread.ofVirtual().name("daemon-connection").start(() -> handleConnection(channel, timeoutScheduler));
+            }
+        } finally {
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+
+            timeoutScheduler.shutdownNow();
+            Files.deleteIfExists(socketPath);
+        }
+
+        ProgressDisplay.info("Qilletni daemon stopped");
+    }
+
+    private void handleConnection(SocketChannel channel, ScheduledExecutorService timeoutScheduler) {
+        try (channel) {
+            var input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            var output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+
+            // Closing the channel fails the pending read of a client that connected but never sent its request
+            var timeout = timeoutScheduler.schedule(() -> closeQuietly(channel), REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            var requestType = DaemonProtocol.readHeader(input);
+            var runRequest = requestType == DaemonProtocol.REQUEST_RUN ? DaemonProtocol.readRunRequest(input) : null;
+
+            timeout.cancel(false);
+
+            switch (requestType) {
+                case DaemonProtocol.REQUEST_RUN -> {
+                    if (!runRequest.workingDirectory().equals(workingDirectory)) {
+                        writeRejected(output, "the daemon runs programs in %s, not %s".formatted(workingDirectory, runRequest.workingDirectory()));
+                        return;
+                    }
+
+                    try (var frameWriter = new FrameWriter(channel, output, Thread.currentThread())) {
+                        int exitCode;
+
+                        runLock.lock();
+                        try {
+                            exitCode = handleRun(runRequest, frameWriter);
+                        } finally {
+                            // An aborted run may leave the thread interrupted
+                            Thread.interrupted();
+                            runLock.unlock();
+                        }
+
+                        frameWriter.writeExit(exitCode);
+                    }
+                }
+                case DaemonProtocol.REQUEST_STOP -> {
+                    LOGGER.info("Received stop request");
+
+                    // Waits for the current run to finish
+                    runLock.lock();
+                    try {
+                        running = false;
+                        serverChannel.close();
+                    } finally {
+                        runLock.unlock();
+                    }
+
+                    writeExit(output, 0);
+                }
+                default -> throw new IOException("Unknown daemon request type " + requestType);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Failed to handle daemon request", e);
+        }
+    }
+
+    private int handleRun(DaemonProtocol.RunRequest runRequest, FrameWriter frameWriter) {
+        LOGGER.info("Running {}", runRequest.file());
+
+        var clientOut = new BufferedOutputStream(new FrameOutputStream(frameWriter, DaemonProtocol.FRAME_STDOUT));
+        var clientErr = new BufferedOutputStream(new FrameOutputStream(frameWriter, DaemonProtocol.FRAME_STDERR));
+
+        // Threads started by the program inherit the routes, other connections keep writing to the daemon's console
+        stdoutRouter.route(clientOut);
+        stderrRouter.route(clientErr);
+
+        try (var verboseConsole = runRequest.verbose() ? LogSetup.addVerboseConsole() : null) {
+            if (Files.notExists(runRequest.file())) {
+                LOGGER.error("Qilletni input file {} does not exist!", runRequest.file());
+                return 1;
+            }
+
+            var environment = getEnvironment(runRequest);
+            if (environment.isEmpty()) {
+                return 1;
+            }
+
+            // Local library environments aren't cached, so nothing else uses it
+            if (runRequest.localLibrary() != null) {
+                try (var localEnvironment = environment.get()) {
+                    return localEnvironment.runProgram(runRequest.file());
+                }
+            }
+
+            return environment.get().runProgram(runRequest.file());
+        } catch (IOException | RuntimeException e) {
+            if (frameWriter.isStalled()) {
+                LOGGER.warn("Aborted {}, as its client stopped reading its output", runRequest.file());
+            } else {
+                LOGGER.error("An exception occurred while running {}", runRequest.file(), e);
+            }
+
+            return 1;
+        } finally {
+            stdoutRouter.unroute();
+            stderrRouter.unroute();
+
+            flushQuietly(clientOut);
+            flushQuietly(clientErr);
+        }
+    }
+
+    private Optional<LibraryEnvironment> getEnvironment(DaemonProtocol.RunRequest runRequest) throws IOException {
+        var lockfilePath = runRequest.lockfilePath();
+        var options = new LibraryEnvironmentOptions(lockfilePath, runRequest.localLibrary(), runRequest.useNativeJar(), loadThreads, true);
+
+        if (runRequest.localLibrary() != null) {
+            return new LibraryEnvironmentLoader().load(options);
+        }
+
+        var cacheKey = lockfilePath == null ? Path.of("") : lockfilePath;
+        var inputs = new ArrayList<FileState>();
+        inputs.add(FileState.of(lockfilePath));
+
+        // Packages are resolved from these, so a newly installed package may change what the lockfile resolves to
+        inputs.add(FileState.of(PathUtility.getLocalDependencyPath()));
+        inputs.add(FileState.of(PathUtility.getDependencyPath()));
+
+        var cached = environments.get(cacheKey);
+        if (cached != null && cached.inputs().equals(inputs) && cached.isUnchanged()) {
+            LOGGER.debug("Reusing loaded environment for {}", cacheKey);
+            return Optional.of(cached.environment());
+        }
+
+        if (cached != null) {
+            // Unmaps the packages it loaded, which may since have been replaced
+            environments.remove(cacheKey);
+            cached.environment().close();
+        }
+
+        var environment = new LibraryEnvironmentLoader().load(options);
+
+        if (environment.isPresent()) {
+            var packages = new ArrayList<FileState>();
+            for (var loadedQll : environment.get().getLibrarySources()) {
+                packages.add(FileState.of(loadedQll.qllPath()));
+            }
+
+            environments.put(cacheKey, new CachedEnvironment(environment.get(), inputs, packages));
+        }
+
+        return environment;
+    }
+
+    private static void writeExit(DataOutputStream output, int exitCode) throws IOException {
+        output.writeByte(DaemonProtocol.FRAME_EXIT);
+        output.writeInt(exitCode);
+        output.flush();
+    }
+
+    private static void writeRejected(DataOutputStream output, String reason) throws IOException {
+        LOGGER.info("Rejected request: {}", reason);
+
+        output.writeByte(DaemonProtocol.FRAME_REJECTED);
+        output.writeUTF(reason);
+        output.flush();
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.debug("Unable to close daemon connection", e);
+        }
+    }
+
+    private static void flushQuietly(OutputStream outputStream) {
+        try {
+            outputStream.flush();
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.debug("Unable to flush the output of an aborted run", e);
+        }
+    }
+
+    private static void sleepBeforeRetry() {
+        try {
+            Thread.sleep(ACCEPT_RETRY_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A loaded environment, with the state of everything it was loaded from.
+     *
+     * @param environment The loaded environment
+     * @param inputs      The lockfile and package directories
+     * @param packages    Every .qll the environment loaded
+     */
+    private record CachedEnvironment(LibraryEnvironment environment, List<FileState> inputs, List<FileState> packages) {
+
+        /**
+         * Checks if any package was replaced, such as by reinstalling it, since the environment was loaded.
+         */
+        boolean isUnchanged() throws IOException {
+            for (var packageState : packages) {
+                if (!packageState.equals(FileState.of(packageState.path()))) {
+                    LOGGER.debug("{} has changed since it was loaded", packageState.path());
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+
+    /**
+     * The size and modified time of a file, the same check {@link dev.qilletni.toolchain.qll.StartupSnapshotCache}
+     * makes before hashing it.
+     *
+     * @param path         The file, or <code>null</code>
+     * @param size         The size of the file, or -1 if it doesn't exist
+     * @param lastModified The last modified time of the file in milliseconds, or -1 if it doesn't exist
+     */
+    private record FileState(Path path, long size, long lastModified) {
+
+        static FileState of(Path path) throws IOException {
+            if (path == null || Files.notExists(path)) {
+                return new FileState(path, -1, -1);
+            }
+
+            return new FileState(path, Files.size(path), Files.getLastModifiedTime(path).toMillis());
+        }
+    }
+
+    /**
+     * Writes frames to a client from its own thread, so a client that stops reading only ever blocks that thread. Once
+     * the queue has been full for {@link #OUTPUT_TIMEOUT_SECONDS}, the client is considered stalled: its connection is
+     * closed, the run's thread is interrupted, and every later write fails, so the run ends and releases the daemon.
+     */
+    private static class FrameWriter implements Closeable {
+
+        // Queued once all frames have been sent
+        private static final byte[] END = new byte[0];
+
+        private final SocketChannel channel;
+        private final DataOutputStream output;
+        private final Thread runThread;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(OUTPUT_QUEUE_FRAMES);
+        private final Thread writerThread;
+
+        private volatile boolean stalled;
+        private volatile boolean closed;
+
+        FrameWriter(SocketChannel channel, DataOutputStream output, Thread runThread) {
+            this.channel = channel;
+            this.output = output;
+            this.runThread = runThread;
+            this.writerThread = Thread.ofVirtual().name("daemon-writer").start(this::writeFrames);
+        }
+
+        boolean isStalled() {
+            return stalled;
+        }
+
+        /**
+         * Queues an output frame.
+         *
+         * @throws IOException If the client has stalled
+         */
+        void writeOutput(byte frameType, byte[] b, int off, int len) throws IOException {
+            var frame = ByteBuffer.allocate(5 + len)
+                    .put(frameType)
+                    .putInt(len)
+                    .put(b, off, len);
+
+            send(frame.array());
+        }
+
+        void writeExit(int exitCode) throws IOException {
+            send(ByteBuffer.allocate(5).put(DaemonProtocol.FRAME_EXIT).putInt(exitCode).array());
+        }
+
+        private void send(byte[] frame) throws IOException {
+            if (stalled) {
+                throw new IOException("The daemon client stopped reading output");
+            }
+
+            // Output of threads the program left running after it finished
+            if (closed) {
+                return;
+            }
+
+            try {
+                if (!queue.offer(frame, OUTPUT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    stall();
+                    throw new IOException("The daemon client stopped reading output for %d seconds".formatted(OUTPUT_TIMEOUT_SECONDS));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while writing daemon output");
+            }
+        }
+
+        private void stall() {
+            if (stalled) {
+                return;
+            }
+
+            stalled = true;
+            queue.clear();
+
+            // Unblocks the writer thread, and interrupts the program if it's waiting on something else
+            closeQuietly(channel);
+            runThread.interrupt();
+        }
+
+        private void writeFrames() {
+            try {
+                byte[] frame;
+                while ((frame = queue.take()) != END) {
+                    output.write(frame);
+
+                    if (queue.isEmpty()) {
+                        output.flush();
+                    }
+                }
+
+                output.flush();
+            } catch (IOException e) {
+                LOGGER.debug("Unable to write daemon output", e);
+                stall();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Waits for the queued frames to be written, closing the connection if the client doesn't read them in time.
+         */
+        @Override
+        public void close() {
+            closed = true;
+
+            try {
+                if (stalled || !queue.offer(END, OUTPUT_TIMEOUT_SECONDS, TimeUnit.SECONDS) || !writerThread.join(Duration.ofSeconds(OUTPUT_TIMEOUT_SECONDS))) {
+                    stall();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                stall();
+            }
+
+            writerThread.interrupt();
+        }
+    }
+
+    /**
+     * Writes everything written to it as output frames of a single type. The frames are queued on a
+     * {@link FrameWriter}, and once the client has stalled every write fails with an {@link UncheckedIOException}, as
+     * a {@link PrintStream} would otherwise swallow the failure and keep the program running.
+     */
+    private static class FrameOutputStream extends OutputStream {
+
+        private final FrameWriter frameWriter;
+        private final byte frameType;
+
+        FrameOutputStream(FrameWriter frameWriter, byte frameType) {
+            this.frameWriter = frameWriter;
+            this.frameType = frameType;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (len == 0) {
+                return;
+            }
+
+            try {
+                frameWriter.writeOutput(frameType, b, off, len);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Sends everything written to it to the output of the run the current thread belongs to, or to the daemon's own
+     * console for every other thread. This is installed as {@link System#out} and {@link System#err} once, instead of
+     * replacing them for each run, as that would also capture the output of other connections.
+     */
+    private static class RoutingOutputStream extends OutputStream {
+
+        private final OutputStream defaultOutput;
+        private final InheritableThreadLocal<OutputStream> runOutput = new InheritableThreadLocal<>();
+
+        RoutingOutputStream(OutputStream defaultOutput) {
+            this.defaultOutput = defaultOutput;
+        }
+
+        void route(OutputStream outputStream) {
+            runOutput.set(outputStream);
+        }
+
+        void unroute() {
+            runOutput.remove();
+        }
+
+        private OutputStream getOutput() {
+            var output = runOutput.get();
+            return output != null ? output : defaultOutput;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            getOutput().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            getOutput().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            getOutput().flush();
+        }
+    }
+}
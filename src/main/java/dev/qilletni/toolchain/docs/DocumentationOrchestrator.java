@@ -2,6 +2,7 @@ package dev.qilletni.toolchain.docs;
 
 import dev.qilletni.api.lib.qll.QllInfo;
 import dev.qilletni.docgen.DocGenerator;
+import dev.qilletni.toolchain.jfr.DocGenerationEvent;
 import dev.qilletni.toolchain.logging.ProgressDisplay;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,6 +23,11 @@ public class DocumentationOrchestrator {
     public int beginDocGen(QllInfo qllInfo, Path inputDirectory) {
         LOGGER.debug("Generating docs for: {}", qllInfo.name());
 
+        var docGenerationEvent = new DocGenerationEvent();
+        docGenerationEvent.begin();
+        docGenerationEvent.packageName = qllInfo.name();
+        docGenerationEvent.packageVersion = qllInfo.version().getVersionString();
+
         try {
             ProgressDisplay.info("Generating docs...");
             docGenerator.generateDocs(inputDirectory, qllInfo);
@@ -32,22 +38,34 @@ public class DocumentationOrchestrator {
             ProgressDisplay.success("Generated docs");
         } catch (IOException e) {
             LOGGER.error("Failed to generate docs for: {}", qllInfo.name(), e);
+            docGenerationEvent.commit();
             return 1;
         }
+
+        docGenerationEvent.successful = true;
+        docGenerationEvent.commit();
         
         return 0;
     }
 
     public int regenerateAllPackages() {
+        var docGenerationEvent = new DocGenerationEvent();
+        docGenerationEvent.begin();
+        docGenerationEvent.packageName = "*";
+
         try {
             docGenerator.regenerateAllCachedDocs();
 
             docGenerator.regenerateGlobalIndex();
         } catch (IOException e) {
             LOGGER.error("Failed to regenerate all packages' docs", e);
+            docGenerationEvent.commit();
             return 1;
         }
 
+        docGenerationEvent.successful = true;
+        docGenerationEvent.commit();
+
         return 0;
     }
     
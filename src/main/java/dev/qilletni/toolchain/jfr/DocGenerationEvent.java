@@ -0,0 +1,27 @@
+package dev.qilletni.toolchain.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted when the docs of a package are generated.
+ */
+@Name("dev.qilletni.DocGeneration")
+@Label("Doc Generation")
+@Category({"Qilletni", "Toolchain"})
+@Description("Generating the docs of a package")
+public class DocGenerationEvent extends Event {
+
+    @Label("Package Name")
+    @Description("The package the docs were generated for, or * when regenerating every cached package")
+    public String packageName;
+
+    @Label("Package Version")
+    public String packageVersion;
+
+    @Label("Successful")
+    public boolean successful;
+}
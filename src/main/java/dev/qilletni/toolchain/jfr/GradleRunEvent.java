@@ -0,0 +1,30 @@
+package dev.qilletni.toolchain.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted for every Gradle subprocess the toolchain runs.
+ */
+@Name("dev.qilletni.GradleRun")
+@Label("Gradle Run")
+@Category({"Qilletni", "Toolchain"})
+@Description("Running a Gradle task in a subprocess")
+public class GradleRunEvent extends Event {
+
+    @Label("Command")
+    public String command;
+
+    @Label("Directory")
+    public String directory;
+
+    @Label("Exit Code")
+    @Description("The exit code of Gradle, or -1 if it timed out or couldn't be run")
+    public int exitCode;
+
+    @Label("Timed Out")
+    public boolean timedOut;
+}
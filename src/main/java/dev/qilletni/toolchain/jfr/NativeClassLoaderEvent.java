@@ -0,0 +1,23 @@
+package dev.qilletni.toolchain.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted when the classloader of every library's native classes is created.
+ */
+@Name("dev.qilletni.NativeClassLoader")
+@Label("Native ClassLoader Creation")
+@Category({"Qilletni", "Toolchain"})
+@Description("Creating the classloader of the libraries' native classes")
+public class NativeClassLoaderEvent extends Event {
+
+    @Label("URL Count")
+    public int urlCount;
+
+    @Label("URLs")
+    public String urls;
+}
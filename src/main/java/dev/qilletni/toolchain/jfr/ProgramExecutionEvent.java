@@ -0,0 +1,26 @@
+package dev.qilletni.toolchain.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted when a Qilletni program is run, including importing its initial files and shutting down.
+ */
+@Name("dev.qilletni.ProgramExecution")
+@Label("Program Execution")
+@Category({"Qilletni", "Toolchain"})
+@Description("Running a Qilletni program")
+public class ProgramExecutionEvent extends Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Library Count")
+    public int libraryCount;
+
+    @Label("Exit Code")
+    public int exitCode;
+}
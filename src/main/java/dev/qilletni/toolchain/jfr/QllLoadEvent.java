@@ -0,0 +1,41 @@
+package dev.qilletni.toolchain.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted when a .qll is read, see {@link dev.qilletni.toolchain.qll.QllLoader#readQll}.
+ */
+@Name("dev.qilletni.QllLoad")
+@Label("QLL Load")
+@Category({"Qilletni", "Toolchain"})
+@Description("Reading a .qll's info and source table")
+public class QllLoadEvent extends Event {
+
+    @Label("Package Name")
+    public String packageName;
+
+    @Label("Package Version")
+    public String packageVersion;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Entry Count")
+    public int entryCount;
+
+    @Label("Source Count")
+    public int sourceCount;
+
+    @Label("Info From Snapshot")
+    @Description("If the qll.info was already known from the startup snapshot, instead of being decoded")
+    public boolean infoFromSnapshot;
+}
@@ -0,0 +1,30 @@
+package dev.qilletni.toolchain.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted when a library source is looked up by its import path.
+ */
+@Name("dev.qilletni.SourceResolution")
+@Label("Source Resolution")
+@Category({"Qilletni", "Toolchain"})
+@Description("Looking up a library source by its import path")
+public class SourceResolutionEvent extends Event {
+
+    @Label("Library")
+    public String library;
+
+    @Label("Import Path")
+    public String importPath;
+
+    @Label("Found")
+    public boolean found;
+
+    @Label("Cached")
+    @Description("If the lookup was answered from the cache, without reading the source")
+    public boolean cached;
+}
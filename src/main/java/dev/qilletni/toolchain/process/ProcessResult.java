@@ -0,0 +1,29 @@
+package dev.qilletni.toolchain.process;
+
+import java.time.Duration;
+
+/**
+ * Represents the result of a process execution.
+ *
+ * @param exitCode The exit code of the process, or -1 if it timed out, was cancelled or couldn't be started
+ * @param stdOut   The captured standard output, trimmed. If more than the capture limit was written, only the end
+ * @param stdErr   The captured standard error, trimmed. If more than the capture limit was written, only the end
+ * @param duration How long the process ran for
+ * @param timedOut If the process was killed for running longer than its timeout
+ */
+public record ProcessResult(int exitCode, String stdOut, String stdErr, Duration duration, boolean timedOut) {
+
+    /**
+     * Creates the result of a process that couldn't be run at all.
+     *
+     * @param message The reason, used as the standard error
+     * @return The failed result
+     */
+    public static ProcessResult failed(String message) {
+        return new ProcessResult(-1, "", message, Duration.ZERO, false);
+    }
+
+    public boolean isSuccessful() {
+        return exitCode == 0;
+    }
+}
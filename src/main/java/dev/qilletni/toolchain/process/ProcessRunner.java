@@ -0,0 +1,216 @@
+package dev.qilletni.toolchain.process;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs a subprocess, pumping its standard output and error concurrently on virtual threads so neither pipe can fill up
+ * and block the process. Each line is passed to an optional listener as it's written, and the last
+ * {@link #captureLimit(int)} characters of each stream are kept for the {@link ProcessResult}.
+ * <p>
+ * A runner is configured once and then {@link #run()}. While it's running, another thread may {@link #cancel()} it, as
+ * does interrupting the thread calling {@link #run()}. Timed out and cancelled processes are killed along with any
+ * processes they started, such as the JVM a <code>gradlew</code> script launches.
+ */
+public class ProcessRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessRunner.class);
+
+    /**
+     * The default number of characters of each stream kept for the result.
+     */
+    public static final int DEFAULT_CAPTURE_LIMIT = 1024 * 1024;
+
+    /**
+     * How long to wait for the output pumps to drain once the process has exited.
+     */
+    private static final Duration PUMP_DRAIN_TIMEOUT = Duration.ofSeconds(5);
+
+    private final List<String> command;
+    private Path directory;
+    private Duration timeout;
+    private int captureLimit = DEFAULT_CAPTURE_LIMIT;
+    private Consumer<String> outputListener = line -> {};
+    private Consumer<String> errorListener = line -> {};
+
+    private volatile Process process;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a runner of the given command, with no timeout.
+     *
+     * @param command The command and its arguments
+     */
+    public ProcessRunner(List<String> command) {
+        this.command = List.copyOf(command);
+    }
+
+    /**
+     * @param directory The working directory of the process
+     * @return This runner
+     */
+    public ProcessRunner directory(Path directory) {
+        this.directory = directory;
+        return this;
+    }
+
+    /**
+     * @param timeout How long the process may run before it's killed, or <code>null</code> to wait forever
+     * @return This runner
+     */
+    public ProcessRunner timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * @param captureLimit The number of characters of each stream to keep, from the end. 0 keeps nothing
+     * @return This runner
+     */
+    public ProcessRunner captureLimit(int captureLimit) {
+        this.captureLimit = captureLimit;
+        return this;
+    }
+
+    /**
+     * @param outputListener Called with every line of standard output as it's written, on a pump thread
+     * @return This runner
+     */
+    public ProcessRunner outputListener(Consumer<String> outputListener) {
+        this.outputListener = outputListener;
+        return this;
+    }
+
+    /**
+     * @param errorListener Called with every line of standard error as it's written, on a pump thread
+     * @return This runner
+     */
+    public ProcessRunner errorListener(Consumer<String> errorListener) {
+        this.errorListener = errorListener;
+        return this;
+    }
+
+    /**
+     * Starts the process and waits for it to exit, time out or be cancelled.
+     *
+     * @return The result of the process
+     * @throws IOException If the process couldn't be started
+     */
+    public ProcessResult run() throws IOException {
+        var processBuilder = new ProcessBuilder(command);
+        if (directory != null) {
+            processBuilder.directory(directory.toFile());
+        }
+
+        var startNanos = System.nanoTime();
+        process = processBuilder.start();
+
+        if (cancelled) {
+            kill(process);
+        }
+
+        var stdOut = new OutputTail(captureLimit);
+        var stdErr = new OutputTail(captureLimit);
+
+        var outputPump = Thread.ofVirtual().name("process-stdout-" + process.pid()).start(() -> pump(process.inputReader(), outputListener, stdOut));
+        var errorPump = Thread.ofVirtual().name("process-stderr-" + process.pid()).start(() -> pump(process.errorReader(), errorListener, stdErr));
+
+        var timedOut = false;
+
+        try {
+            if (timeout == null) {
+                process.waitFor();
+            } else if (!process.waitFor(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                LOGGER.warn("Process '{}' timed out after {}", String.join(" ", command), timeout);
+                timedOut = true;
+                kill(process);
+            }
+
+            outputPump.join(PUMP_DRAIN_TIMEOUT);
+            errorPump.join(PUMP_DRAIN_TIMEOUT);
+        } catch (InterruptedException e) {
+            LOGGER.debug("Interrupted while waiting for '{}', killing it", String.join(" ", command));
+            kill(process);
+            Thread.currentThread().interrupt();
+        }
+
+        var duration = Duration.ofNanos(System.nanoTime() - startNanos);
+        var exitCode = process.isAlive() || timedOut || cancelled ? -1 : process.exitValue();
+
+        LOGGER.debug("Process '{}' exited with code {} in {} ms", String.join(" ", command), exitCode, duration.toMillis());
+
+        return new ProcessResult(exitCode, stdOut.toString().trim(), stdErr.toString().trim(), duration, timedOut);
+    }
+
+    /**
+     * Kills the process if it's running, or makes it be killed as soon as it starts. {@link #run()} then returns with
+     * an exit code of -1.
+     */
+    public void cancel() {
+        cancelled = true;
+
+        var runningProcess = process;
+        if (runningProcess != null) {
+            kill(runningProcess);
+        }
+    }
+
+    private static void kill(Process process) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+    }
+
+    private static void pump(BufferedReader reader, Consumer<String> listener, OutputTail tail) {
+        try (reader) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                listener.accept(line);
+                tail.append(line);
+            }
+        } catch (IOException e) {
+            // The stream is closed when the process is killed
+            LOGGER.debug("Stopped reading process output", e);
+        }
+    }
+
+    /**
+     * Keeps the last lines written to a stream, up to a number of characters.
+     */
+    private static class OutputTail {
+
+        private final int limit;
+        private final ArrayDeque<String> lines = new ArrayDeque<>();
+        private int length;
+
+        OutputTail(int limit) {
+            this.limit = limit;
+        }
+
+        synchronized void append(String line) {
+            if (limit <= 0) {
+                return;
+            }
+
+            lines.addLast(line);
+            length += line.length() + 1;
+
+            while (length > limit && !lines.isEmpty()) {
+                length -= lines.removeFirst().length() + 1;
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.join("\n", lines);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.toolchain.utils.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Properties;
+
+/**
+ * Skips and caches library builds. A build is identified by its fingerprint, a hash of everything that goes into the
+ * .qll: <code>qilletni_info.yml</code>, every .ql source, the native jar, the packaging options and the toolchain
+ * version.
+ * <p>
+ * Each project remembers the fingerprint of its last build in <code>build/qilletni-build.properties</code>, so a build
+ * whose fingerprint and output are unchanged is skipped. Built .qll files are also stored in a content-addressed cache
+ * shared by every project, named after their fingerprint, so switching back to an earlier state of a project restores
+ * its .qll instead of packaging it again. Only the most recently used {@link #MAX_ENTRIES} are kept.
+ */
+public class BuildCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildCache.class);
+
+    private static final String BUILD_STATE_FILE = "qilletni-build.properties";
+
+    /**
+     * The number of .qll files kept in the cache.
+     */
+    private static final int MAX_ENTRIES = 64;
+
+    private final Path cacheDirectory;
+
+    /**
+     * @param cacheDirectory The directory built .qll files are stored in
+     */
+    public BuildCache(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Computes the fingerprint of a build.
+     *
+     * @param toolchainVersion The version of the running toolchain
+     * @param packagingOptions Every option that changes how the .qll is packaged, such as its compression and layout
+     * @param sourcePath       The <code>qilletni-src</code> directory of the library
+     * @param nativeJarPath    The native jar of the library, or <code>null</code> if it has none
+     * @return The lowercase hex encoded fingerprint
+     */
+    public static String fingerprint(String toolchainVersion, String packagingOptions, Path sourcePath, Path nativeJarPath) throws IOException {
+        var digest = HashUtil.newDigest();
+
+        digest.update("toolchain=%s\noptions=%s\n".formatted(toolchainVersion, packagingOptions).getBytes(StandardCharsets.UTF_8));
+
+        try (var walk = Files.walk(sourcePath, FileVisitOption.FOLLOW_LINKS)) {
+            var inputs = walk.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().endsWith(".ql") || path.getFileName().toString().equals("qilletni_info.yml"))
+                    .sorted()
+                    .toList();
+
+            for (var input : inputs) {
+                var relativeName = sourcePath.relativize(input).toString().replace('\\', '/');
+                digest.update("source=%s:%s\n".formatted(relativeName, HashUtil.sha256(input)).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        var nativeJarHash = nativeJarPath != null ? HashUtil.sha256(nativeJarPath) : "none";
+        digest.update("native=%s\n".formatted(nativeJarHash).getBytes(StandardCharsets.UTF_8));
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Checks if the last build of a project had the same fingerprint, and its output hasn't been changed or deleted
+     * since.
+     *
+     * @param buildDirectory The <code>build</code> directory of the project
+     * @param fingerprint    The fingerprint of the build about to be run
+     * @param destination    The .qll the build would write
+     * @return If the build can be skipped
+     */
+    public static boolean isUpToDate(Path buildDirectory, String fingerprint, Path destination) {
+        var stateFile = buildDirectory.resolve(BUILD_STATE_FILE);
+
+        if (Files.notExists(stateFile) || Files.notExists(destination)) {
+            return false;
+        }
+
+        try (var inputStream = Files.newInputStream(stateFile)) {
+            var properties = new Properties();
+            properties.load(inputStream);
+
+            return fingerprint.equals(properties.getProperty("fingerprint"))
+                    && destination.toAbsolutePath().toString().equals(properties.getProperty("output"))
+                    && String.valueOf(Files.size(destination)).equals(properties.getProperty("output.size"))
+                    && String.valueOf(Files.getLastModifiedTime(destination).toMillis()).equals(properties.getProperty("output.modified"));
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.debug("Unable to read build state {}", stateFile, e);
+            return false;
+        }
+    }
+
+    /**
+     * Records the fingerprint and output of a finished build, for {@link #isUpToDate(Path, String, Path)}.
+     *
+     * @param buildDirectory The <code>build</code> directory of the project
+     * @param fingerprint    The fingerprint of the build
+     * @param destination    The .qll the build wrote
+     */
+    public static void recordBuild(Path buildDirectory, String fingerprint, Path destination) {
+        var stateFile = buildDirectory.resolve(BUILD_STATE_FILE);
+
+        try {
+            Files.createDirectories(buildDirectory);
+
+            var properties = new Properties();
+            properties.setProperty("fingerprint", fingerprint);
+            properties.setProperty("output", destination.toAbsolutePath().toString());
+            properties.setProperty("output.size", String.valueOf(Files.size(destination)));
+            properties.setProperty("output.modified", String.valueOf(Files.getLastModifiedTime(destination).toMillis()));
+
+            try (var outputStream = Files.newOutputStream(stateFile)) {
+                properties.store(outputStream, "The last build of this library, recorded by Qilletni");
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to record build state in {}", stateFile, e);
+        }
+    }
+
+    /**
+     * Copies a cached .qll with the given fingerprint to the destination, if one is cached.
+     *
+     * @param fingerprint The fingerprint of the build
+     * @param destination The .qll to write
+     * @return If the .qll was restored from the cache
+     */
+    public boolean restore(String fingerprint, Path destination) {
+        var cachedQll = cacheDirectory.resolve(fingerprint + ".qll");
+
+        if (Files.notExists(cachedQll)) {
+            return false;
+        }
+
+        try {
+            copyAtomically(cachedQll, destination);
+
+            // The modified time tracks when an entry was last used, for pruning
+            Files.setLastModifiedTime(cachedQll, FileTime.fromMillis(System.currentTimeMillis()));
+
+            LOGGER.debug("Restored {} from build cache entry {}", destination, fingerprint);
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to restore {} from the build cache", destination, e);
+            return false;
+        }
+    }
+
+    /**
+     * Stores a built .qll in the cache, and prunes the least recently used entries. Failures are logged and otherwise
+     * ignored, as the cache is never required to build.
+     *
+     * @param fingerprint The fingerprint of the build
+     * @param builtQll    The .qll the build wrote
+     */
+    public void store(String fingerprint, Path builtQll) {
+        try {
+            copyAtomically(builtQll, cacheDirectory.resolve(fingerprint + ".qll"));
+            prune();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to store {} in the build cache", builtQll, e);
+        }
+    }
+
+    private void prune() throws IOException {
+        try (var list = Files.list(cacheDirectory)) {
+            var entries = list.filter(path -> path.getFileName().toString().endsWith(".qll"))
+                    .sorted(Comparator.comparing(BuildCache::getLastModified).reversed())
+                    .toList();
+
+            for (var entry : entries.subList(Math.min(MAX_ENTRIES, entries.size()), entries.size())) {
+                LOGGER.debug("Pruning build cache entry {}", entry.getFileName());
+                Files.deleteIfExists(entry);
+            }
+        }
+    }
+
+    private static FileTime getLastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void copyAtomically(Path source, Path destination) throws IOException {
+        var destinationDirectory = destination.toAbsolutePath().getParent();
+        Files.createDirectories(destinationDirectory);
+
+        var tempFile = Files.createTempFile(destinationDirectory, destination.getFileName().toString(), ".tmp");
+
+        try {
+            Files.copy(source, tempFile, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tempFile, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+}
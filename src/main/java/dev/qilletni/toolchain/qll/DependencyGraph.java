@@ -0,0 +1,282 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The dependency graph of a set of libraries, indexed by their scope and name. Building the graph checks every
+ * declared dependency once against the index, so every problem is found in a single pass, in time linear to the number
+ * of libraries and dependencies.
+ * <p>
+ * Missing dependencies, unmet version constraints and libraries present in more than one version are errors. Cycles
+ * are only reported as warnings, as libraries may import each other.
+ */
+public class DependencyGraph {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DependencyGraph.class);
+
+    private final List<QllInfo> libraries;
+    private final Map<LibraryKey, QllInfo> index;
+    private final Map<LibraryKey, List<LibraryKey>> edges;
+    private final List<List<LibraryKey>> cycles;
+    private final List<Problem> problems;
+
+    private DependencyGraph(List<QllInfo> libraries, Map<LibraryKey, QllInfo> index, Map<LibraryKey, List<LibraryKey>> edges, List<List<LibraryKey>> cycles, List<Problem> problems) {
+        this.libraries = libraries;
+        this.index = index;
+        this.edges = edges;
+        this.cycles = cycles;
+        this.problems = problems;
+    }
+
+    /**
+     * Builds the graph of the given libraries, finding every problem with their dependencies.
+     *
+     * @param libraries The libraries to build the graph of
+     * @return The built graph
+     */
+    public static DependencyGraph build(List<QllInfo> libraries) {
+        var index = new LinkedHashMap<LibraryKey, QllInfo>(libraries.size() * 2);
+        var problems = new ArrayList<Problem>();
+
+        for (var library : libraries) {
+            var key = LibraryKey.of(library);
+            var existing = index.putIfAbsent(key, library);
+
+            if (existing != null) {
+                problems.add(new Problem(ProblemKind.DUPLICATE, library, "[%s] Library is present more than once, with versions %s and %s"
+                        .formatted(key, existing.version().getVersionString(), library.version().getVersionString())));
+            }
+        }
+
+        var edges = new HashMap<LibraryKey, List<LibraryKey>>(index.size() * 2);
+
+        for (var library : index.values()) {
+            var dependencyKeys = new ArrayList<LibraryKey>(library.dependencies().size());
+
+            for (var dependency : library.dependencies()) {
+                var dependencyKey = new LibraryKey(dependency.scope(), dependency.name());
+                var dependencyLibrary = index.get(dependencyKey);
+
+                if (dependencyLibrary == null) {
+                    problems.add(new Problem(ProblemKind.MISSING, library, "[%s] Dependency '%s' not found! (Version %s)"
+                            .formatted(library.name(), dependencyKey, dependency.version().getVersionString())));
+                    continue;
+                }
+
+                dependencyKeys.add(dependencyKey);
+
+                if (dependency.version().permitsVersion(dependencyLibrary.version())) {
+                    LOGGER.debug("[{}] Dependency '{}' version {} matches required version {}", library.name(), dependencyKey, dependencyLibrary.version().getVersionString(), dependency.version().getVersionString());
+                } else {
+                    problems.add(new Problem(ProblemKind.UNMET_VERSION, library, "[%s] Dependency '%s' version %s does not match required version %s"
+                            .formatted(library.name(), dependencyKey, dependencyLibrary.version().getVersionString(), dependency.version().getVersionString())));
+                }
+            }
+
+            edges.put(LibraryKey.of(library), dependencyKeys);
+        }
+
+        var cycles = findCycles(index.keySet(), edges);
+
+        for (var cycle : cycles) {
+            var cycleDescription = new ArrayList<String>();
+            cycle.forEach(key -> cycleDescription.add(key.toString()));
+            cycleDescription.add(cycle.getFirst().toString());
+
+            problems.add(new Problem(ProblemKind.CYCLE, index.get(cycle.getFirst()), "Dependency cycle: " + String.join(" -> ", cycleDescription)));
+        }
+
+        return new DependencyGraph(List.copyOf(libraries), Collections.unmodifiableMap(index), edges, cycles.stream().map(List::copyOf).toList(), List.copyOf(problems));
+    }
+
+    /**
+     * @return The libraries the graph was built from
+     */
+    public List<QllInfo> getLibraries() {
+        return libraries;
+    }
+
+    /**
+     * Gets a library by its scope and name.
+     *
+     * @param key The scope and name of the library
+     * @return The library, if it's in the graph
+     */
+    public Optional<QllInfo> getLibrary(LibraryKey key) {
+        return Optional.ofNullable(index.get(key));
+    }
+
+    /**
+     * Gets the direct dependencies of a library which are in the graph.
+     *
+     * @param key The scope and name of the library
+     * @return The library's direct dependencies, in declaration order
+     */
+    public List<LibraryKey> getDependencies(LibraryKey key) {
+        return Collections.unmodifiableList(edges.getOrDefault(key, List.of()));
+    }
+
+    /**
+     * Gets every library a library depends on, directly or transitively.
+     *
+     * @param key The scope and name of the library
+     * @return The library's transitive dependencies, nearest first, not including the library itself
+     */
+    public Set<LibraryKey> getTransitiveDependencies(LibraryKey key) {
+        var visited = new LinkedHashSet<LibraryKey>();
+        var queue = new ArrayDeque<>(getDependencies(key));
+
+        while (!queue.isEmpty()) {
+            var next = queue.poll();
+
+            if (!next.equals(key) && visited.add(next)) {
+                queue.addAll(getDependencies(next));
+            }
+        }
+
+        return Collections.unmodifiableSet(visited);
+    }
+
+    /**
+     * Gets the libraries of every dependency cycle, being the strongly connected components of the graph. A cycle is
+     * always listed after the cycles it depends on.
+     *
+     * @return The libraries of each cycle
+     */
+    public List<List<LibraryKey>> getCycles() {
+        return cycles;
+    }
+
+    /**
+     * @return Every problem found in the graph, errors and warnings
+     */
+    public List<Problem> getProblems() {
+        return problems;
+    }
+
+    /**
+     * @return If the graph has no errors. Warnings, such as cycles, are allowed
+     */
+    public boolean isValid() {
+        return problems.stream().noneMatch(problem -> problem.kind().isError());
+    }
+
+    /**
+     * Finds every cycle with Tarjan's strongly connected components algorithm. Each component with more than one
+     * library, or with a library depending on itself, is a cycle.
+     */
+    private static List<List<LibraryKey>> findCycles(Set<LibraryKey> keys, Map<LibraryKey, List<LibraryKey>> edges) {
+        var tarjan = new Tarjan(edges);
+
+        for (var key : keys) {
+            if (!tarjan.indices.containsKey(key)) {
+                tarjan.connect(key);
+            }
+        }
+
+        return tarjan.cycles;
+    }
+
+    private static class Tarjan {
+        private final Map<LibraryKey, List<LibraryKey>> edges;
+        private final Map<LibraryKey, Integer> indices = new HashMap<>();
+        private final Map<LibraryKey, Integer> lowLinks = new HashMap<>();
+        private final ArrayDeque<LibraryKey> stack = new ArrayDeque<>();
+        private final Set<LibraryKey> onStack = new HashSet<>();
+        private final List<List<LibraryKey>> cycles = new ArrayList<>();
+        private int nextIndex;
+
+        private Tarjan(Map<LibraryKey, List<LibraryKey>> edges) {
+            this.edges = edges;
+        }
+
+        private void connect(LibraryKey key) {
+            indices.put(key, nextIndex);
+            lowLinks.put(key, nextIndex);
+            nextIndex++;
+            stack.push(key);
+            onStack.add(key);
+
+            for (var dependency : edges.getOrDefault(key, List.of())) {
+                if (!indices.containsKey(dependency)) {
+                    connect(dependency);
+                    lowLinks.put(key, Math.min(lowLinks.get(key), lowLinks.get(dependency)));
+                } else if (onStack.contains(dependency)) {
+                    lowLinks.put(key, Math.min(lowLinks.get(key), indices.get(dependency)));
+                }
+            }
+
+            if (lowLinks.get(key).equals(indices.get(key))) {
+                var component = new ArrayList<LibraryKey>();
+                LibraryKey member;
+                do {
+                    member = stack.pop();
+                    onStack.remove(member);
+                    component.add(member);
+                } while (!member.equals(key));
+
+                if (component.size() > 1 || edges.getOrDefault(key, List.of()).contains(key)) {
+                    Collections.reverse(component);
+                    cycles.add(component);
+                }
+            }
+        }
+    }
+
+    /**
+     * The scope and name identifying a library.
+     *
+     * @param scope The scope of the library, empty if it has none
+     * @param name  The name of the library
+     */
+    public record LibraryKey(String scope, String name) {
+        public static LibraryKey of(QllInfo qllInfo) {
+            return new LibraryKey(qllInfo.scope(), qllInfo.name());
+        }
+
+        @Override
+        public String toString() {
+            return scope == null || scope.isEmpty() ? name : scope + "/" + name;
+        }
+    }
+
+    public enum ProblemKind {
+        MISSING(true),
+        UNMET_VERSION(true),
+        DUPLICATE(true),
+        CYCLE(false);
+
+        private final boolean error;
+
+        ProblemKind(boolean error) {
+            this.error = error;
+        }
+
+        public boolean isError() {
+            return error;
+        }
+    }
+
+    /**
+     * A problem found in the graph.
+     *
+     * @param kind    The kind of problem
+     * @param library The library the problem was found in
+     * @param message A description of the problem
+     */
+    public record Problem(ProblemKind kind, QllInfo library, String message) {}
+}
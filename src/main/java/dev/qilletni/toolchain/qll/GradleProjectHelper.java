@@ -1,21 +1,53 @@
 package dev.qilletni.toolchain.qll;
 
+import dev.qilletni.toolchain.jfr.GradleRunEvent;
+import dev.qilletni.toolchain.process.ProcessResult;
+import dev.qilletni.toolchain.process.ProcessRunner;
+import dev.qilletni.toolchain.utils.HashUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HexFormat;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Optional;
+import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.TimeUnit;
 
 public class GradleProjectHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GradleProjectHelper.class);
 
+    /**
+     * How long a Gradle task may run before it's killed. Cold builds that download dependencies can take minutes.
+     */
+    private static final Duration GRADLE_TIMEOUT = Duration.ofMinutes(15);
+
+    /**
+     * The file in the project's <code>build</code> directory that caches the result of {@link #findProjectJar(boolean)}.
+     */
+    private static final String JAR_PATH_CACHE_FILE = "qilletni-jar-path.properties";
+
+    /**
+     * Prefixes the line the jar finding init script prints, to tell it apart from Gradle's own output.
+     */
+    private static final String JAR_PATH_MARKER = "qilletni-jar-path=";
+
+    /**
+     * The files that decide where the shadow jar is written. If none of these change, neither does the jar's path.
+     */
+    private static final List<String> BUILD_FILE_NAMES = List.of("build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts", "gradle.properties", ".qilletni_build.properties");
+
     private final ProjectBuildSettings buildSettings;
 
     private GradleProjectHelper(ProjectBuildSettings buildSettings) {
@@ -28,7 +60,7 @@ public class GradleProjectHelper {
         if (Files.notExists(propertiesFile)) {
             LOGGER.debug("No .qilletni_build.properties file found in project root: {}", projectRoot.toAbsolutePath());
 
-            return Optional.of(new GradleProjectHelper(new ProjectBuildSettings("", projectRoot.toAbsolutePath())));
+            return Optional.of(new GradleProjectHelper(new ProjectBuildSettings("", projectRoot.toAbsolutePath(), projectRoot.toAbsolutePath())));
         }
 
         try {
@@ -49,7 +81,7 @@ public class GradleProjectHelper {
             LOGGER.debug("Creating GradleProjectHelper with moduleName='{}', rootDir='{}' from properties file: {}",
                     moduleName, rootDir, propertiesFile.toAbsolutePath());
 
-            return Optional.of(new GradleProjectHelper(new ProjectBuildSettings(moduleName, rootDir)));
+            return Optional.of(new GradleProjectHelper(new ProjectBuildSettings(moduleName, rootDir, projectRoot.toAbsolutePath())));
         } catch (IOException e) {
             LOGGER.error("Error reading .qilletni_build.properties file in project root: {}", projectRoot.toAbsolutePath(), e);
             return Optional.empty();
@@ -65,60 +97,57 @@ public class GradleProjectHelper {
      * @return The process result containing exit code and output
      */
     public ProcessResult runGradleTask(boolean verboseGradleOutput, String task, String... args) {
-        try {
-            // Determine whether to use gradlew or gradlew.bat based on OS
-            var gradleWrapper = System.getProperty("os.name").toLowerCase().contains("win")
-                    ? "gradlew.bat"
-                    : "./gradlew";
+        var gradleRunEvent = new GradleRunEvent();
+        gradleRunEvent.begin();
 
-            // Build the command
-            var command = new ArrayList<String>();
-            command.add(gradleWrapper);
-            command.add(task);
+        var processResult = executeGradleTask(verboseGradleOutput, task, args);
 
-            Collections.addAll(command, args);
+        if (gradleRunEvent.shouldCommit()) {
+            gradleRunEvent.command = task + (args.length > 0 ? " " + String.join(" ", args) : "");
+            gradleRunEvent.directory = buildSettings.rootDir().toAbsolutePath().toString();
+            gradleRunEvent.exitCode = processResult.exitCode();
+            gradleRunEvent.timedOut = processResult.timedOut();
+            gradleRunEvent.commit();
+        }
 
-            var processBuilder = new ProcessBuilder(command);
-            processBuilder.directory(buildSettings.rootDir.toFile());
+        return processResult;
+    }
 
-            LOGGER.info("Running Gradle task: '{}' in directory: {}", String.join(" ", command), buildSettings.rootDir.toAbsolutePath());
+    private ProcessResult executeGradleTask(boolean verboseGradleOutput, String task, String... args) {
+        // Determine whether to use gradlew or gradlew.bat based on OS
+        var gradleWrapper = System.getProperty("os.name").toLowerCase().contains("win")
+                ? "gradlew.bat"
+                : "./gradlew";
 
-            var process = processBuilder.start();
+        // Build the command
+        var command = new ArrayList<String>();
+        command.add(gradleWrapper);
+        command.add(task);
 
-            var stdOut = new StringBuilder();
-            var stdErr = new StringBuilder();
+        Collections.addAll(command, args);
 
-            try (var reader = process.inputReader()) {
-                reader.lines().forEach(str -> {
-                    if (verboseGradleOutput) {
-                        System.out.println(str);
-                    }
-                    
-                    stdOut.append(str).append('\n');
-                });
-            }
+        LOGGER.info("Running Gradle task: '{}' in directory: {}", String.join(" ", command), buildSettings.rootDir.toAbsolutePath());
 
-            try (var reader = process.errorReader()) {
-                reader.lines().forEach(str -> {
-                    if (verboseGradleOutput) {
-                        System.err.println(str);
-                    }
+        var processRunner = new ProcessRunner(command)
+                .directory(buildSettings.rootDir)
+                .timeout(GRADLE_TIMEOUT);
 
-                    stdErr.append(str).append('\n');
-                });
-            }
+        if (verboseGradleOutput) {
+            processRunner.outputListener(System.out::println)
+                    .errorListener(System.err::println);
+        }
 
-            boolean completed = process.waitFor(1, TimeUnit.MINUTES);
-            if (!completed) {
-                process.destroyForcibly();
-                return new ProcessResult(-1, "Process timed out after 1 minute", stdErr.toString().trim());
-            }
+        try {
+            var processResult = processRunner.run();
 
-            return new ProcessResult(process.exitValue(), stdOut.toString().trim(), stdErr.toString().trim());
+            if (processResult.timedOut()) {
+                return new ProcessResult(-1, processResult.stdOut(), "Gradle timed out after %d minutes\n%s".formatted(GRADLE_TIMEOUT.toMinutes(), processResult.stdErr()), processResult.duration(), true);
+            }
 
-        } catch (IOException | InterruptedException e) {
+            return processResult;
+        } catch (IOException e) {
             LOGGER.error("Error while running Gradle task: {}", task, e);
-            return new ProcessResult(-1, "", e.getMessage());
+            return ProcessResult.failed(e.getMessage());
         }
     }
 
@@ -129,44 +158,99 @@ public class GradleProjectHelper {
      * @return The process result containing exit code and output
      */
     public ProcessResult runShadowJarTask(boolean verboseGradleOutput) {
-        return runGradleTask(verboseGradleOutput, "%s:shadowJar".formatted(buildSettings.moduleName()));
+        return runGradleTask(verboseGradleOutput, getShadowJarTaskPath());
     }
 
     /**
-     * Finds the jar file that will be created (or has been created) in the project in the given path.
+     * Runs the shadowJar task, and finds the jar file it created from the same Gradle invocation. The path is printed
+     * by an init script after the task runs, prefixed with {@link #JAR_PATH_MARKER} so it can be picked out of the rest
+     * of Gradle's output. The found path is also cached for {@link #findProjectJarCached(boolean)}.
      *
      * @param verboseGradleOutput Whether to print verbose output from Gradle
      * @return The path of the jar file
      */
     public Optional<Path> findProjectJar(boolean verboseGradleOutput) {
+        return Optional.ofNullable(findProjectJars(List.of(this), verboseGradleOutput).get(buildSettings.projectRoot()));
+    }
+
+    /**
+     * Runs the shadowJar tasks of several projects of the same Gradle build in a single Gradle invocation, and finds
+     * the jar files they created like {@link #findProjectJar(boolean)}. Gradle builds the modules in parallel, and
+     * keeps building the others if one fails.
+     *
+     * @param projectHelpers      The projects to build, which must all share the same {@link #getRootDir()}
+     * @param verboseGradleOutput Whether to print verbose output from Gradle
+     * @return The jar file of each project that was built successfully, by its project root
+     */
+    public static Map<Path, Path> findProjectJars(List<GradleProjectHelper> projectHelpers, boolean verboseGradleOutput) {
+        if (projectHelpers.isEmpty()) {
+            return Map.of();
+        }
+
+        var rootDir = projectHelpers.getFirst().getRootDir();
+
+        if (projectHelpers.stream().anyMatch(projectHelper -> !projectHelper.getRootDir().equals(rootDir))) {
+            throw new IllegalArgumentException("Every project must be in the Gradle build at " + rootDir);
+        }
+
+        // Libraries in the same module share a task
+        var projectsByTask = new LinkedHashMap<String, List<GradleProjectHelper>>();
+        projectHelpers.forEach(projectHelper -> projectsByTask.computeIfAbsent(projectHelper.getShadowJarTaskPath(), task -> new ArrayList<>()).add(projectHelper));
+
         Path jarFindScript = null;
 
         try {
             jarFindScript = Files.createTempFile("qilletni-gradle-jar-find", ".groovy");
-            Files.writeString(jarFindScript, "gradle.taskGraph.afterTask { t, _ -> if (t.name == 'shadowJar') println t.archiveFile.get() }");
-
-            // Run the shadowJar task with the script to find the jar file
-            ProcessResult result = runGradleTask(
-                    verboseGradleOutput,
-                    "%s:shadowJar".formatted(buildSettings.moduleName()),
-                    "--console=plain",
-                    "--quiet",
-                    "-I",
-                    jarFindScript.toString()
-            );
-
-            if (result.exitCode != 0 || result.stdOut.isEmpty()) {
-                if (!result.stdErr.isEmpty()) {
-                    LOGGER.error("Gradle error output: {}", result.stdErr);
-                }
-                return Optional.empty();
+            Files.writeString(jarFindScript, "gradle.taskGraph.afterTask { t, s -> if (t.name == 'shadowJar' && s.failure == null) println '%s' + t.path + '=' + t.archiveFile.get() }".formatted(JAR_PATH_MARKER));
+
+            var tasks = new ArrayList<>(projectsByTask.keySet());
+            var args = new ArrayList<>(tasks.subList(1, tasks.size()));
+            Collections.addAll(args, "--console=plain", "--daemon", "-I", jarFindScript.toString());
+
+            if (tasks.size() > 1) {
+                Collections.addAll(args, "--parallel", "--continue");
             }
 
-            return Optional.of(Path.of(result.stdOut));
+            // Run every shadowJar task at once, in a (possibly already warm) daemon, with the script to find the jar files
+            var result = projectHelpers.getFirst().runGradleTask(verboseGradleOutput, tasks.getFirst(), args.toArray(String[]::new));
+
+            var jarsByTask = new HashMap<String, Path>();
+            result.stdOut().lines()
+                    .filter(line -> line.startsWith(JAR_PATH_MARKER))
+                    .map(line -> line.substring(JAR_PATH_MARKER.length()).trim())
+                    .filter(line -> line.contains("="))
+                    .forEach(line -> jarsByTask.put(line.substring(0, line.indexOf('=')), Path.of(line.substring(line.indexOf('=') + 1))));
+
+            if (result.exitCode() != 0 && !result.stdErr().isEmpty()) {
+                LOGGER.error("Gradle error output: {}", result.stdErr());
+            }
+
+            var projectJars = new HashMap<Path, Path>();
+
+            projectsByTask.forEach((task, taskProjectHelpers) -> {
+                var jarPath = jarsByTask.get(task);
+
+                if (jarPath == null) {
+                    LOGGER.error("Task {} did not create a jar", task);
+                    return;
+                }
+
+                for (var projectHelper : taskProjectHelpers) {
+                    try {
+                        projectHelper.writeCachedJarPath(projectHelper.getJarPathCacheFile(), projectHelper.hashBuildFiles(), jarPath);
+                    } catch (IOException e) {
+                        LOGGER.debug("Unable to hash the Gradle build files, not caching the jar path", e);
+                    }
+
+                    projectJars.put(projectHelper.buildSettings.projectRoot(), jarPath);
+                }
+            });
+
+            return projectJars;
 
         } catch (IOException e) {
             LOGGER.error("Error while finding the jar file", e);
-            return Optional.empty();
+            return Map.of();
         } finally {
             if (jarFindScript != null) {
                 try {
@@ -176,25 +260,187 @@ public class GradleProjectHelper {
         }
     }
 
-    public static boolean isGradleProject(Path pathToProjectRoot) {
-        return Files.exists(pathToProjectRoot.resolve(".qilletni_build.properties")) ||
-                Files.exists(pathToProjectRoot.resolve("build.gradle"));
+    /**
+     * Finds the jar file of the project like {@link #findProjectJar(boolean)}, but caches the result in the project's
+     * <code>build</code> directory, keyed on the hash of the project's Gradle build files,
+     * <code>gradle.properties</code> and <code>.qilletni_build.properties</code>. Gradle is only invoked if those files
+     * have changed since the path was cached, if the cached jar no longer exists, or if any file under the module's
+     * <code>src</code> directory is newer than the jar, in which case the jar is built.
+     *
+     * @param verboseGradleOutput Whether to print verbose output from Gradle
+     * @return The path of the jar file
+     */
+    public Optional<Path> findProjectJarCached(boolean verboseGradleOutput) {
+        return getCachedProjectJar()
+                .filter(this::isNewerThanSources)
+                .or(() -> findProjectJar(verboseGradleOutput));
     }
 
     /**
-     * Represents the result of a process execution.
+     * Gets the jar file of the project cached by a previous Gradle run, without running Gradle. The jar may be older
+     * than the module's sources; see {@link #findProjectJarCached(boolean)}.
+     *
+     * @return The path of the jar file, if it's cached, the build files haven't changed since and the jar still exists
      */
-    public record ProcessResult(int exitCode, String stdOut, String stdErr) {
-        public boolean isSuccessful() {
-            return exitCode == 0;
+    public Optional<Path> getCachedProjectJar() {
+        try {
+            var cachedJar = readCachedJarPath(getJarPathCacheFile(), hashBuildFiles());
+            cachedJar.ifPresent(jar -> LOGGER.debug("Using cached jar path {}", jar));
+
+            return cachedJar;
+        } catch (IOException e) {
+            LOGGER.warn("Unable to hash the Gradle build files, not using the cached jar path", e);
+            return Optional.empty();
         }
     }
 
+    /**
+     * @return The root directory of the Qilletni project
+     */
+    public Path getProjectRoot() {
+        return buildSettings.projectRoot();
+    }
+
+    /**
+     * @return The directory of the Gradle build the project is in, where its wrapper is
+     */
+    public Path getRootDir() {
+        return buildSettings.rootDir().normalize();
+    }
+
+    /**
+     * Checks that no file under the module's <code>src</code> directory was modified after the jar was built, so
+     * edited Java sources aren't silently left out of the jar.
+     */
+    private boolean isNewerThanSources(Path jarPath) {
+        var sourceDirectory = getModuleDir().resolve("src");
+
+        if (Files.notExists(sourceDirectory)) {
+            return true;
+        }
+
+        try (var walk = Files.walk(sourceDirectory)) {
+            var jarModified = Files.getLastModifiedTime(jarPath).toMillis();
+            var newerSource = walk.filter(Files::isRegularFile)
+                    .filter(path -> getLastModified(path) > jarModified)
+                    .findFirst();
+
+            newerSource.ifPresent(source -> LOGGER.debug("{} is newer than the cached jar {}, rebuilding it", source, jarPath));
+
+            return newerSource.isEmpty();
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.debug("Unable to compare {} with the sources in {}", jarPath, sourceDirectory, e);
+            return false;
+        }
+    }
+
+    private static long getLastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return The directory of the Gradle module that builds the jar, by convention the module's directory under the
+     * root
+     */
+    private Path getModuleDir() {
+        if (buildSettings.moduleName().isEmpty()) {
+            return buildSettings.rootDir();
+        }
+
+        return buildSettings.rootDir().resolve(buildSettings.moduleName().substring(1).replace(':', '/')).normalize();
+    }
+
+    private String getShadowJarTaskPath() {
+        return "%s:shadowJar".formatted(buildSettings.moduleName());
+    }
+
+    private Path getJarPathCacheFile() {
+        return buildSettings.projectRoot().resolve("build").resolve(JAR_PATH_CACHE_FILE);
+    }
+
+    private Optional<Path> readCachedJarPath(Path cacheFile, String buildFilesHash) {
+        if (Files.notExists(cacheFile)) {
+            return Optional.empty();
+        }
+
+        try (var inputStream = Files.newInputStream(cacheFile)) {
+            var properties = new Properties();
+            properties.load(inputStream);
+
+            if (!buildFilesHash.equals(properties.getProperty("build.files.hash"))) {
+                LOGGER.debug("Gradle build files have changed since the jar path was cached");
+                return Optional.empty();
+            }
+
+            return Optional.ofNullable(properties.getProperty("jar.path"))
+                    .map(Path::of)
+                    .filter(Files::exists);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.debug("Unable to read cached jar path from {}", cacheFile, e);
+            return Optional.empty();
+        }
+    }
+
+    private void writeCachedJarPath(Path cacheFile, String buildFilesHash, Path jarPath) {
+        try {
+            Files.createDirectories(cacheFile.getParent());
+
+            var properties = new Properties();
+            properties.setProperty("build.files.hash", buildFilesHash);
+            properties.setProperty("jar.path", jarPath.toAbsolutePath().toString());
+
+            try (var outputStream = Files.newOutputStream(cacheFile)) {
+                properties.store(outputStream, "The shadowJar output of this project, cached by Qilletni");
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to cache jar path in {}", cacheFile, e);
+        }
+    }
+
+    /**
+     * Hashes the build files of the Gradle root, the module (by convention, the module's directory under the root) and
+     * the project root. Missing files are hashed too, so adding one invalidates the cache.
+     */
+    private String hashBuildFiles() throws IOException {
+        var directories = new LinkedHashSet<Path>();
+        directories.add(buildSettings.rootDir());
+        directories.add(getModuleDir());
+        directories.add(buildSettings.projectRoot());
+
+        var digest = HashUtil.newDigest();
+        digest.update(buildSettings.moduleName().getBytes(StandardCharsets.UTF_8));
+
+        for (var directory : directories) {
+            for (var buildFileName : BUILD_FILE_NAMES) {
+                var buildFile = directory.resolve(buildFileName);
+                digest.update(buildFile.toString().getBytes(StandardCharsets.UTF_8));
+
+                if (Files.exists(buildFile)) {
+                    digest.update(Files.readAllBytes(buildFile));
+                } else {
+                    digest.update((byte) 0);
+                }
+            }
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public static boolean isGradleProject(Path pathToProjectRoot) {
+        return Files.exists(pathToProjectRoot.resolve(".qilletni_build.properties")) ||
+                Files.exists(pathToProjectRoot.resolve("build.gradle"));
+    }
+
     /**
      * Holds settings for building a project, from the `.qilletni_build.properties` file.
      *
      * @param moduleName The name of the module, such as `qilletni-spotify`. If empty, the root project is used. This value will have a `:` prepended to it, if present.
      * @param rootDir The relative root directory of the project where the `gradle`/`gradle.bat` files are, such as `../`. If empty, the current directory is used.
+     * @param projectRoot The root directory of the Qilletni project, where the `.qilletni_build.properties` file is
      */
-    private record ProjectBuildSettings(String moduleName, Path rootDir) {}
+    private record ProjectBuildSettings(String moduleName, Path rootDir, Path projectRoot) {}
 }
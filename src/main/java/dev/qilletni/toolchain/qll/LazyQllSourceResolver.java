@@ -0,0 +1,94 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.toolchain.jfr.SourceResolutionEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Resolves the sources of a packaged .qll on demand. The still compressed data of every source is copied out of the
+ * archive up front, so the archive's mapping isn't read while a program runs, and can't fault if the .qll is replaced
+ * in the meantime. A source is inflated the first time it is looked up and then cached. Lookups that don't resolve to
+ * a source are cached as well, so they only ever cost a single map lookup.
+ */
+public class LazyQllSourceResolver implements Function<String, String> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazyQllSourceResolver.class);
+
+    private final String libraryName;
+    private final Path qllPath;
+
+    // key: Qilletni import path,  value: archive entry and its raw data
+    private final Map<String, SourceData> sourceEntries;
+
+    private final Map<String, Optional<String>> sourceCache = new ConcurrentHashMap<>();
+
+    /**
+     * @param libraryName   The name of the library the sources belong to
+     * @param qllArchive    The archive the sources are in. It's only read from while constructing the resolver
+     * @param sourceEntries A map of import paths (relative to <code>qilletni-src</code>) to their archive entries
+     */
+    public LazyQllSourceResolver(String libraryName, QllArchive qllArchive, Map<String, QllArchive.Entry> sourceEntries) throws IOException {
+        this.libraryName = libraryName;
+        this.qllPath = qllArchive.path();
+
+        var copiedEntries = new HashMap<String, SourceData>(sourceEntries.size() * 2);
+        for (var sourceEntry : sourceEntries.entrySet()) {
+            var rawData = qllArchive.rawData(sourceEntry.getValue());
+            var copiedData = ByteBuffer.allocate(rawData.remaining()).put(rawData).flip();
+
+            copiedEntries.put(sourceEntry.getKey(), new SourceData(sourceEntry.getValue(), copiedData.asReadOnlyBuffer()));
+        }
+
+        this.sourceEntries = Map.copyOf(copiedEntries);
+    }
+
+    @Override
+    public String apply(String importPath) {
+        var sourceResolutionEvent = new SourceResolutionEvent();
+        sourceResolutionEvent.begin();
+
+        var cachedSource = sourceCache.get(importPath);
+        var source = cachedSource != null ? cachedSource : sourceCache.computeIfAbsent(importPath, this::readSource);
+
+        if (sourceResolutionEvent.shouldCommit()) {
+            sourceResolutionEvent.library = libraryName;
+            sourceResolutionEvent.importPath = importPath;
+            sourceResolutionEvent.found = source.isPresent();
+            sourceResolutionEvent.cached = cachedSource != null;
+            sourceResolutionEvent.commit();
+        }
+
+        return source.orElse(null);
+    }
+
+    private Optional<String> readSource(String importPath) {
+        var sourceData = sourceEntries.get(importPath);
+
+        if (sourceData == null) {
+            return Optional.empty();
+        }
+
+        try {
+            // Duplicated, as a buffer's position isn't safe to share between threads
+            return Optional.of(QllArchive.decodeString(sourceData.entry(), sourceData.rawData().duplicate(), qllPath));
+        } catch (IOException e) {
+            LOGGER.error("Failed to read {} from {}", sourceData.entry().name(), qllPath, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @param entry   The archive entry of a source
+     * @param rawData The entry's data, copied out of the archive
+     */
+    private record SourceData(QllArchive.Entry entry, ByteBuffer rawData) {}
+}
@@ -1,49 +1,52 @@
 package dev.qilletni.toolchain.qll;
 
-import dev.qilletni.api.lib.qll.QilletniInfoData;
 import dev.qilletni.api.lib.qll.QllInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 
+/**
+ * Checks that every dependency of a set of libraries is present in a permitted version, see {@link DependencyGraph}.
+ */
 public class LibraryValidator {
     
     private static final Logger LOGGER = LoggerFactory.getLogger(LibraryValidator.class);
     
     private final List<QllInfo> libraries;
+    private DependencyGraph dependencyGraph;
 
     public LibraryValidator(List<QllInfo> libraries) {
         this.libraries = libraries;
     }
-    
-    private boolean hasDependencyMet(QllInfo qllInfo, QilletniInfoData.Dependency dependency) {
-        for (var library : libraries) {
-            if (library.scope().equals(dependency.scope()) && library.name().equals(dependency.name())) {
-                if (dependency.version().permitsVersion(library.version())) {
-                    LOGGER.info("[{}] Dependency '{}' version {} matches required version {}", qllInfo.name(), dependency.name(), library.version(), dependency.version());
-                    return true;
-                }
-                
-                LOGGER.info("[{}] Dependency '{}' version {} does not match required version {}", qllInfo.name(), dependency.name(), library.version(), dependency.version());
-                return false;
+
+    /**
+     * Validates the libraries, logging every problem found.
+     *
+     * @return If every dependency is met
+     */
+    public boolean validate() {
+        var graph = getDependencyGraph();
+
+        for (var problem : graph.getProblems()) {
+            if (problem.kind().isError()) {
+                LOGGER.error(problem.message());
+            } else {
+                LOGGER.warn(problem.message());
             }
         }
-        
-        LOGGER.error("[{}] Dependency '{}' not found! (Version {})", qllInfo.name(), dependency.name(), dependency.version().getVersionString());
-        return false;
+
+        return graph.isValid();
     }
-    
-    public boolean validate() {
-        var valid = true;
-        
-        for (var library : libraries) {
-            if (!library.dependencies().stream().allMatch(dependency -> hasDependencyMet(library, dependency))) {
-                LOGGER.error("[{}] Library dependencies not met!", library.name());
-                valid = false;
-            }
+
+    /**
+     * @return The dependency graph of the libraries, built the first time it's needed
+     */
+    public DependencyGraph getDependencyGraph() {
+        if (dependencyGraph == null) {
+            dependencyGraph = DependencyGraph.build(libraries);
         }
-        
-        return valid;
+
+        return dependencyGraph;
     }
 }
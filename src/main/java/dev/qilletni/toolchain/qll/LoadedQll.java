@@ -0,0 +1,30 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.impl.lib.LibrarySourceFileResolver;
+
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * A library that has been read, but not yet registered with a {@link LibrarySourceFileResolver}.
+ *
+ * @param qllInfo        The {@link QllInfo} of the library
+ * @param qllPath        The path the library was read from
+ * @param qllArchive     The mapped .qll the library was read from, or <code>null</code> for a local library. It's
+ *                       only needed to register the library's native classes, which takes ownership of it, see
+ *                       {@link QllJarExtractor#registerInnerJar(QllArchive)}
+ * @param sourceResolver Resolves an import path (relative to <code>qilletni-src</code>) to its source, or
+ *                       <code>null</code> if the library does not contain it
+ */
+public record LoadedQll(QllInfo qllInfo, Path qllPath, QllArchive qllArchive, Function<String, String> sourceResolver) {
+
+    /**
+     * Registers the library's sources with the given {@link LibrarySourceFileResolver}.
+     *
+     * @param librarySourceFileResolver The resolver to register the library with
+     */
+    public void register(LibrarySourceFileResolver librarySourceFileResolver) {
+        librarySourceFileResolver.addLibraryResolver(qllInfo.name(), sourceResolver::apply);
+    }
+}
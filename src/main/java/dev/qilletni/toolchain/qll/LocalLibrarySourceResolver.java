@@ -0,0 +1,138 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.toolchain.jfr.SourceResolutionEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Resolves the sources of a local library, i.e. the <code>qilletni-src</code> directory of a project that hasn't been
+ * packaged. Sources are read from disk the first time they're imported, and cached after. When files change on disk,
+ * only their cache entries need to be invalidated with {@link #invalidate(Path)}, and {@link #rescan()} picks up files
+ * that were added or deleted.
+ */
+public class LocalLibrarySourceResolver implements Function<String, String> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalLibrarySourceResolver.class);
+
+    private final String libraryName;
+    private final Path sourcePath;
+
+    // key: Qilletni file path,  value = actual file path
+    private volatile Map<String, Path> sourceMap;
+    private final Map<String, String> sourceCache = new ConcurrentHashMap<>();
+
+    /**
+     * @param libraryName The name of the library
+     * @param sourcePath  The <code>qilletni-src</code> directory of the library
+     */
+    public LocalLibrarySourceResolver(String libraryName, Path sourcePath) throws IOException {
+        this.libraryName = libraryName;
+        this.sourcePath = sourcePath;
+        this.sourceMap = scanSources();
+    }
+
+    public Path getSourcePath() {
+        return sourcePath;
+    }
+
+    @Override
+    public String apply(String importPath) {
+        var sourceResolutionEvent = new SourceResolutionEvent();
+        sourceResolutionEvent.begin();
+
+        var cached = sourceCache.containsKey(importPath);
+        var source = sourceCache.computeIfAbsent(importPath, this::readSource);
+
+        if (sourceResolutionEvent.shouldCommit()) {
+            sourceResolutionEvent.library = libraryName;
+            sourceResolutionEvent.importPath = importPath;
+            sourceResolutionEvent.found = source != null;
+            sourceResolutionEvent.cached = cached;
+            sourceResolutionEvent.commit();
+        }
+
+        return source;
+    }
+
+    /**
+     * Drops the cached source of a file, so it's read from disk again the next time it's imported.
+     *
+     * @param file The changed file, anywhere under the source directory
+     * @return If the file had been cached
+     */
+    public boolean invalidate(Path file) {
+        var importPath = toImportPath(file.toAbsolutePath());
+        var removed = sourceCache.remove(importPath) != null;
+
+        LOGGER.debug("Invalidated {} (was cached: {})", importPath, removed);
+
+        return removed;
+    }
+
+    /**
+     * Scans the source directory again, to pick up added and deleted files. Cached sources of files that still exist
+     * are kept, and those of deleted files are dropped so they can't be imported anymore.
+     */
+    public void rescan() throws IOException {
+        var scannedSources = scanSources();
+        sourceMap = scannedSources;
+
+        sourceCache.keySet().removeIf(importPath -> {
+            var deleted = !scannedSources.containsKey(importPath);
+
+            if (deleted) {
+                LOGGER.debug("Evicted deleted file {}", importPath);
+            }
+
+            return deleted;
+        });
+    }
+
+    private String readSource(String importPath) {
+        var actualPath = sourceMap.get(importPath);
+
+        if (actualPath == null) {
+            return null;
+        }
+
+        try {
+            return Files.readString(actualPath);
+        } catch (IOException e) {
+            LOGGER.error("Failed to read local library file: {}", actualPath, e);
+            return null;
+        }
+    }
+
+    private Map<String, Path> scanSources() throws IOException {
+        var scannedSources = new HashMap<String, Path>();
+
+        try (var walk = Files.walk(sourcePath)) {
+            walk.filter(Predicate.not(Files::isDirectory))
+                    .filter(path -> path.getFileName().toString().endsWith(".ql"))
+                    .forEach(entry -> {
+                        var relative = toImportPath(entry);
+
+                        LOGGER.debug("Entry: {} is of: {}, {}", entry, entry.getFileName(), relative);
+                        scannedSources.put(relative, entry);
+                    });
+        }
+
+        return scannedSources;
+    }
+
+    private String toImportPath(Path file) {
+        var absoluteSourcePath = sourcePath.toAbsolutePath();
+        var relativeTo = file.isAbsolute() ? absoluteSourcePath : sourcePath;
+
+        return relativeTo.relativize(file).toString().replace("\\", "/");
+    }
+}
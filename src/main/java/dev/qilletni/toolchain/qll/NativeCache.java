@@ -0,0 +1,119 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.toolchain.utils.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * A content-addressed cache of the <code>native/</code> trees of .qll files. Each tree is extracted once into
+ * <code>&lt;cache&gt;/&lt;hash&gt;/</code>, where the hash covers the name, CRC and size of every native entry, so
+ * identical native jars share a directory and a changed .qll never reuses a stale one. Classes are then loaded from
+ * plain files instead of through nested jar URLs.
+ */
+public class NativeCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NativeCache.class);
+
+    private final Path cacheDirectory;
+
+    public NativeCache(Path cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Gets the extracted native tree of a .qll, extracting it if it isn't in the cache yet.
+     *
+     * @param archive The mapped .qll
+     * @return The directory holding the contents of <code>native/</code>, or empty if the .qll has no native classes
+     */
+    public Optional<Path> getNativeDirectory(QllArchive archive) throws IOException {
+        var qllPath = archive.path();
+        var nativeEntries = archive.entriesUnder(QllArchive.NATIVE_DIRECTORY).stream()
+                .filter(entry -> !entry.isDirectory())
+                .toList();
+
+        if (nativeEntries.isEmpty()) {
+            return Optional.empty();
+        }
+
+        var digest = HashUtil.newDigest();
+        for (var entry : nativeEntries) {
+            digest.update("%s\0%d\0%d\n".formatted(entry.name(), entry.crc(), entry.size()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        var nativeDirectory = cacheDirectory.resolve(HexFormat.of().formatHex(digest.digest()));
+
+        // Directories are only ever moved into place once fully extracted
+        if (Files.isDirectory(nativeDirectory)) {
+            LOGGER.debug("Using cached native classes of {} at {}", qllPath.getFileName(), nativeDirectory);
+            return Optional.of(nativeDirectory);
+        }
+
+        LOGGER.debug("Extracting native classes of {} to {}", qllPath.getFileName(), nativeDirectory);
+
+        Files.createDirectories(cacheDirectory);
+        var stagingDirectory = Files.createTempDirectory(cacheDirectory, ".extract-");
+
+        try {
+            for (var entry : nativeEntries) {
+                var relativeName = entry.name().substring(QllArchive.NATIVE_DIRECTORY.length());
+                var destination = stagingDirectory.resolve(relativeName).normalize();
+
+                if (!destination.startsWith(stagingDirectory)) {
+                    throw new ZipException("Entry %s in %s is outside of the native directory".formatted(entry.name(), qllPath));
+                }
+
+                var contents = archive.readAllBytes(entry);
+
+                var crc = new CRC32();
+                crc.update(contents);
+                if (crc.getValue() != entry.crc()) {
+                    throw new ZipException("CRC mismatch for entry %s in %s".formatted(entry.name(), qllPath));
+                }
+
+                Files.createDirectories(destination.getParent());
+                Files.write(destination, contents);
+            }
+
+            try {
+                Files.move(stagingDirectory, nativeDirectory, StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException e) {
+                // Another process extracted the same tree first
+                LOGGER.debug("Native classes were extracted concurrently to {}", nativeDirectory);
+            } catch (IOException e) {
+                // Some platforms report a non-empty target directory as a generic failure
+                if (!Files.isDirectory(nativeDirectory)) {
+                    throw e;
+                }
+            }
+        } finally {
+            deleteRecursively(stagingDirectory);
+        }
+
+        return Optional.of(nativeDirectory);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (Files.notExists(directory)) {
+            return;
+        }
+
+        try (var walk = Files.walk(directory)) {
+            for (var path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
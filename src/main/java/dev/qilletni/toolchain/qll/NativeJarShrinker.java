@@ -0,0 +1,402 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.api.lib.qll.QilletniInfoData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Removes the classes of a native jar which can't be reached from the library's entry points: its
+ * <code>native_classes</code>, <code>provider</code> and <code>native_bind_factory</code>. A class is reachable if it's
+ * referenced from the constant pool of a reachable class, which covers superclasses, interfaces, fields, method
+ * signatures, annotations and constants. String constants naming a class in the jar count as references too, so most
+ * <code>Class.forName</code> calls keep their class.
+ * <p>
+ * Anything else loaded by reflection must be kept with a keep rule, either given to the build or listed in
+ * <code>native.keep</code> in <code>.qilletni_build.properties</code>. A rule is a class name, where <code>*</code>
+ * matches any part of a name within a package, and <code>**</code> matches across packages, such as
+ * <code>com.example.plugins.**</code>.
+ * <p>
+ * Resources are always kept, except service files of unreachable services. The implementations listed in every kept
+ * service file are kept too.
+ */
+public class NativeJarShrinker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NativeJarShrinker.class);
+
+    private static final String SERVICES_DIRECTORY = "META-INF/services/";
+    private static final String VERSIONS_DIRECTORY = "META-INF/versions/";
+
+    private final List<Pattern> keepRules;
+
+    /**
+     * @param keepRules The rules of classes to keep, even if they're unreachable
+     */
+    public NativeJarShrinker(Collection<String> keepRules) {
+        this.keepRules = keepRules.stream()
+                .map(String::trim)
+                .filter(keepRule -> !keepRule.isEmpty())
+                .map(NativeJarShrinker::toPattern)
+                .toList();
+    }
+
+    /**
+     * Reads the keep rules of a project, from the comma separated <code>native.keep</code> property of its
+     * <code>.qilletni_build.properties</code>.
+     *
+     * @param projectRoot The root directory of the project
+     * @return The keep rules, empty if the project has none
+     */
+    public static List<String> readKeepRules(Path projectRoot) throws IOException {
+        var propertiesFile = projectRoot.resolve(".qilletni_build.properties");
+
+        if (Files.notExists(propertiesFile)) {
+            return List.of();
+        }
+
+        try (var inputStream = Files.newInputStream(propertiesFile)) {
+            var properties = new Properties();
+            properties.load(inputStream);
+
+            return Optional.ofNullable(properties.getProperty("native.keep"))
+                    .map(keep -> Arrays.stream(keep.split(",")).map(String::trim).filter(keepRule -> !keepRule.isEmpty()).toList())
+                    .orElse(List.of());
+        }
+    }
+
+    /**
+     * Gets the classes of a library loaded by Qilletni, which are where reachability starts.
+     *
+     * @param qilletniInfo The info of the library
+     * @return The binary names of the classes, such as <code>com.example.MyFunctions</code>
+     */
+    public static List<String> getEntryPoints(QilletniInfoData qilletniInfo) {
+        var entryPoints = new ArrayList<String>();
+
+        if (qilletniInfo.providerClass() != null) {
+            entryPoints.add(qilletniInfo.providerClass());
+        }
+
+        if (qilletniInfo.nativeBindFactoryClass() != null) {
+            entryPoints.add(qilletniInfo.nativeBindFactoryClass());
+        }
+
+        if (qilletniInfo.nativeClasses() != null) {
+            entryPoints.addAll(qilletniInfo.nativeClasses());
+        }
+
+        return entryPoints;
+    }
+
+    /**
+     * Writes a copy of a jar with only the classes reachable from the given entry points and keep rules. Entries are
+     * copied as they're stored in the jar, without being recompressed.
+     *
+     * @param jarPath     The jar to shrink
+     * @param entryPoints The binary names of the classes reachability starts from
+     * @param destination The jar to write
+     * @return How much was removed
+     */
+    public ShrinkResult shrink(Path jarPath, Collection<String> entryPoints, Path destination) throws IOException {
+        try (var jar = QllArchive.open(jarPath)) {
+            return shrink(jar, entryPoints, destination);
+        }
+    }
+
+    private ShrinkResult shrink(QllArchive jar, Collection<String> entryPoints, Path destination) throws IOException {
+        var jarPath = jar.path();
+
+        // Multi-release jars may have several entries for a class
+        var classEntries = new LinkedHashMap<String, List<QllArchive.Entry>>();
+        var serviceEntries = new LinkedHashMap<String, QllArchive.Entry>();
+
+        for (var entry : jar.entries()) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+
+            getClassName(entry.name()).ifPresentOrElse(
+                    className -> classEntries.computeIfAbsent(className, name -> new ArrayList<>()).add(entry),
+                    () -> {
+                        if (entry.name().startsWith(SERVICES_DIRECTORY) && entry.name().length() > SERVICES_DIRECTORY.length()) {
+                            serviceEntries.put(entry.name().substring(SERVICES_DIRECTORY.length()).replace('.', '/'), entry);
+                        }
+                    });
+        }
+
+        var roots = new LinkedHashSet<String>();
+
+        for (var entryPoint : entryPoints) {
+            var className = entryPoint.replace('.', '/');
+
+            if (classEntries.containsKey(className)) {
+                roots.add(className);
+            } else {
+                LOGGER.warn("Native class {} is not in {}", entryPoint, jarPath);
+            }
+        }
+
+        classEntries.keySet().stream()
+                .filter(className -> className.equals("module-info") || matchesKeepRule(className))
+                .forEach(roots::add);
+
+        var reachable = findReachable(jar, classEntries, serviceEntries, roots);
+
+        var keptClasses = 0;
+        var removedClasses = 0;
+        var keptBytes = 0L;
+        var removedBytes = 0L;
+
+        var destinationDirectory = destination.toAbsolutePath().getParent();
+        Files.createDirectories(destinationDirectory);
+        var tempFile = Files.createTempFile(destinationDirectory, destination.getFileName().toString(), ".tmp");
+
+        try {
+            try (var writer = new QllArchiveWriter(tempFile)) {
+                for (var entry : jar.entries()) {
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+
+                    var className = getClassName(entry.name());
+                    boolean keep;
+
+                    if (className.isPresent()) {
+                        keep = reachable.contains(className.get()) || isKeptPackageInfo(className.get(), reachable);
+
+                        if (keep) {
+                            keptClasses++;
+                        } else {
+                            removedClasses++;
+                        }
+                    } else {
+                        keep = !entry.name().startsWith(SERVICES_DIRECTORY) || isServiceKept(entry.name().substring(SERVICES_DIRECTORY.length()).replace('.', '/'), classEntries, reachable);
+                    }
+
+                    if (keep) {
+                        writer.addRawEntry(entry.name(), jar, entry);
+                        keptBytes += entry.compressedSize();
+                    } else {
+                        removedBytes += entry.compressedSize();
+                    }
+                }
+            }
+
+            Files.move(tempFile, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        var shrinkResult = new ShrinkResult(keptClasses, removedClasses, keptBytes, removedBytes);
+        LOGGER.debug("Shrunk {} to {}: {}", jarPath, destination, shrinkResult);
+
+        return shrinkResult;
+    }
+
+    /**
+     * Finds every class reachable from the roots, breadth first. Once nothing more is reachable, the implementations of
+     * every kept service are added as roots, until no service adds anything new.
+     */
+    private static Set<String> findReachable(QllArchive jar, Map<String, List<QllArchive.Entry>> classEntries, Map<String, QllArchive.Entry> serviceEntries, Set<String> roots) throws IOException {
+        var reachable = new HashSet<>(roots);
+        var queue = new ArrayDeque<>(roots);
+        var servicesAdded = new HashSet<String>();
+
+        do {
+            while (!queue.isEmpty()) {
+                var className = queue.poll();
+
+                for (var entry : classEntries.get(className)) {
+                    for (var reference : readReferencedClasses(jar.readAllBytes(entry))) {
+                        if (classEntries.containsKey(reference) && reachable.add(reference)) {
+                            queue.add(reference);
+                        }
+                    }
+                }
+            }
+
+            for (var service : serviceEntries.entrySet()) {
+                if (servicesAdded.contains(service.getKey()) || !isServiceKept(service.getKey(), classEntries, reachable)) {
+                    continue;
+                }
+
+                servicesAdded.add(service.getKey());
+
+                jar.readString(service.getValue()).lines()
+                        .map(line -> line.replaceFirst("#.*", "").trim())
+                        .filter(line -> !line.isEmpty())
+                        .map(line -> line.replace('.', '/'))
+                        .filter(classEntries::containsKey)
+                        .filter(reachable::add)
+                        .forEach(queue::add);
+            }
+        } while (!queue.isEmpty());
+
+        return reachable;
+    }
+
+    /**
+     * Services outside the jar, such as those of the JDK or Qilletni, are always kept.
+     */
+    private static boolean isServiceKept(String service, Map<String, List<QllArchive.Entry>> classEntries, Set<String> reachable) {
+        return !classEntries.containsKey(service) || reachable.contains(service);
+    }
+
+    private static boolean isKeptPackageInfo(String className, Set<String> reachable) {
+        if (!className.endsWith("/package-info")) {
+            return false;
+        }
+
+        var packagePrefix = className.substring(0, className.lastIndexOf('/') + 1);
+        return reachable.stream().anyMatch(reachableClass -> reachableClass.startsWith(packagePrefix) && reachableClass.indexOf('/', packagePrefix.length()) == -1);
+    }
+
+    private boolean matchesKeepRule(String className) {
+        var binaryName = className.replace('/', '.');
+        return keepRules.stream().anyMatch(keepRule -> keepRule.matcher(binaryName).matches());
+    }
+
+    /**
+     * Gets the internal name of the class an entry holds, such as <code>com/example/Foo</code>, including versioned
+     * classes of multi-release jars.
+     */
+    private static Optional<String> getClassName(String entryName) {
+        if (!entryName.endsWith(".class")) {
+            return Optional.empty();
+        }
+
+        var name = entryName.substring(0, entryName.length() - ".class".length());
+
+        if (name.startsWith(VERSIONS_DIRECTORY)) {
+            var versionEnd = name.indexOf('/', VERSIONS_DIRECTORY.length());
+
+            if (versionEnd == -1) {
+                return Optional.empty();
+            }
+
+            name = name.substring(versionEnd + 1);
+        }
+
+        return Optional.of(name);
+    }
+
+    private static Pattern toPattern(String keepRule) {
+        var regex = new StringBuilder();
+
+        for (int i = 0; i < keepRule.length(); i++) {
+            var c = keepRule.charAt(i);
+
+            if (c == '*' && i + 1 < keepRule.length() && keepRule.charAt(i + 1) == '*') {
+                regex.append(".*");
+                i++;
+            } else if (c == '*') {
+                regex.append("[^.]*");
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+
+        return Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Reads the internal names of every class a class file may reference from its constant pool. This includes every
+     * class constant, every class in a descriptor or signature, and every string that could be a class name. Names of
+     * classes that don't exist are included too, so callers must check them.
+     *
+     * @param classFile The contents of the class file
+     * @return The referenced class names
+     */
+    static Set<String> readReferencedClasses(byte[] classFile) throws IOException {
+        var input = new DataInputStream(new ByteArrayInputStream(classFile));
+
+        if (input.readInt() != 0xCAFEBABE) {
+            throw new IOException("Not a class file");
+        }
+
+        input.readUnsignedShort(); // minor_version
+        input.readUnsignedShort(); // major_version
+
+        var constantPoolCount = input.readUnsignedShort();
+        var references = new HashSet<String>();
+
+        for (int i = 1; i < constantPoolCount; i++) {
+            var tag = input.readUnsignedByte();
+
+            switch (tag) {
+                // Utf8, holding every name, descriptor, signature and string
+                case 1 -> addUtf8References(input.readUTF(), references);
+                // Integer, Float, Fieldref, Methodref, InterfaceMethodref, NameAndType, Dynamic, InvokeDynamic
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> input.skipBytes(4);
+                // Long and Double take two constant pool slots
+                case 5, 6 -> {
+                    input.skipBytes(8);
+                    i++;
+                }
+                // Class, String, MethodType, Module, Package
+                case 7, 8, 16, 19, 20 -> input.skipBytes(2);
+                // MethodHandle
+                case 15 -> input.skipBytes(3);
+                default -> throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+
+        return references;
+    }
+
+    /**
+     * Adds the class names a Utf8 constant may hold. The whole string is added as a name, both as it is and with dots
+     * as separators, and each <code>L...;</code> (or <code>L...&lt;</code>) in it is added as a descriptor.
+     */
+    private static void addUtf8References(String utf8, Set<String> references) {
+        if (utf8.isEmpty()) {
+            return;
+        }
+
+        references.add(utf8.replace('.', '/'));
+
+        // Array class constants, such as [Lcom/example/Foo;
+        var name = utf8.startsWith("[") ? utf8.substring(utf8.lastIndexOf('[') + 1) : utf8;
+
+        for (int start = name.indexOf('L'); start != -1; start = name.indexOf('L', start + 1)) {
+            var end = start + 1;
+
+            while (end < name.length() && ";<>()[:. ".indexOf(name.charAt(end)) == -1) {
+                end++;
+            }
+
+            if (end > start + 1 && end < name.length() && (name.charAt(end) == ';' || name.charAt(end) == '<')) {
+                references.add(name.substring(start + 1, end));
+            }
+        }
+    }
+
+    /**
+     * How much of a jar was removed by {@link #shrink(Path, Collection, Path)}.
+     *
+     * @param keptClasses    The number of classes kept
+     * @param removedClasses The number of classes removed
+     * @param keptBytes      The size of the kept entries in the jar, as they're compressed
+     * @param removedBytes   The size of the removed entries in the jar, as they're compressed
+     */
+    public record ShrinkResult(int keptClasses, int removedClasses, long keptBytes, long removedBytes) {}
+}
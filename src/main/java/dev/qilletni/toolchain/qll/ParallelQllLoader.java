@@ -0,0 +1,143 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.timing.PhaseTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reads a list of .qll files concurrently, each on its own virtual thread. Results are always returned in the order the
+ * paths were given in, and nothing is registered here, so callers can merge them deterministically (e.g. in lockfile
+ * order) afterwards.
+ */
+public class ParallelQllLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelQllLoader.class);
+
+    private final QllLoader qllLoader;
+    private final int maxConcurrency;
+    private final PhaseTimer phaseTimer;
+
+    /**
+     * @param qllLoader      The loader used to read each .qll
+     * @param maxConcurrency The maximum number of .qll files read at once. A value of 1 or less reads them serially
+     */
+    public ParallelQllLoader(QllLoader qllLoader, int maxConcurrency) {
+        this(qllLoader, maxConcurrency, PhaseTimer.disabled());
+    }
+
+    /**
+     * @param qllLoader      The loader used to read each .qll
+     * @param maxConcurrency The maximum number of .qll files read at once. A value of 1 or less reads them serially
+     * @param phaseTimer     The timer to record the reading of each .qll in
+     */
+    public ParallelQllLoader(QllLoader qllLoader, int maxConcurrency, PhaseTimer phaseTimer) {
+        this.qllLoader = qllLoader;
+        this.maxConcurrency = maxConcurrency;
+        this.phaseTimer = phaseTimer;
+    }
+
+    /**
+     * Reads every given .qll file.
+     *
+     * @param qllPaths The paths of the .qll files to read
+     * @return The read libraries, in the same order as <code>qllPaths</code>
+     */
+    public List<LoadedQll> loadAll(List<Path> qllPaths) throws IOException {
+        return loadAll(qllPaths, Map.of());
+    }
+
+    /**
+     * Reads every given .qll file, skipping the decoding of any {@link QllInfo} that is already known.
+     *
+     * @param qllPaths     The paths of the .qll files to read
+     * @param knownQllInfo Already decoded {@link QllInfo}s, keyed by the path of their .qll
+     * @return The read libraries, in the same order as <code>qllPaths</code>
+     */
+    public List<LoadedQll> loadAll(List<Path> qllPaths, Map<Path, QllInfo> knownQllInfo) throws IOException {
+        if (maxConcurrency <= 1 || qllPaths.size() <= 1) {
+            var loaded = new ArrayList<LoadedQll>(qllPaths.size());
+            try {
+                for (var qllPath : qllPaths) {
+                    loaded.add(readQll(qllPath, knownQllInfo));
+                }
+            } catch (IOException | RuntimeException e) {
+                loaded.forEach(loadedQll -> loadedQll.qllArchive().close());
+                throw e;
+            }
+
+            return loaded;
+        }
+
+        LOGGER.debug("Loading {} packages with up to {} concurrently", qllPaths.size(), maxConcurrency);
+
+        var permits = new Semaphore(maxConcurrency);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<Future<LoadedQll>>(qllPaths.size());
+
+            for (var qllPath : qllPaths) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return readQll(qllPath, knownQllInfo);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            var loaded = new ArrayList<LoadedQll>(futures.size());
+            try {
+                for (var future : futures) {
+                    loaded.add(awaitResult(future));
+                }
+            } catch (IOException | RuntimeException e) {
+                // Waits for the other packages, so every archive that was opened can be closed
+                executor.close();
+
+                futures.stream()
+                        .filter(future -> future.state() == Future.State.SUCCESS)
+                        .forEach(future -> future.resultNow().qllArchive().close());
+                throw e;
+            }
+
+            return loaded;
+        }
+    }
+
+    private LoadedQll readQll(Path qllPath, Map<Path, QllInfo> knownQllInfo) throws IOException {
+        try (var phase = phaseTimer.start("loadQll " + qllPath.getFileName())) {
+            return qllLoader.readQll(qllPath, knownQllInfo.get(qllPath));
+        }
+    }
+
+    private static LoadedQll awaitResult(Future<LoadedQll> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading packages", e);
+        } catch (ExecutionException e) {
+            var cause = e.getCause();
+
+            if (cause instanceof IOException ioException) {
+                throw ioException;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+
+            throw new RuntimeException(cause);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package dev.qilletni.toolchain.qll;
 
+import dev.qilletni.toolchain.process.ProcessResult;
+import dev.qilletni.toolchain.process.ProcessRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -7,14 +9,19 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Objects;
-import java.util.concurrent.TimeUnit;
 
 public class QPMUtility {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(QPMUtility.class);
 
+    /**
+     * How long <code>qpm install</code> may run before it's killed, as it may download many packages.
+     */
+    private static final Duration QPM_TIMEOUT = Duration.ofMinutes(10);
+
     public static boolean isQPMInstalled() {
         return Files.exists(getQPMBinary());
     }
@@ -30,54 +37,28 @@ public class QPMUtility {
      *
      * @return The process result containing exit code and output
      */
-    public static GradleProjectHelper.ProcessResult runQPMInstall(boolean verboseOutput, Path workingDir) {
-        try {
-            var qpmPath = getQPMBinary();
-
-            // Build the command
-            var command = new ArrayList<String>();
-            command.add(qpmPath.toAbsolutePath().toString());
-            command.add("install");
-
-            var processBuilder = new ProcessBuilder(command);
-            processBuilder.directory(workingDir.toFile());
-
-            var process = processBuilder.start();
+    public static ProcessResult runQPMInstall(boolean verboseOutput, Path workingDir) {
+        var qpmPath = getQPMBinary();
 
-            var stdOut = new StringBuilder();
-            var stdErr = new StringBuilder();
+        // Build the command
+        var command = new ArrayList<String>();
+        command.add(qpmPath.toAbsolutePath().toString());
+        command.add("install");
 
-            try (var reader = process.inputReader()) {
-                reader.lines().forEach(str -> {
-                    if (verboseOutput) {
-                        System.out.println(str);
-                    }
+        var processRunner = new ProcessRunner(command)
+                .directory(workingDir)
+                .timeout(QPM_TIMEOUT);
 
-                    stdOut.append(str);
-                });
-            }
-
-            try (var reader = process.errorReader()) {
-                reader.lines().forEach(str -> {
-                    if (verboseOutput) {
-                        System.err.println(str);
-                    }
-
-                    stdErr.append(str);
-                });
-            }
-
-            boolean completed = process.waitFor(1, TimeUnit.MINUTES);
-            if (!completed) {
-                process.destroyForcibly();
-                return new GradleProjectHelper.ProcessResult(-1, "Process timed out after 1 minute", stdErr.toString());
-            }
-
-            return new GradleProjectHelper.ProcessResult(process.exitValue(), stdOut.toString(), stdErr.toString());
+        if (verboseOutput) {
+            processRunner.outputListener(System.out::println)
+                    .errorListener(System.err::println);
+        }
 
-        } catch (IOException | InterruptedException e) {
+        try {
+            return processRunner.run();
+        } catch (IOException e) {
             LOGGER.error("Error while running `qpm install`", e);
-            return new GradleProjectHelper.ProcessResult(-1, "", e.getMessage());
+            return ProcessResult.failed(e.getMessage());
         }
     }
 
@@ -0,0 +1,422 @@
+package dev.qilletni.toolchain.qll;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * A read-only view of a .qll archive (or any other zip file). The file is memory-mapped and its central directory is
+ * parsed once into a table of entries, keyed by their name. Entry data is only read, and inflated if needed, when it
+ * is asked for.
+ * <p>
+ * Entry names always use <code>/</code> as their separator, even if the archive was packaged on Windows. If more than
+ * one entry has the same name, as in some shadow jars, only the last is kept, the same one {@link java.util.zip.ZipFile}
+ * returns. Instances are immutable, and safe to share between threads.
+ * <p>
+ * The mapping is released when the archive is {@link #close() closed}, after which reading any entry, or any buffer
+ * returned by {@link #rawData(Entry)}, throws an {@link IllegalStateException}. An open archive must not be truncated or
+ * rewritten in place, so long-lived users such as the class loader of a run only keep archives that are replaced
+ * atomically, and sources are copied out of the mapping when they're loaded (see {@link LazyQllSourceResolver}).
+ */
+public class QllArchive implements Closeable {
+
+    /**
+     * The directory in a .qll holding all Qilletni sources.
+     */
+    public static final String SOURCE_DIRECTORY = "qilletni-src/";
+
+    /**
+     * The directory in a .qll holding the contents of the library's native jar.
+     */
+    public static final String NATIVE_DIRECTORY = "native/";
+
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    private final Path path;
+    private final Arena arena;
+    private final ByteBuffer buffer;
+    private final NavigableMap<String, Entry> entries;
+
+    private QllArchive(Path path, Arena arena, ByteBuffer buffer, NavigableMap<String, Entry> entries) {
+        this.path = path;
+        this.arena = arena;
+        this.buffer = buffer;
+        this.entries = Collections.unmodifiableNavigableMap(entries);
+    }
+
+    /**
+     * Memory-maps the given archive and reads its central directory. The archive must be closed once it's no longer
+     * read from, to release the mapping.
+     *
+     * @param path The path of the archive
+     * @return The opened archive
+     * @throws ZipException If the file is not a valid zip archive
+     */
+    public static QllArchive open(Path path) throws IOException {
+        // Shared, as archives are read from many threads at once
+        var arena = Arena.ofShared();
+
+        try {
+            ByteBuffer buffer;
+
+            // The mapping stays valid after the channel is closed, until the arena is
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                var size = channel.size();
+
+                if (size > Integer.MAX_VALUE) {
+                    throw new ZipException("%s is too large to be mapped (%d bytes)".formatted(path, size));
+                }
+
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena).asByteBuffer().order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            return new QllArchive(path, arena, buffer, readCentralDirectory(path, buffer));
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Unmaps the archive. Closing an archive more than once has no effect.
+     */
+    @Override
+    public void close() {
+        try {
+            arena.close();
+        } catch (IllegalStateException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * @return The path this archive was opened from
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * @return The size of the archive, in bytes
+     */
+    public long size() {
+        return buffer.limit();
+    }
+
+    /**
+     * Gets an entry by its name, such as <code>qll.info</code> or <code>qilletni-src/foo.ql</code>.
+     *
+     * @param name The name of the entry
+     * @return The entry, if it exists
+     */
+    public Optional<Entry> getEntry(String name) {
+        return Optional.ofNullable(entries.get(name));
+    }
+
+    /**
+     * @return Every entry in the archive, sorted by name
+     */
+    public Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    /**
+     * Gets every entry under a directory, such as {@link #SOURCE_DIRECTORY}. This is a view of the archive's table, so
+     * nothing is copied.
+     *
+     * @param directory The directory, ending in <code>/</code>
+     * @return The entries under the directory, sorted by name
+     */
+    public Collection<Entry> entriesUnder(String directory) {
+        return entries.subMap(directory, true, directory + Character.MAX_VALUE, false).values();
+    }
+
+    /**
+     * Reads and, if needed, inflates the full contents of an entry.
+     *
+     * @param entry The entry to read
+     * @return The uncompressed contents of the entry
+     */
+    public byte[] readAllBytes(Entry entry) throws IOException {
+        if (entry.size() > Integer.MAX_VALUE) {
+            throw new ZipException("Entry %s is too large to be read (%d bytes)".formatted(entry.name(), entry.size()));
+        }
+
+        return inflate(entry, rawData(entry), path);
+    }
+
+    /**
+     * Inflates the raw data of an entry, which may have been copied out of its archive.
+     *
+     * @param entry   The entry the data is of
+     * @param rawData The data of the entry, as returned by {@link #rawData(Entry)}
+     * @param path    The path of the archive, for error messages
+     * @return The uncompressed contents of the entry
+     */
+    static byte[] inflate(Entry entry, ByteBuffer rawData, Path path) throws IOException {
+        var contents = new byte[(int) entry.size()];
+
+        switch (entry.method()) {
+            case METHOD_STORED -> rawData.get(contents);
+            case METHOD_DEFLATED -> {
+                var inflater = new Inflater(true);
+
+                try {
+                    inflater.setInput(rawData);
+
+                    var read = 0;
+                    while (read < contents.length && !inflater.finished()) {
+                        var inflated = inflater.inflate(contents, read, contents.length - read);
+
+                        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new ZipException("Truncated data for entry %s in %s".formatted(entry.name(), path));
+                        }
+
+                        read += inflated;
+                    }
+                } catch (DataFormatException e) {
+                    throw new ZipException("Invalid data for entry %s in %s: %s".formatted(entry.name(), path, e.getMessage()));
+                } finally {
+                    inflater.end();
+                }
+            }
+            default -> throw new ZipException("Unsupported compression method %d for entry %s".formatted(entry.method(), entry.name()));
+        }
+
+        return contents;
+    }
+
+    /**
+     * Reads the contents of an entry as UTF-8 text. A {@link #METHOD_STORED} entry is decoded straight from the mapped
+     * file, without being copied into an intermediate array first.
+     *
+     * @param entry The entry to read
+     * @return The decoded contents of the entry
+     */
+    public String readString(Entry entry) throws IOException {
+        return decodeString(entry, rawData(entry), path);
+    }
+
+    /**
+     * Decodes the raw data of an entry as UTF-8 text, like {@link #readString(Entry)}.
+     *
+     * @param entry   The entry the data is of
+     * @param rawData The data of the entry, as returned by {@link #rawData(Entry)}
+     * @param path    The path of the archive, for error messages
+     * @return The decoded contents of the entry
+     */
+    static String decodeString(Entry entry, ByteBuffer rawData, Path path) throws IOException {
+        if (entry.method() == METHOD_STORED) {
+            return StandardCharsets.UTF_8.decode(rawData).toString();
+        }
+
+        return new String(inflate(entry, rawData, path), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks if every entry under a directory is {@link #METHOD_STORED}, so they can all be read as slices of the
+     * mapped file with {@link #rawData(Entry)}.
+     *
+     * @param directory The directory, ending in <code>/</code>
+     * @return If the directory has any files, and all of them are stored
+     */
+    public boolean isStoredUnder(String directory) {
+        var files = entriesUnder(directory).stream().filter(entry -> !entry.isDirectory()).toList();
+
+        return !files.isEmpty() && files.stream().allMatch(entry -> entry.method() == METHOD_STORED);
+    }
+
+    /**
+     * Opens a stream of the uncompressed contents of an entry.
+     *
+     * @param entry The entry to read
+     * @return A stream of the entry's contents
+     */
+    public InputStream getInputStream(Entry entry) throws IOException {
+        return new ByteArrayInputStream(readAllBytes(entry));
+    }
+
+    /**
+     * Gets the raw data of an entry as it's stored in the archive, without inflating it. For a {@link #METHOD_STORED}
+     * entry, this is its contents. The returned buffer is a slice of the mapped file, so nothing is copied.
+     *
+     * @param entry The entry to get the data of
+     * @return A read-only buffer of the entry's (possibly compressed) data
+     */
+    public ByteBuffer rawData(Entry entry) throws IOException {
+        var headerOffset = (int) entry.localHeaderOffset();
+
+        if (buffer.getInt(headerOffset) != LOCAL_HEADER_SIGNATURE) {
+            throw new ZipException("Invalid local header for entry %s in %s".formatted(entry.name(), path));
+        }
+
+        var dataOffset = headerOffset + LOCAL_HEADER_SIZE + unsignedShort(buffer, headerOffset + 26) + unsignedShort(buffer, headerOffset + 28);
+
+        return buffer.slice(dataOffset, (int) entry.compressedSize()).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static NavigableMap<String, Entry> readCentralDirectory(Path path, ByteBuffer buffer) throws IOException {
+        var endOffset = findEndOfCentralDirectory(path, buffer);
+
+        long entryCount = unsignedShort(buffer, endOffset + 10);
+        long directoryOffset = unsignedInt(buffer, endOffset + 16);
+
+        var locatorOffset = endOffset - ZIP64_LOCATOR_SIZE;
+        if (locatorOffset >= 0 && buffer.getInt(locatorOffset) == ZIP64_LOCATOR_SIGNATURE) {
+            var zip64EndOffset = checkedOffset(path, buffer.getLong(locatorOffset + 8), buffer);
+
+            if (buffer.getInt(zip64EndOffset) != ZIP64_END_SIGNATURE) {
+                throw new ZipException("Invalid zip64 end of central directory in " + path);
+            }
+
+            entryCount = buffer.getLong(zip64EndOffset + 32);
+            directoryOffset = buffer.getLong(zip64EndOffset + 48);
+        }
+
+        var entries = new TreeMap<String, Entry>();
+        var offset = checkedOffset(path, directoryOffset, buffer);
+
+        for (long i = 0; i < entryCount; i++) {
+            if (buffer.getInt(offset) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header in " + path);
+            }
+
+            var method = unsignedShort(buffer, offset + 10);
+            var crc = unsignedInt(buffer, offset + 16);
+            long compressedSize = unsignedInt(buffer, offset + 20);
+            long size = unsignedInt(buffer, offset + 24);
+            var nameLength = unsignedShort(buffer, offset + 28);
+            var extraLength = unsignedShort(buffer, offset + 30);
+            var commentLength = unsignedShort(buffer, offset + 32);
+            long localHeaderOffset = unsignedInt(buffer, offset + 42);
+
+            var nameBytes = new byte[nameLength];
+            buffer.get(offset + CENTRAL_HEADER_SIZE, nameBytes);
+            var name = new String(nameBytes, StandardCharsets.UTF_8).replace('\\', '/');
+
+            if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                // Only the fields that overflowed are present in the zip64 extra field, in this order
+                var zip64Offset = findExtraField(buffer, offset + CENTRAL_HEADER_SIZE + nameLength, extraLength, ZIP64_EXTRA_ID);
+
+                if (zip64Offset < 0) {
+                    throw new ZipException("Missing zip64 extra field for entry %s in %s".formatted(name, path));
+                }
+
+                if (size == 0xFFFFFFFFL) {
+                    size = buffer.getLong(zip64Offset);
+                    zip64Offset += 8;
+                }
+
+                if (compressedSize == 0xFFFFFFFFL) {
+                    compressedSize = buffer.getLong(zip64Offset);
+                    zip64Offset += 8;
+                }
+
+                if (localHeaderOffset == 0xFFFFFFFFL) {
+                    localHeaderOffset = buffer.getLong(zip64Offset);
+                }
+            }
+
+            if (localHeaderOffset + LOCAL_HEADER_SIZE > buffer.limit() || compressedSize > buffer.limit()) {
+                throw new ZipException("Invalid offset or size for entry %s in %s".formatted(name, path));
+            }
+
+            entries.put(name, new Entry(name, method, crc, compressedSize, size, localHeaderOffset));
+
+            offset += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+
+        return entries;
+    }
+
+    private static int findEndOfCentralDirectory(Path path, ByteBuffer buffer) throws IOException {
+        // The end record is followed by a comment of at most 65535 bytes
+        var minimumOffset = Math.max(0, buffer.limit() - END_SIZE - 0xFFFF);
+
+        for (var offset = buffer.limit() - END_SIZE; offset >= minimumOffset; offset--) {
+            if (buffer.getInt(offset) == END_SIGNATURE) {
+                return offset;
+            }
+        }
+
+        throw new ZipException("No end of central directory found in " + path);
+    }
+
+    private static int findExtraField(ByteBuffer buffer, int offset, int length, int headerId) {
+        var end = offset + length;
+
+        while (offset + 4 <= end) {
+            var id = unsignedShort(buffer, offset);
+            var size = unsignedShort(buffer, offset + 2);
+
+            if (id == headerId) {
+                return offset + 4;
+            }
+
+            offset += 4 + size;
+        }
+
+        return -1;
+    }
+
+    private static int checkedOffset(Path path, long offset, ByteBuffer buffer) throws ZipException {
+        if (offset < 0 || offset + 4 > buffer.limit()) {
+            throw new ZipException("Invalid central directory offset in " + path);
+        }
+
+        return (int) offset;
+    }
+
+    private static int unsignedShort(ByteBuffer buffer, int offset) {
+        return Short.toUnsignedInt(buffer.getShort(offset));
+    }
+
+    private static long unsignedInt(ByteBuffer buffer, int offset) {
+        return Integer.toUnsignedLong(buffer.getInt(offset));
+    }
+
+    /**
+     * An entry in the archive's central directory.
+     *
+     * @param name              The name of the entry, using <code>/</code> as its separator
+     * @param method            The compression method, either {@link #METHOD_STORED} or {@link #METHOD_DEFLATED}
+     * @param crc               The CRC-32 of the uncompressed contents
+     * @param compressedSize    The size of the data as stored in the archive
+     * @param size              The size of the uncompressed contents
+     * @param localHeaderOffset The offset of the entry's local header in the archive
+     */
+    public record Entry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+        public boolean isDirectory() {
+            return name.endsWith("/");
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package dev.qilletni.toolchain.qll;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a .qll archive (a zip file) one entry at a time, straight to its destination. Entries are either compressed
+ * as they're added, or copied as-is from another archive with {@link #addRawEntry(String, QllArchive, QllArchive.Entry)},
+ * so a jar's already compressed classes are never inflated and deflated again.
+ * <p>
+ * Every entry gets the same fixed timestamp, so packaging the same contents in the same order always produces the same
+ * bytes. Entries may also be stored uncompressed and page-aligned, for archives that are read memory-mapped. Archives
+ * with more than 65535 entries get a zip64 end of central directory, which {@link QllArchive} reads;
+ * a single archive is still limited to 4 GiB.
+ */
+public class QllArchiveWriter implements Closeable {
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    private static final int VERSION_NEEDED = 20;
+    private static final int VERSION_NEEDED_ZIP64 = 45;
+    private static final int FLAG_UTF8 = 0x0800;
+
+    /**
+     * The page size entries added with {@link #addAlignedEntry(String, long, ByteBuffer)} are aligned to.
+     */
+    public static final int PAGE_SIZE = 4096;
+
+    /**
+     * The extra field holding the padding of aligned entries. This is the same field Android's zipalign uses, and other
+     * zip readers skip it.
+     */
+    private static final int ALIGNMENT_EXTRA_ID = 0xD935;
+    private static final int ALIGNMENT_EXTRA_MIN_SIZE = 6;
+
+    /**
+     * 1980-02-01 00:00, the earliest date every zip tool agrees on, in MS-DOS format.
+     */
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = (2 << 5) | 1;
+
+    private final OutputStream outputStream;
+    private final Deflater deflater;
+    private final List<CentralEntry> centralEntries = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+
+    private long position;
+    private boolean closed;
+
+    /**
+     * Creates a writer of a new archive, compressing entries with the default compression level.
+     *
+     * @param destination The file to write the archive to. If it exists, it's replaced
+     */
+    public QllArchiveWriter(Path destination) throws IOException {
+        this(destination, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a writer of a new archive.
+     *
+     * @param destination      The file to write the archive to. If it exists, it's replaced
+     * @param compressionLevel The {@link Deflater} level to compress added entries with
+     */
+    public QllArchiveWriter(Path destination, int compressionLevel) throws IOException {
+        this.outputStream = new BufferedOutputStream(Files.newOutputStream(destination), 64 * 1024);
+        this.deflater = new Deflater(compressionLevel, true);
+    }
+
+    /**
+     * Compresses and adds an entry.
+     *
+     * @param name     The name of the entry, using <code>/</code> as its separator
+     * @param contents The uncompressed contents of the entry
+     */
+    public void addEntry(String name, byte[] contents) throws IOException {
+        var crc = new CRC32();
+        crc.update(contents);
+
+        var compressed = deflate(contents);
+
+        // Incompressible data, such as already compressed resources, is stored instead
+        if (compressed.length >= contents.length) {
+            writeEntry(name, QllArchive.METHOD_STORED, crc.getValue(), contents.length, ByteBuffer.wrap(contents));
+        } else {
+            writeEntry(name, QllArchive.METHOD_DEFLATED, crc.getValue(), contents.length, ByteBuffer.wrap(compressed));
+        }
+    }
+
+    /**
+     * Adds an entry whose data has already been compressed, such as by a worker thread.
+     *
+     * @param name           The name of the entry, using <code>/</code> as its separator
+     * @param method         The compression method of the data, {@link QllArchive#METHOD_STORED} or
+     *                       {@link QllArchive#METHOD_DEFLATED}
+     * @param crc            The CRC-32 of the uncompressed contents
+     * @param size           The size of the uncompressed contents
+     * @param compressedData The data as it's stored in the archive
+     */
+    public void addCompressedEntry(String name, int method, long crc, long size, ByteBuffer compressedData) throws IOException {
+        writeEntry(name, method, crc, size, compressedData);
+    }
+
+    /**
+     * Adds an entry uncompressed, placed so it can be read as a slice of a memory-mapped archive that touches as few
+     * pages as possible. See {@link #getAlignmentPadding(long, int)}.
+     *
+     * @param name     The name of the entry, using <code>/</code> as its separator
+     * @param crc      The CRC-32 of the contents
+     * @param contents The contents of the entry
+     */
+    public void addAlignedEntry(String name, long crc, ByteBuffer contents) throws IOException {
+        writeEntry(name, QllArchive.METHOD_STORED, crc, contents.remaining(), contents, true);
+    }
+
+    /**
+     * Copies an entry from another archive without inflating it.
+     *
+     * @param name   The name to give the entry in this archive
+     * @param source The archive to copy the entry from
+     * @param entry  The entry to copy
+     */
+    public void addRawEntry(String name, QllArchive source, QllArchive.Entry entry) throws IOException {
+        if (entry.method() != QllArchive.METHOD_STORED && entry.method() != QllArchive.METHOD_DEFLATED) {
+            // Not something QllArchive could read back, so normalize it
+            addEntry(name, source.readAllBytes(entry));
+            return;
+        }
+
+        writeEntry(name, entry.method(), entry.crc(), entry.size(), source.rawData(entry));
+    }
+
+    /**
+     * Compresses data the same way {@link #addEntry(String, byte[])} does, without adding it. This may be used from
+     * any thread, with a separate {@link Deflater} per thread.
+     *
+     * @param deflater The deflater to use, which is reset first. It must have been created with <code>nowrap</code>
+     * @param contents The data to compress
+     * @return The compressed data
+     */
+    public static byte[] deflate(Deflater deflater, byte[] contents) {
+        deflater.reset();
+        deflater.setInput(contents);
+        deflater.finish();
+
+        var output = new ByteArrayOutputStream(Math.max(64, contents.length / 2));
+        var buffer = new byte[16 * 1024];
+
+        while (!deflater.finished()) {
+            var deflated = deflater.deflate(buffer);
+            output.write(buffer, 0, deflated);
+        }
+
+        return output.toByteArray();
+    }
+
+    private byte[] deflate(byte[] contents) {
+        return deflate(deflater, contents);
+    }
+
+    private void writeEntry(String name, int method, long crc, long size, ByteBuffer data) throws IOException {
+        writeEntry(name, method, crc, size, data, false);
+    }
+
+    private void writeEntry(String name, int method, long crc, long size, ByteBuffer data, boolean pageAligned) throws IOException {
+        if (closed) {
+            throw new IOException("Archive has already been closed");
+        }
+
+        if (!names.add(name)) {
+            throw new ZipException("Duplicate entry " + name);
+        }
+
+        var compressedSize = data.remaining();
+        if (size > 0xFFFFFFFFL || position > 0xFFFFFFFFL) {
+            throw new ZipException("Entry %s is too large to be packaged".formatted(name));
+        }
+
+        var nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        var extraLength = pageAligned ? getAlignmentPadding(position + LOCAL_HEADER_SIZE + nameBytes.length, compressedSize) : 0;
+        var header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + nameBytes.length + extraLength).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort((short) VERSION_NEEDED)
+                .putShort((short) FLAG_UTF8)
+                .putShort((short) method)
+                .putShort((short) DOS_TIME)
+                .putShort((short) DOS_DATE)
+                .putInt((int) crc)
+                .putInt(compressedSize)
+                .putInt((int) size)
+                .putShort((short) nameBytes.length)
+                .putShort((short) extraLength)
+                .put(nameBytes);
+
+        if (extraLength > 0) {
+            // The rest of the buffer is already zeroed, which is the padding
+            header.putShort((short) ALIGNMENT_EXTRA_ID)
+                    .putShort((short) (extraLength - 4))
+                    .putShort((short) PAGE_SIZE);
+        }
+
+        centralEntries.add(new CentralEntry(nameBytes, method, crc, compressedSize, size, position));
+
+        write(header.array(), 0, header.capacity());
+        write(data);
+    }
+
+    /**
+     * Gets the length of the extra field needed to page-align an entry's data, or 0 if it's already well placed. Data
+     * of at least a page starts on a page boundary. Smaller data is only moved to the next page if it would otherwise
+     * straddle two, so small entries don't each waste most of a page.
+     *
+     * @param dataOffset The offset the data would start at without an extra field
+     * @param dataLength The length of the data
+     */
+    static int getAlignmentPadding(long dataOffset, int dataLength) {
+        var offsetInPage = (int) (dataOffset % PAGE_SIZE);
+
+        if (offsetInPage == 0 || (dataLength < PAGE_SIZE && offsetInPage + dataLength <= PAGE_SIZE)) {
+            return 0;
+        }
+
+        // The extra field needs its own 6 byte header, which may push the data into the page after
+        var padding = PAGE_SIZE - offsetInPage;
+        return padding >= ALIGNMENT_EXTRA_MIN_SIZE ? padding : padding + PAGE_SIZE;
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        outputStream.write(bytes, offset, length);
+        position += length;
+    }
+
+    private void write(ByteBuffer data) throws IOException {
+        if (data.hasArray()) {
+            write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            return;
+        }
+
+        var buffer = new byte[Math.min(data.remaining(), 64 * 1024)];
+        var remaining = data.duplicate();
+
+        while (remaining.hasRemaining()) {
+            var length = Math.min(buffer.length, remaining.remaining());
+            remaining.get(buffer, 0, length);
+            write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Writes the central directory and closes the archive.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        try (outputStream) {
+            deflater.end();
+
+            var directoryOffset = position;
+
+            for (var entry : centralEntries) {
+                var header = ByteBuffer.allocate(CENTRAL_HEADER_SIZE + entry.name().length).order(ByteOrder.LITTLE_ENDIAN);
+
+                header.putInt(CENTRAL_HEADER_SIGNATURE)
+                        .putShort((short) VERSION_NEEDED)
+                        .putShort((short) VERSION_NEEDED)
+                        .putShort((short) FLAG_UTF8)
+                        .putShort((short) entry.method())
+                        .putShort((short) DOS_TIME)
+                        .putShort((short) DOS_DATE)
+                        .putInt((int) entry.crc())
+                        .putInt((int) entry.compressedSize())
+                        .putInt((int) entry.size())
+                        .putShort((short) entry.name().length)
+                        .putShort((short) 0) // extra length
+                        .putShort((short) 0) // comment length
+                        .putShort((short) 0) // disk number
+                        .putShort((short) 0) // internal attributes
+                        .putInt(0) // external attributes
+                        .putInt((int) entry.localHeaderOffset())
+                        .put(entry.name());
+
+                write(header.array(), 0, header.capacity());
+            }
+
+            var directorySize = position - directoryOffset;
+            var entryCount = centralEntries.size();
+            var needsZip64 = entryCount > 0xFFFF || directoryOffset > 0xFFFFFFFFL;
+
+            if (needsZip64) {
+                var zip64EndOffset = position;
+                var zip64End = ByteBuffer.allocate(56 + 20).order(ByteOrder.LITTLE_ENDIAN);
+
+                zip64End.putInt(ZIP64_END_SIGNATURE)
+                        .putLong(44) // size of the rest of the record
+                        .putShort((short) VERSION_NEEDED_ZIP64)
+                        .putShort((short) VERSION_NEEDED_ZIP64)
+                        .putInt(0) // disk number
+                        .putInt(0) // disk with the central directory
+                        .putLong(entryCount)
+                        .putLong(entryCount)
+                        .putLong(directorySize)
+                        .putLong(directoryOffset);
+
+                zip64End.putInt(ZIP64_LOCATOR_SIGNATURE)
+                        .putInt(0) // disk with the zip64 end record
+                        .putLong(zip64EndOffset)
+                        .putInt(1); // total disks
+
+                write(zip64End.array(), 0, zip64End.capacity());
+            }
+
+            var end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(END_SIGNATURE)
+                    .putShort((short) 0) // disk number
+                    .putShort((short) 0) // disk with the central directory
+                    .putShort((short) Math.min(entryCount, 0xFFFF))
+                    .putShort((short) Math.min(entryCount, 0xFFFF))
+                    .putInt((int) Math.min(directorySize, 0xFFFFFFFFL))
+                    .putInt((int) Math.min(directoryOffset, 0xFFFFFFFFL))
+                    .putShort((short) 0); // comment length
+
+            write(end.array(), 0, end.capacity());
+        }
+    }
+
+    private record CentralEntry(byte[] name, int method, long crc, int compressedSize, long size, long localHeaderOffset) {}
+}
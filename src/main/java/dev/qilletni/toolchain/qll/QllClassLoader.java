@@ -0,0 +1,283 @@
+package dev.qilletni.toolchain.qll;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.Manifest;
+
+/**
+ * A {@link URLClassLoader} which can also load native classes straight out of .qll archives. Classes of an archive
+ * whose <code>native/</code> entries are stored uncompressed (see {@link QllPackager.Layout#STORED}) are defined from
+ * slices of the memory-mapped archive, so they're never inflated or copied onto the heap. Jars and directories are
+ * left to {@link URLClassLoader} itself, so their packages get the attributes of their manifests as usual.
+ * <p>
+ * Classes and resources are looked up in the sources in the order they were given, whether they're URLs or archives,
+ * so an earlier source always shadows a later one. Resources of archives are served through <code>jar:</code> URLs.
+ */
+public class QllClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private static final String MANIFEST_NAME = "META-INF/MANIFEST.MF";
+
+    private final List<LoadedSource> sources;
+    private final boolean hasArchives;
+
+    /**
+     * @param sources The jars, directories and archives to load classes from, in lookup order
+     */
+    public QllClassLoader(List<Source> sources) {
+        super(sources.stream()
+                .filter(UrlSource.class::isInstance)
+                .map(source -> ((UrlSource) source).url())
+                .toArray(URL[]::new));
+
+        this.sources = sources.stream().map(QllClassLoader::loadSource).toList();
+        this.hasArchives = this.sources.stream().anyMatch(source -> source.archive() != null);
+    }
+
+    private static LoadedSource loadSource(Source source) {
+        try {
+            if (source instanceof ArchiveSource archiveSource) {
+                var archive = archiveSource.archive();
+                var codeSource = new CodeSource(archive.path().toUri().toURL(), (CodeSigner[]) null);
+
+                return new LoadedSource(archive, readManifest(archive), codeSource, null);
+            }
+
+            // The prefix of the URLs URLClassLoader gives resources of this source, to tell which source they're from
+            var url = ((UrlSource) source).url().toString();
+            var resourcePrefix = url.endsWith("/") ? url : "jar:" + url + "!/";
+
+            return new LoadedSource(null, null, null, resourcePrefix);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Manifest readManifest(QllArchive archive) throws IOException {
+        var manifestEntry = archive.getEntry(QllArchive.NATIVE_DIRECTORY + MANIFEST_NAME);
+
+        if (manifestEntry.isEmpty()) {
+            return null;
+        }
+
+        try (var inputStream = archive.getInputStream(manifestEntry.get())) {
+            return new Manifest(inputStream);
+        }
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        if (!hasArchives) {
+            return super.findClass(name);
+        }
+
+        var resourceName = name.replace('.', '/') + ".class";
+        var archiveSource = findArchiveBefore(resourceName, findUrlSourceIndex(super.findResource(resourceName)));
+
+        if (archiveSource == null) {
+            return super.findClass(name);
+        }
+
+        try {
+            var archive = archiveSource.archive();
+            var entry = archive.getEntry(QllArchive.NATIVE_DIRECTORY + resourceName).orElseThrow();
+            var classBytes = entry.method() == QllArchive.METHOD_STORED
+                    ? archive.rawData(entry)
+                    : ByteBuffer.wrap(archive.readAllBytes(entry));
+
+            return defineArchiveClass(name, classBytes, archiveSource);
+        } catch (IOException e) {
+            throw new ClassNotFoundException("Unable to read %s from %s".formatted(name, archiveSource.codeSource().getLocation()), e);
+        }
+    }
+
+    /**
+     * Finds the first archive containing a resource which comes before the URL source {@link URLClassLoader} would
+     * load it from.
+     *
+     * @param resourceName The name of the resource
+     * @param urlSourceIndex The index of the source {@link URLClassLoader} found the resource in, or -1 if it didn't
+     * @return The archive's source, or <code>null</code> if the resource should be loaded from the URL source
+     */
+    private LoadedSource findArchiveBefore(String resourceName, int urlSourceIndex) {
+        var end = urlSourceIndex == -1 ? sources.size() : urlSourceIndex;
+
+        for (int i = 0; i < end; i++) {
+            var source = sources.get(i);
+
+            if (source.archive() != null && source.archive().getEntry(QllArchive.NATIVE_DIRECTORY + resourceName).isPresent()) {
+                return source;
+            }
+        }
+
+        return null;
+    }
+
+    private int findUrlSourceIndex(URL resourceUrl) {
+        if (resourceUrl == null) {
+            return -1;
+        }
+
+        var url = resourceUrl.toString();
+
+        for (int i = 0; i < sources.size(); i++) {
+            var resourcePrefix = sources.get(i).resourcePrefix();
+
+            if (resourcePrefix != null && url.startsWith(resourcePrefix)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private Class<?> defineArchiveClass(String name, ByteBuffer classBytes, LoadedSource source) {
+        var lastDot = name.lastIndexOf('.');
+        if (lastDot != -1) {
+            definePackageOf(name.substring(0, lastDot), source);
+        }
+
+        // The code source gives each class a protection domain pointing at the .qll it came from
+        return defineClass(name, classBytes, source.codeSource());
+    }
+
+    /**
+     * Defines a package with the attributes of the archive's manifest, like {@link URLClassLoader} does for jars.
+     */
+    private void definePackageOf(String packageName, LoadedSource source) {
+        var location = source.codeSource().getLocation();
+        var manifest = source.manifest();
+        var definedPackage = getDefinedPackage(packageName);
+
+        if (definedPackage == null) {
+            try {
+                if (manifest != null) {
+                    definePackage(packageName, manifest, location);
+                } else {
+                    definePackage(packageName, null, null, null, null, null, null, null);
+                }
+
+                return;
+            } catch (IllegalArgumentException e) {
+                // Defined concurrently by another thread
+                definedPackage = getDefinedPackage(packageName);
+            }
+        }
+
+        if (definedPackage != null && definedPackage.isSealed() && !definedPackage.isSealed(location)) {
+            throw new SecurityException("Sealing violation: package %s is sealed".formatted(packageName));
+        }
+    }
+
+    @Override
+    public URL findResource(String name) {
+        if (!hasArchives) {
+            return super.findResource(name);
+        }
+
+        var url = super.findResource(name);
+        var archiveSource = findArchiveBefore(name, findUrlSourceIndex(url));
+
+        return archiveSource != null ? getArchiveResource(archiveSource, name) : url;
+    }
+
+    @Override
+    public Enumeration<URL> findResources(String name) throws IOException {
+        if (!hasArchives) {
+            return super.findResources(name);
+        }
+
+        // Each source's resources, in source order
+        var sourceUrls = new ArrayList<List<URL>>(sources.size());
+        for (var source : sources) {
+            var urls = new ArrayList<URL>();
+            sourceUrls.add(urls);
+
+            if (source.archive() != null && source.archive().getEntry(QllArchive.NATIVE_DIRECTORY + name).isPresent()) {
+                urls.add(getArchiveResource(source, name));
+            }
+        }
+
+        for (var url : Collections.list(super.findResources(name))) {
+            var sourceIndex = findUrlSourceIndex(url);
+            sourceUrls.get(sourceIndex == -1 ? sources.size() - 1 : sourceIndex).add(url);
+        }
+
+        return Collections.enumeration(sourceUrls.stream().flatMap(List::stream).toList());
+    }
+
+    /**
+     * Closes the loader, and unmaps the archives classes were loaded from.
+     */
+    @Override
+    public void close() throws IOException {
+        for (var source : sources) {
+            if (source.archive() != null) {
+                source.archive().close();
+            }
+        }
+
+        super.close();
+    }
+
+    private static URL getArchiveResource(LoadedSource source, String name) {
+        try {
+            return new URL("jar:" + source.archive().path().toUri() + "!/" + QllArchive.NATIVE_DIRECTORY + name);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A place native classes are loaded from.
+     */
+    public interface Source {
+        /**
+         * @return A description of where the source is, for logging
+         */
+        String location();
+    }
+
+    /**
+     * A jar or directory, loaded like any other {@link URLClassLoader} URL.
+     *
+     * @param url The URL of the jar or directory
+     */
+    public record UrlSource(URL url) implements Source {
+        @Override
+        public String location() {
+            return url.toString();
+        }
+    }
+
+    /**
+     * The <code>native/</code> directory of a mapped .qll.
+     *
+     * @param archive The .qll to load classes from
+     */
+    public record ArchiveSource(QllArchive archive) implements Source {
+        @Override
+        public String location() {
+            return archive.path().toString();
+        }
+    }
+
+    /**
+     * A source and what's needed to load from it. Archives have their manifest and code source, while URL sources are
+     * loaded by {@link URLClassLoader}, so only the prefix of their resource URLs is kept.
+     */
+    private record LoadedSource(QllArchive archive, Manifest manifest, CodeSource codeSource, String resourcePrefix) {}
+}
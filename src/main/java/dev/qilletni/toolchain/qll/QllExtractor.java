@@ -4,7 +4,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Optional;
@@ -14,33 +13,45 @@ public class QllExtractor {
     private static final Logger LOGGER = LoggerFactory.getLogger(QllExtractor.class);
 
     public static Optional<Path> extractToTmp(Path qllPath) throws IOException {
-        var tempDirectory = Files.createTempDirectory("ql-doc").resolve(qllPath.getFileName());
-        Files.createDirectories(tempDirectory);
+        try (var qllArchive = QllArchive.open(qllPath)) {
+            return extractToTmp(qllArchive);
+        }
+    }
+
+    /**
+     * Extracts the <code>qll.info</code> and <code>qilletni-src</code> of an opened .qll into a new temporary
+     * directory.
+     *
+     * @param qllArchive The archive to extract
+     * @return The temporary directory, or empty if the archive is missing either of the two
+     */
+    public static Optional<Path> extractToTmp(QllArchive qllArchive) throws IOException {
+        var qllInfo = qllArchive.getEntry("qll.info");
+        var qilletniSrc = qllArchive.entriesUnder(QllArchive.SOURCE_DIRECTORY);
+
+        if (qllInfo.isEmpty() || qilletniSrc.isEmpty()) {
+            return Optional.empty();
+        }
 
-        try (var fileSystem = FileSystems.newFileSystem(qllPath)) {
-            var qllInfo = fileSystem.getPath("qll.info");
-            var qilletniSrc = fileSystem.getPath("qilletni-src");
+        var tempDirectory = Files.createTempDirectory("ql-doc").resolve(qllArchive.path().getFileName());
+        Files.createDirectories(tempDirectory);
 
-            if (Files.notExists(qllInfo) || Files.notExists(qilletniSrc)) {
-                return Optional.empty();
-            }
+        Files.write(tempDirectory.resolve("qll.info"), qllArchive.readAllBytes(qllInfo.get()));
 
-            Files.copy(qllInfo, tempDirectory.resolve("qll.info"));
+        for (var entry : qilletniSrc) {
+            var dest = tempDirectory.resolve(entry.name()).normalize();
 
-            var targetDir = tempDirectory.resolve("qilletni-src");
+            if (!dest.startsWith(tempDirectory)) {
+                LOGGER.warn("Skipping entry {} outside of the extraction directory", entry.name());
+                continue;
+            }
 
-            try (var stream = Files.walk(qilletniSrc)) {
-                stream.forEach(source -> {
-                    var dest = targetDir.resolve(qilletniSrc.relativize(source).toString());
-                    try {
-                        Files.copy(source, dest);
-                    } catch (IOException e) {
-                        throw new RuntimeException("Failed to copy " + source + " to " + dest, e);
-                    }
-                });
+            if (entry.isDirectory()) {
+                Files.createDirectories(dest);
+            } else {
+                Files.createDirectories(dest.getParent());
+                Files.write(dest, qllArchive.readAllBytes(entry));
             }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
         }
 
         return Optional.of(tempDirectory);
@@ -30,5 +30,13 @@ public class QllInfoGenerator {
     public static QllInfo readPackagedQllInfo(InputStream qllInfoPath) {
         return gson.fromJson(new InputStreamReader(qllInfoPath), QllInfo.class);
     }
+
+    public static String toJson(QllInfo qllInfo) {
+        return gson.toJson(qllInfo);
+    }
+
+    public static QllInfo fromJson(String json) {
+        return gson.fromJson(json, QllInfo.class);
+    }
     
 }
@@ -1,5 +1,6 @@
 package dev.qilletni.toolchain.qll;
 
+import dev.qilletni.toolchain.jfr.NativeClassLoaderEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -15,7 +16,25 @@ public class QllJarExtractor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(QllJarExtractor.class);
 
-    private final List<URL> extractedJars = new ArrayList<>();
+    private final List<QllClassLoader.Source> sources = new ArrayList<>();
+    private final NativeCache nativeCache;
+
+    /**
+     * Creates an extractor which loads native classes directly from inside .qll files.
+     */
+    public QllJarExtractor() {
+        this(null);
+    }
+
+    /**
+     * Creates an extractor which loads native classes from a {@link NativeCache}, falling back to loading them from
+     * inside the .qll if they can't be extracted.
+     *
+     * @param nativeCache The cache to extract native classes into
+     */
+    public QllJarExtractor(NativeCache nativeCache) {
+        this.nativeCache = nativeCache;
+    }
 
     /**
      * Copy the contents of a given jar into the .qll build path, under `/native/`
@@ -51,10 +70,50 @@ public class QllJarExtractor {
         }
     }
 
-    public void registerInnerJar(Path qllPath) {
+    /**
+     * Registers the native classes of a .qll, reusing the archive it was already mapped and read from. This takes
+     * ownership of the archive: it's kept open by the class loader if classes are loaded straight from it, and closed
+     * otherwise.
+     *
+     * @param archive The mapped .qll
+     */
+    public void registerInnerJar(QllArchive archive) {
+        var qllPath = archive.path();
+
+        // Stored native classes can be defined straight from the mapped .qll, with nothing to extract
+        if (archive.isStoredUnder(QllArchive.NATIVE_DIRECTORY)) {
+            LOGGER.debug("Loading native classes of {} from the mapped .qll", qllPath.getFileName());
+            sources.add(new QllClassLoader.ArchiveSource(archive));
+            return;
+        }
+
+        try (archive) {
+            registerExtractedJar(archive);
+        }
+    }
+
+    private void registerExtractedJar(QllArchive archive) {
+        var qllPath = archive.path();
+
+        if (nativeCache != null) {
+            try {
+                var nativeDirectory = nativeCache.getNativeDirectory(archive);
+
+                if (nativeDirectory.isPresent()) {
+                    sources.add(new QllClassLoader.UrlSource(nativeDirectory.get().toUri().toURL()));
+                } else {
+                    LOGGER.debug("{} has no native classes", qllPath.getFileName());
+                }
+
+                return;
+            } catch (IOException e) {
+                LOGGER.warn("Unable to cache native classes of {}, loading them from the .qll", qllPath.getFileName(), e);
+            }
+        }
+
         try {
             var qllUrl = qllPath.toUri().toURL().toString();
-            extractedJars.add(new URL("jar:" + qllUrl + "!/native/"));
+            sources.add(new QllClassLoader.UrlSource(new URL("jar:" + qllUrl + "!/native/")));
         } catch (IOException e) {
             throw new RuntimeException("Failed to create URL for inner jar", e);
         }
@@ -67,11 +126,22 @@ public class QllJarExtractor {
      * @throws IOException
      */
     public void addLocalLibraryJar(Path localJarPath) throws IOException {
-        extractedJars.add(localJarPath.toUri().toURL());
+        sources.add(new QllClassLoader.UrlSource(localJarPath.toUri().toURL()));
     }
 
     public URLClassLoader createClassLoader() {
-        return new URLClassLoader(extractedJars.toArray(URL[]::new));
+        var nativeClassLoaderEvent = new NativeClassLoaderEvent();
+        nativeClassLoaderEvent.begin();
+
+        var classLoader = new QllClassLoader(sources);
+
+        if (nativeClassLoaderEvent.shouldCommit()) {
+            nativeClassLoaderEvent.urlCount = sources.size();
+            nativeClassLoaderEvent.urls = sources.stream().map(QllClassLoader.Source::location).toList().toString();
+            nativeClassLoaderEvent.commit();
+        }
+
+        return classLoader;
     }
 
 }
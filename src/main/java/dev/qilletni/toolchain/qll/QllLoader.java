@@ -5,102 +5,99 @@ import dev.qilletni.impl.lib.LibrarySourceFileResolver;
 import dev.qilletni.pkgutil.manifest.LockFile;
 import dev.qilletni.pkgutil.manifest.models.ResolvedPackage;
 import dev.qilletni.toolchain.config.QilletniInfoParser;
+import dev.qilletni.toolchain.jfr.QllLoadEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.function.Predicate;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 public class QllLoader {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(QllLoader.class);
 
-    public QllInfo loadQll(LibrarySourceFileResolver librarySourceFileResolver, Path qllPath) throws IOException, URISyntaxException {
+    public QllInfo loadQll(LibrarySourceFileResolver librarySourceFileResolver, Path qllPath) throws IOException {
+        var loadedQll = readQll(qllPath);
+        loadedQll.register(librarySourceFileResolver);
+
+        // Its sources were copied out, and its native classes aren't loaded
+        loadedQll.qllArchive().close();
+
+        return loadedQll.qllInfo();
+    }
+
+    /**
+     * Reads the {@link QllInfo} and sources of a .qll, without registering it anywhere. This is safe to call from
+     * multiple threads at once. The archive of the returned library is left open for its native classes to be
+     * registered, and must be closed by the caller otherwise.
+     *
+     * @param qllPath The path of the .qll to read
+     * @return The read library
+     */
+    public LoadedQll readQll(Path qllPath) throws IOException {
+        return readQll(qllPath, null);
+    }
+
+    /**
+     * Reads the sources of a .qll whose {@link QllInfo} may already be known (e.g. from a {@link StartupSnapshot}),
+     * without registering it anywhere. This is safe to call from multiple threads at once.
+     *
+     * @param qllPath  The path of the .qll to read
+     * @param qllInfo  The already decoded {@link QllInfo} of the .qll, or <code>null</code> to read it from the .qll
+     * @return The read library
+     */
+    public LoadedQll readQll(Path qllPath, QllInfo qllInfo) throws IOException {
         LOGGER.debug("Loading {}", qllPath);
 
-        QllInfo qllInfo;
-
-        var zipUri = URI.create("jar:" + qllPath.toUri());
-
-        try (var zipFile = new ZipFile(qllPath.toFile());
-             var zipFs = FileSystems.newFileSystem(zipUri, Collections.emptyMap())) {
-            qllInfo = QllInfoGenerator.readPackagedQllInfo(zipFile.getInputStream(zipFile.getEntry("qll.info")));
-
-            LOGGER.debug("qllInfo = {}", qllInfo);
-
-            var srcPathInZip = zipFs.getPath("qilletni-src");
-
-            var sourceMap = new HashMap<String, String>();
-
-            zipFile.stream().filter(Predicate.not(ZipEntry::isDirectory))
-                    .forEach(entry -> {
-                        String normalizedName = entry.getName().replace("\\", "/");
-
-                        // Get a Path object *within the Zip FileSystem*
-                        // This Path object will correctly use '/' separators internally
-                        Path entryPathInZip = zipFs.getPath(normalizedName);
-
-                        Path fileName = entryPathInZip.getFileName();
-                        Path parentDir = entryPathInZip.getParent(); // null for entries in root
-
-                        // Determine the "root" component (first directory name)
-                        var root = "";
-                        if (entryPathInZip.getNameCount() > 1) {
-                            // Get the first path element (e.g., "src" from "src/core.ql")
-                            root = entryPathInZip.getName(0).toString();
-                        }
-
-                        // Handle cases where the entry might not be under "src"
-                        var relative = "N/A";
-
-                        try {
-                            if (parentDir != null && parentDir.startsWith(srcPathInZip)) {
-                                relative = srcPathInZip.relativize(entryPathInZip).toString();
-                            } else if (entryPathInZip.startsWith(srcPathInZip) && entryPathInZip.getNameCount() == 1) {
-                                // Handle files directly inside src, like "src/somefile.ql"
-                                relative = entryPathInZip.getFileName().toString(); // Or srcPathInZip.relativize(entryPathInZip)
-                            } else if (entryPathInZip.startsWith(srcPathInZip)) {
-                                relative = srcPathInZip.relativize(entryPathInZip).toString();
-                            }
-
-                            // If it's not under src, keep relative="N/A" or handle differently
-                        } catch (IllegalArgumentException e) {
-                            LOGGER.warn("Cannot relativize {} against {}", entryPathInZip, srcPathInZip);
-                        }
-
-                        // Logging using Path components
-                        // This is SUPER verbose, ignore it
-//                        LOGGER.debug("Entry: {} (Path: {}) is of: {}, {} ({})",
-//                                entry.getName(),
-//                                entryPathInZip,
-//                                fileName,
-//                                root,
-//                                relative);
-
-                        if (fileName.toString().endsWith(".ql") && root.equals("qilletni-src")) {
-                            try (var is = zipFile.getInputStream(entry)) {
-                                sourceMap.put(relative.replace("\\", "/"), new String(is.readAllBytes()));
-                            } catch (IOException e) {
-                                throw new RuntimeException(e);
-                            }
-                        }
-                    });
-
-            librarySourceFileResolver.addLibraryResolver(qllInfo.name(), sourceMap::get);
+        var qllLoadEvent = new QllLoadEvent();
+        qllLoadEvent.begin();
+
+        var infoFromSnapshot = qllInfo != null;
+        var qllArchive = QllArchive.open(qllPath);
+
+        try {
+            return readOpenedQll(qllPath, qllInfo, qllArchive, infoFromSnapshot, qllLoadEvent);
+        } catch (IOException | RuntimeException e) {
+            qllArchive.close();
+            throw e;
+        }
+    }
+
+    private LoadedQll readOpenedQll(Path qllPath, QllInfo qllInfo, QllArchive qllArchive, boolean infoFromSnapshot, QllLoadEvent qllLoadEvent) throws IOException {
+        if (qllInfo == null) {
+            var qllInfoEntry = qllArchive.getEntry("qll.info")
+                    .orElseThrow(() -> new FileNotFoundException("qll.info not found in " + qllPath));
+            qllInfo = QllInfoGenerator.readPackagedQllInfo(qllArchive.getInputStream(qllInfoEntry));
+        }
+
+        LOGGER.debug("qllInfo = {}", qllInfo);
+
+        // key: Qilletni import path,  value: archive entry
+        var sourceEntries = new HashMap<String, QllArchive.Entry>();
+
+        // Sources are only inflated once they're imported, see LazyQllSourceResolver
+        for (var entry : qllArchive.entriesUnder(QllArchive.SOURCE_DIRECTORY)) {
+            if (entry.name().endsWith(".ql")) {
+                sourceEntries.put(entry.name().substring(QllArchive.SOURCE_DIRECTORY.length()), entry);
+            }
+        }
+
+        if (qllLoadEvent.shouldCommit()) {
+            qllLoadEvent.packageName = qllInfo.name();
+            qllLoadEvent.packageVersion = qllInfo.version().getVersionString();
+            qllLoadEvent.path = qllPath.toString();
+            qllLoadEvent.bytes = qllArchive.size();
+            qllLoadEvent.entryCount = qllArchive.entries().size();
+            qllLoadEvent.sourceCount = sourceEntries.size();
+            qllLoadEvent.infoFromSnapshot = infoFromSnapshot;
+            qllLoadEvent.commit();
         }
 
-        return qllInfo;
+        return new LoadedQll(qllInfo, qllPath, qllArchive, new LazyQllSourceResolver(qllInfo.name(), qllArchive, sourceEntries));
     }
 
     /**
@@ -112,44 +109,28 @@ public class QllLoader {
      * @return The created {@link QllInfo}
      */
     public QllInfo loadLocalLibrary(LibrarySourceFileResolver librarySourceFileResolver, Path projectRootPath) throws IOException {
+        var loadedQll = readLocalLibrary(projectRootPath);
+        loadedQll.register(librarySourceFileResolver);
+
+        return loadedQll.qllInfo();
+    }
+
+    /**
+     * Reads a local library, like {@link #loadLocalLibrary(LibrarySourceFileResolver, Path)}, without registering it
+     * anywhere. Sources are read from disk the first time they're imported, and cached after, see
+     * {@link LocalLibrarySourceResolver}.
+     *
+     * @param projectRootPath The root path of the project (i.e. the parent of the <code>qilletni-src</code>)
+     * @return The read library, with the project root as its path
+     */
+    public LoadedQll readLocalLibrary(Path projectRootPath) throws IOException {
         LOGGER.debug("Loading local {}", projectRootPath);
 
         var srcPath = projectRootPath.resolve("qilletni-src");
 
         var qllInfo = new QllInfo(QilletniInfoParser.readQilletniInfo(srcPath));
 
-        // key: Qilletni file path,  value = actual file path
-        var sourceMap = new HashMap<String, Path>();
-        var sourceCache = new HashMap<String, String>();
-
-        try (var walk = Files.walk(srcPath)) {
-            walk.filter(Predicate.not(Files::isDirectory))
-                    .filter(path -> path.getFileName().toString().endsWith(".ql"))
-                    .forEach(entry -> {
-                        String relative = srcPath.relativize(entry).toString().replace("\\", "/");
-
-                        LOGGER.debug("Entry: {} is of: {}, {}", entry, entry.getFileName(), relative);
-                        sourceMap.put(relative, entry);
-                    });
-        }
-
-        librarySourceFileResolver.addLibraryResolver(qllInfo.name(), importPath ->
-                sourceCache.computeIfAbsent(importPath, path -> {
-                    var actualPath = sourceMap.get(path);
-
-                    if (actualPath == null) {
-                        return null;
-                    }
-
-                    try {
-                        return Files.readString(actualPath);
-                    } catch (IOException e) {
-                        LOGGER.error("Failed to read local library file: {}", actualPath, e);
-                        return null;
-                    }
-                }));
-
-        return qllInfo;
+        return new LoadedQll(qllInfo, projectRootPath, null, new LocalLibrarySourceResolver(qllInfo.name(), srcPath));
     }
 
     public List<ResolvedPackage> getResolvedPackages(Path lockfilePath) throws IOException {
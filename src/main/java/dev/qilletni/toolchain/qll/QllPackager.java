@@ -1,41 +1,318 @@
 package dev.qilletni.toolchain.qll;
 
+import dev.qilletni.api.lib.qll.QllInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
+/**
+ * Packages libraries into .qll archives. Files are compressed concurrently on a pool of worker threads, then written
+ * to the archive in sorted order, so the same inputs always produce the same archive regardless of the number of
+ * threads.
+ */
 public class QllPackager {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(QllPackager.class);
 
-    public void packageQll(Path qllDirectoryPath, Path qllDestination) throws IOException {
-        try (
-                var fos = Files.newOutputStream(qllDestination);
-                var zos = new ZipOutputStream(fos);
-                var walking = Files.walk(qllDirectoryPath)) {
-
-            LOGGER.debug("Packaging QLL from {} to: {}", qllDirectoryPath.toAbsolutePath(), qllDestination.toAbsolutePath());
-            
-            walking.filter(path -> !Files.isDirectory(path))
-                    .forEach(path -> {
-                        var zipEntry = new ZipEntry(qllDirectoryPath.relativize(path).toString());
-
-                        LOGGER.debug("zip entry: {}  (original path: {})", zipEntry.getName(), path);
-
-                        try {
-                            zos.putNextEntry(zipEntry);
-                            Files.copy(path, zos);
-                            zos.closeEntry();
-                        } catch (IOException e) {
-                            throw new UncheckedIOException(e);
+    /**
+     * How many compressed files may wait to be written per worker thread, bounding the memory used by packaging.
+     */
+    private static final int PENDING_FILES_PER_THREAD = 4;
+
+    /**
+     * How hard to compress the files of a .qll.
+     */
+    public enum CompressionLevel {
+        /**
+         * Store files without compressing them
+         */
+        STORE(0),
+        /**
+         * The fastest compression, for local development builds
+         */
+        FAST(Deflater.BEST_SPEED),
+        /**
+         * The default balance of speed and size
+         */
+        NORMAL(Deflater.DEFAULT_COMPRESSION),
+        /**
+         * The smallest archives, for releases
+         */
+        BEST(Deflater.BEST_COMPRESSION);
+
+        private final int deflaterLevel;
+
+        CompressionLevel(int deflaterLevel) {
+            this.deflaterLevel = deflaterLevel;
+        }
+
+        public int getDeflaterLevel() {
+            return deflaterLevel;
+        }
+    }
+
+    /**
+     * How the <code>native</code> and <code>qilletni-src</code> entries of a .qll are written.
+     */
+    public enum Layout {
+        /**
+         * Compressed with the packager's {@link CompressionLevel}
+         */
+        COMPRESSED,
+        /**
+         * Uncompressed and page-aligned, so they're read straight from the memory-mapped .qll without inflating them.
+         * Archives are larger, but still valid zip files
+         */
+        STORED
+    }
+
+    private final CompressionLevel compressionLevel;
+    private final int threads;
+    private final Layout layout;
+
+    /**
+     * Creates a packager with the {@link CompressionLevel#NORMAL} compression level, using every available processor.
+     */
+    public QllPackager() {
+        this(CompressionLevel.NORMAL, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param compressionLevel How hard to compress files
+     * @param threads          The number of files to compress concurrently. 1 compresses everything on the calling
+     *                         thread
+     */
+    public QllPackager(CompressionLevel compressionLevel, int threads) {
+        this(compressionLevel, threads, Layout.COMPRESSED);
+    }
+
+    /**
+     * @param compressionLevel How hard to compress files
+     * @param threads          The number of files to compress concurrently. 1 compresses everything on the calling
+     *                         thread
+     * @param layout           How to write native classes and sources
+     */
+    public QllPackager(CompressionLevel compressionLevel, int threads, Layout layout) {
+        this.compressionLevel = compressionLevel;
+        this.threads = Math.max(1, threads);
+        this.layout = layout;
+    }
+
+    /**
+     * Packages a library straight into a .qll, without staging its contents on disk first. The entries of the native
+     * jar are copied into <code>native/</code> as they're stored in the jar, without being recompressed. A jar holding
+     * the same entry more than once is packaged with only the last of them, as {@link QllArchive} reads it.
+     *
+     * @param qllInfo        The info of the library, written as <code>qll.info</code>
+     * @param sourcePath     The <code>qilletni-src</code> directory of the library
+     * @param nativeJarPath  The shadow jar of the library, or <code>null</code> if it has no native classes
+     * @param qllDestination The .qll to write. It's only replaced once the new archive is complete
+     */
+    public void packageLibrary(QllInfo qllInfo, Path sourcePath, Path nativeJarPath, Path qllDestination) throws IOException {
+        LOGGER.debug("Packaging QLL from {} to: {}", sourcePath.toAbsolutePath(), qllDestination.toAbsolutePath());
+
+        writeAtomically(qllDestination, writer -> {
+            addCompressedEntry(writer, compress("qll.info", QllInfoGenerator.toJson(qllInfo).getBytes(StandardCharsets.UTF_8)));
+
+            var sourceFiles = listFiles(sourcePath, true).stream()
+                    .map(sourceFile -> new FileEntry(QllArchive.SOURCE_DIRECTORY + toEntryName(sourcePath, sourceFile), sourceFile))
+                    .toList();
+
+            addFiles(writer, sourceFiles);
+
+            if (nativeJarPath != null) {
+                try (var nativeJar = QllArchive.open(nativeJarPath)) {
+                    var copied = 0;
+
+                    for (var entry : nativeJar.entries()) {
+                        if (entry.isDirectory()) {
+                            continue;
                         }
-                    });
+
+                        var entryName = QllArchive.NATIVE_DIRECTORY + entry.name();
+
+                        if (layout == Layout.STORED) {
+                            var contents = entry.method() == QllArchive.METHOD_STORED ? nativeJar.rawData(entry) : ByteBuffer.wrap(nativeJar.readAllBytes(entry));
+                            writer.addAlignedEntry(entryName, entry.crc(), contents);
+                        } else {
+                            writer.addRawEntry(entryName, nativeJar, entry);
+                        }
+
+                        copied++;
+                    }
+
+                    LOGGER.debug("Copied {} entries from {}", copied, nativeJarPath);
+                }
+            }
+        });
+    }
+
+    /**
+     * Packages the contents of a staged directory into a .qll, as-is.
+     *
+     * @param qllDirectoryPath The directory holding <code>qll.info</code>, <code>qilletni-src</code> and optionally
+     *                         <code>native</code>
+     * @param qllDestination   The .qll to write
+     */
+    public void packageQll(Path qllDirectoryPath, Path qllDestination) throws IOException {
+        LOGGER.debug("Packaging QLL from {} to: {}", qllDirectoryPath.toAbsolutePath(), qllDestination.toAbsolutePath());
+
+        writeAtomically(qllDestination, writer -> {
+            var files = listFiles(qllDirectoryPath, false).stream()
+                    .map(file -> new FileEntry(toEntryName(qllDirectoryPath, file), file))
+                    .toList();
+
+            addFiles(writer, files);
+        });
+    }
+
+    /**
+     * Compresses the given files, on the worker threads if there are more than one, and adds them to the archive in
+     * the order they're given.
+     */
+    private void addFiles(QllArchiveWriter writer, List<FileEntry> files) throws IOException {
+        if (threads == 1 || files.size() <= 1) {
+            for (var file : files) {
+                addCompressedEntry(writer, compress(file.name(), Files.readAllBytes(file.path())));
+            }
+
+            return;
         }
+
+        // Compressing is CPU bound, so this is a pool of platform threads
+        var executor = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+
+        try {
+            var pending = new ArrayDeque<Future<CompressedEntry>>();
+            var maxPending = threads * PENDING_FILES_PER_THREAD;
+            var nextFile = 0;
+
+            while (nextFile < files.size() || !pending.isEmpty()) {
+                while (nextFile < files.size() && pending.size() < maxPending) {
+                    var file = files.get(nextFile++);
+                    pending.addLast(executor.submit(() -> compress(file.name(), Files.readAllBytes(file.path()))));
+                }
+
+                addCompressedEntry(writer, await(pending.removeFirst()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompressedEntry compress(String name, byte[] contents) {
+        var crc = new CRC32();
+        crc.update(contents);
+
+        if (isAligned(name)) {
+            return new CompressedEntry(name, QllArchive.METHOD_STORED, crc.getValue(), contents.length, contents);
+        }
+
+        if (compressionLevel != CompressionLevel.STORE) {
+            var deflater = new Deflater(compressionLevel.getDeflaterLevel(), true);
+
+            try {
+                var compressed = QllArchiveWriter.deflate(deflater, contents);
+
+                // Incompressible data, such as already compressed resources, is stored instead
+                if (compressed.length < contents.length) {
+                    return new CompressedEntry(name, QllArchive.METHOD_DEFLATED, crc.getValue(), contents.length, compressed);
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+
+        return new CompressedEntry(name, QllArchive.METHOD_STORED, crc.getValue(), contents.length, contents);
+    }
+
+    private void addCompressedEntry(QllArchiveWriter writer, CompressedEntry entry) throws IOException {
+        if (isAligned(entry.name())) {
+            writer.addAlignedEntry(entry.name(), entry.crc(), ByteBuffer.wrap(entry.data()));
+        } else {
+            writer.addCompressedEntry(entry.name(), entry.method(), entry.crc(), entry.size(), ByteBuffer.wrap(entry.data()));
+        }
+    }
+
+    /**
+     * Checks if an entry is stored page-aligned, which in the {@link Layout#STORED} layout is every native class and
+     * source. <code>qll.info</code> is always compressed.
+     */
+    private boolean isAligned(String entryName) {
+        return layout == Layout.STORED && (entryName.startsWith(QllArchive.NATIVE_DIRECTORY) || entryName.startsWith(QllArchive.SOURCE_DIRECTORY));
+    }
+
+    private static CompressedEntry await(Future<CompressedEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while packaging");
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+                case IOException ioException -> throw ioException;
+                case UncheckedIOException uncheckedIOException -> throw uncheckedIOException.getCause();
+                case RuntimeException runtimeException -> throw runtimeException;
+                default -> throw new IOException("Unable to compress file", e.getCause());
+            }
+        }
+    }
+
+    private void writeAtomically(Path qllDestination, ArchiveContents contents) throws IOException {
+        var destinationDirectory = qllDestination.toAbsolutePath().getParent();
+        Files.createDirectories(destinationDirectory);
+
+        var tempFile = Files.createTempFile(destinationDirectory, qllDestination.getFileName().toString(), ".tmp");
+
+        try {
+            try (var writer = new QllArchiveWriter(tempFile, compressionLevel.getDeflaterLevel())) {
+                contents.write(writer);
+            }
+
+            Files.move(tempFile, qllDestination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Lists the files in a directory, sorted by path so archives are always packaged in the same order.
+     */
+    private static List<Path> listFiles(Path directory, boolean onlyQilletniFiles) throws IOException {
+        try (var walk = Files.walk(directory, FileVisitOption.FOLLOW_LINKS)) {
+            return walk.filter(Files::isRegularFile)
+                    .filter(path -> !onlyQilletniFiles || path.getFileName().toString().endsWith(".ql"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static String toEntryName(Path directory, Path file) {
+        return directory.relativize(file).toString().replace('\\', '/');
+    }
+
+    private record FileEntry(String name, Path path) {}
+
+    private record CompressedEntry(String name, int method, long crc, long size, byte[] data) {}
+
+    @FunctionalInterface
+    private interface ArchiveContents {
+        void write(QllArchiveWriter writer) throws IOException;
     }
 }
@@ -0,0 +1,27 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Everything <code>qilletni run</code> learns about a lockfile's packages before running a program, cached by
+ * {@link StartupSnapshotCache} so an unchanged lockfile doesn't have to be resolved and validated again.
+ *
+ * @param packages          The resolved packages, in lockfile order
+ * @param dependenciesValid If the packages' dependencies were validated successfully, with no local library present
+ */
+public record StartupSnapshot(List<Package> packages, boolean dependenciesValid) {
+
+    /**
+     * A single resolved package, along with the file metadata used to check that it hasn't changed.
+     *
+     * @param qllPath      The resolved path of the .qll
+     * @param size         The size of the .qll, in bytes
+     * @param lastModified The last modified time of the .qll, in milliseconds
+     * @param sha256       The SHA-256 hash of the .qll
+     * @param qllInfo      The decoded <code>qll.info</code> of the package
+     */
+    public record Package(Path qllPath, long size, long lastModified, String sha256, QllInfo qllInfo) {}
+}
@@ -0,0 +1,197 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.utils.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Stores {@link StartupSnapshot}s in a compact binary form, one file per lockfile, named after the lockfile's hash. A
+ * snapshot is only returned if nothing it was built from has changed: the lockfile, the toolchain version, the
+ * contents of the package directories, and every resolved .qll. A .qll whose size or modified time changed is
+ * re-hashed, so a file that was only touched does not invalidate the snapshot. Its new size and modified time are then
+ * stored, so it is only re-hashed once.
+ */
+public class StartupSnapshotCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupSnapshotCache.class);
+
+    private static final int MAGIC = 0x51534e50; // "QSNP"
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path cacheDirectory;
+    private final String toolchainVersion;
+
+    /**
+     * @param cacheDirectory   The directory snapshots are stored in
+     * @param toolchainVersion The version of the running toolchain. Snapshots from other versions are ignored
+     */
+    public StartupSnapshotCache(Path cacheDirectory, String toolchainVersion) {
+        this.cacheDirectory = cacheDirectory;
+        this.toolchainVersion = toolchainVersion;
+    }
+
+    /**
+     * Creates a snapshot entry for a package, hashing the .qll.
+     *
+     * @param qllPath The resolved path of the .qll
+     * @param qllInfo The decoded <code>qll.info</code> of the package
+     * @return The created entry
+     */
+    public static StartupSnapshot.Package describePackage(Path qllPath, QllInfo qllInfo) throws IOException {
+        return new StartupSnapshot.Package(qllPath, Files.size(qllPath), Files.getLastModifiedTime(qllPath).toMillis(), HashUtil.sha256(qllPath), qllInfo);
+    }
+
+    /**
+     * Loads the snapshot of the given lockfile, if one exists and is still up to date.
+     *
+     * @param lockfilePath          The lockfile the snapshot was made for
+     * @param dependencyDirectories The directories packages are resolved from. If any of their contents changed,
+     *                              packages may resolve differently, so the snapshot is discarded
+     * @return The snapshot, if it is still valid
+     */
+    public Optional<StartupSnapshot> load(Path lockfilePath, List<Path> dependencyDirectories) {
+        try {
+            var snapshotFile = getSnapshotFile(lockfilePath);
+
+            try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+                if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || !input.readUTF().equals(toolchainVersion)) {
+                    LOGGER.debug("Ignoring startup snapshot {} from another toolchain version", snapshotFile);
+                    return Optional.empty();
+                }
+
+                var directoryCount = input.readInt();
+                if (directoryCount != dependencyDirectories.size()) {
+                    return Optional.empty();
+                }
+
+                for (var directory : dependencyDirectories) {
+                    if (input.readLong() != getLastModified(directory)) {
+                        LOGGER.debug("Startup snapshot is stale, {} has changed", directory);
+                        return Optional.empty();
+                    }
+                }
+
+                var packageCount = input.readInt();
+                var packages = new ArrayList<StartupSnapshot.Package>(packageCount);
+                var touched = false;
+
+                for (int i = 0; i < packageCount; i++) {
+                    var qllPath = Path.of(input.readUTF());
+                    var size = input.readLong();
+                    var lastModified = input.readLong();
+                    var sha256 = input.readUTF();
+                    var qllInfoJson = new byte[input.readInt()];
+                    input.readFully(qllInfoJson);
+
+                    if (Files.notExists(qllPath)) {
+                        LOGGER.debug("Startup snapshot is stale, {} was deleted", qllPath);
+                        return Optional.empty();
+                    }
+
+                    var currentSize = Files.size(qllPath);
+                    var currentLastModified = Files.getLastModifiedTime(qllPath).toMillis();
+
+                    if (currentSize != size || currentLastModified != lastModified) {
+                        if (!HashUtil.sha256(qllPath).equals(sha256)) {
+                            LOGGER.debug("Startup snapshot is stale, {} has changed", qllPath);
+                            return Optional.empty();
+                        }
+
+                        LOGGER.debug("{} was touched but its contents are unchanged", qllPath);
+                        touched = true;
+                    }
+
+                    packages.add(new StartupSnapshot.Package(qllPath, currentSize, currentLastModified, sha256, QllInfoGenerator.fromJson(new String(qllInfoJson, StandardCharsets.UTF_8))));
+                }
+
+                var snapshot = new StartupSnapshot(packages, input.readBoolean());
+
+                if (touched) {
+                    // Store the new sizes and modified times, so touched files aren't re-hashed on every run
+                    input.close();
+                    store(lockfilePath, dependencyDirectories, snapshot);
+                }
+
+                return Optional.of(snapshot);
+            }
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Unable to read startup snapshot for {}", lockfilePath, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores the snapshot of the given lockfile, replacing any existing one. Failures are logged and otherwise
+     * ignored, as the cache is never required to run.
+     *
+     * @param lockfilePath          The lockfile the snapshot was made for
+     * @param dependencyDirectories The directories packages were resolved from
+     * @param snapshot              The snapshot to store
+     */
+    public void store(Path lockfilePath, List<Path> dependencyDirectories, StartupSnapshot snapshot) {
+        try {
+            var snapshotFile = getSnapshotFile(lockfilePath);
+            var tempFile = Files.createTempFile(cacheDirectory, "snapshot", ".tmp");
+
+            try {
+                try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                    output.writeInt(MAGIC);
+                    output.writeInt(FORMAT_VERSION);
+                    output.writeUTF(toolchainVersion);
+
+                    output.writeInt(dependencyDirectories.size());
+                    for (var directory : dependencyDirectories) {
+                        output.writeLong(getLastModified(directory));
+                    }
+
+                    output.writeInt(snapshot.packages().size());
+                    for (var snapshotPackage : snapshot.packages()) {
+                        output.writeUTF(snapshotPackage.qllPath().toAbsolutePath().toString());
+                        output.writeLong(snapshotPackage.size());
+                        output.writeLong(snapshotPackage.lastModified());
+                        output.writeUTF(snapshotPackage.sha256());
+
+                        var qllInfoJson = QllInfoGenerator.toJson(snapshotPackage.qllInfo()).getBytes(StandardCharsets.UTF_8);
+                        output.writeInt(qllInfoJson.length);
+                        output.write(qllInfoJson);
+                    }
+
+                    output.writeBoolean(snapshot.dependenciesValid());
+                }
+
+                Files.move(tempFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+
+            LOGGER.debug("Stored startup snapshot {}", snapshotFile);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to store startup snapshot for {}", lockfilePath, e);
+        }
+    }
+
+    private Path getSnapshotFile(Path lockfilePath) throws IOException {
+        return cacheDirectory.resolve(HashUtil.sha256(lockfilePath) + ".snapshot");
+    }
+
+    private static long getLastModified(Path directory) throws IOException {
+        return Files.exists(directory) ? Files.getLastModifiedTime(directory).toMillis() : -1;
+    }
+}
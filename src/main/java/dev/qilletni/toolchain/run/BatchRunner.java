@@ -0,0 +1,232 @@
+package dev.qilletni.toolchain.run;
+
+import dev.qilletni.toolchain.logging.ProgressDisplay;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs many programs concurrently with a single {@link LibraryEnvironment}, each with its own program runner and its
+ * own captured output.
+ */
+public class BatchRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchRunner.class);
+
+    private final LibraryEnvironment environment;
+    private final int maxConcurrency;
+    private final Path outputDirectory;
+
+    /**
+     * @param environment     The environment to run every program with
+     * @param maxConcurrency  The maximum number of programs run at once
+     * @param outputDirectory The directory to write each program's output to, or <code>null</code> to print it
+     */
+    public BatchRunner(LibraryEnvironment environment, int maxConcurrency, Path outputDirectory) {
+        this.environment = environment;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Finds the programs of a batch. A directory gives every .ql file directly in it, anything else is used as a glob,
+     * such as <code>reports/**&#47;*.ql</code>, relative to the directory before its first wildcard.
+     *
+     * @param batch The directory or glob
+     * @return The matching programs, sorted by path, and the directory they were found in
+     */
+    public static Batch findPrograms(String batch) throws IOException {
+        var batchPath = Path.of(batch);
+
+        if (Files.isDirectory(batchPath)) {
+            try (var files = Files.list(batchPath)) {
+                return new Batch(batchPath, files.filter(path -> path.getFileName().toString().endsWith(".ql"))
+                        .filter(Files::isRegularFile)
+                        .sorted()
+                        .toList());
+            }
+        }
+
+        var normalizedBatch = batch.replace('\\', '/');
+        var wildcardIndex = indexOfWildcard(normalizedBatch);
+        var baseEnd = normalizedBatch.lastIndexOf('/', wildcardIndex);
+        var baseDirectory = Path.of(baseEnd < 0 ? "." : normalizedBatch.substring(0, Math.max(1, baseEnd)));
+        var pattern = normalizedBatch.substring(baseEnd + 1);
+
+        if (Files.notExists(baseDirectory)) {
+            return new Batch(baseDirectory, List.of());
+        }
+
+        var matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+
+        try (var walk = Files.walk(baseDirectory)) {
+            return new Batch(baseDirectory, walk.filter(Files::isRegularFile)
+                    .filter(path -> matcher.matches(baseDirectory.relativize(path)))
+                    .sorted()
+                    .toList());
+        }
+    }
+
+    private static int indexOfWildcard(String glob) {
+        for (int i = 0; i < glob.length(); i++) {
+            if ("*?[{".indexOf(glob.charAt(i)) != -1) {
+                return i;
+            }
+        }
+
+        return glob.length();
+    }
+
+    /**
+     * Runs every program of a batch, printing a summary once all have finished.
+     *
+     * @param batch The .ql files to run
+     * @return The results of each program, in the same order as the batch's programs
+     */
+    public List<ProgramResult> runAll(Batch batch) throws IOException {
+        var programs = batch.programs();
+        LOGGER.debug("Running {} programs with up to {} concurrently", programs.size(), maxConcurrency);
+
+        var batchStart = System.nanoTime();
+        var permits = new Semaphore(maxConcurrency);
+        var results = new ArrayList<ProgramResult>(programs.size());
+
+        try (var outputCapture = OutputCapture.install();
+             var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var futures = new ArrayList<Future<ProgramResult>>(programs.size());
+
+            for (var program : programs) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return runProgram(outputCapture, program);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                results.add(awaitResult(futures.get(i), programs.get(i)));
+            }
+        }
+
+        for (var result : results) {
+            reportOutput(batch, result);
+        }
+
+        printSummary(results, (System.nanoTime() - batchStart) / 1_000_000.0);
+
+        return results;
+    }
+
+    private ProgramResult runProgram(OutputCapture outputCapture, Path program) {
+        var start = System.nanoTime();
+
+        try (var buffers = outputCapture.capture()) {
+            int exitCode;
+
+            try {
+                exitCode = environment.runProgram(program);
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("An exception occurred while running {}", program, e);
+                exitCode = 1;
+            }
+
+            System.out.flush();
+            System.err.flush();
+
+            return new ProgramResult(program, exitCode, (System.nanoTime() - start) / 1_000_000.0, buffers.getStdOut(), buffers.getStdErr());
+        }
+    }
+
+    private void reportOutput(Batch batch, ProgramResult result) throws IOException {
+        if (outputDirectory != null) {
+            // Named by their path in the batch, so programs of the same name in different directories don't collide
+            var baseName = batch.baseDirectory().relativize(result.program()).toString().replaceFirst("\\.ql$", "");
+            var outFile = outputDirectory.resolve(baseName + ".out");
+            var errFile = outputDirectory.resolve(baseName + ".err");
+
+            Files.createDirectories(outFile.getParent());
+            Files.writeString(outFile, result.stdOut());
+
+            // Don't leave the stderr of a previous run behind
+            if (result.stdErr().isEmpty()) {
+                Files.deleteIfExists(errFile);
+            } else {
+                Files.writeString(errFile, result.stdErr());
+            }
+
+            return;
+        }
+
+        System.out.printf("==> %s (exit code %d) <==%n", result.program(), result.exitCode());
+        System.out.print(result.stdOut());
+        System.err.print(result.stdErr());
+        System.out.flush();
+    }
+
+    private static void printSummary(List<ProgramResult> results, double totalMillis) {
+        var nameWidth = Math.max(7, results.stream().mapToInt(result -> result.program().toString().length()).max().orElse(0));
+        var failed = results.stream().filter(result -> !result.isSuccessful()).count();
+
+        var summary = new StringBuilder("Ran %d program(s) in %.1f ms, %d failed\n".formatted(results.size(), totalMillis, failed));
+        summary.append(("  %-" + nameWidth + "s  %-9s  %10s\n").formatted("Program", "Status", "Wall (ms)"));
+
+        for (var result : results) {
+            var status = result.isSuccessful() ? "OK" : "FAILED(%d)".formatted(result.exitCode());
+            summary.append(("  %-" + nameWidth + "s  %-9s  %10.1f\n").formatted(result.program(), status, result.wallMillis()));
+        }
+
+        if (failed == 0) {
+            ProgressDisplay.success(summary.toString().stripTrailing());
+        } else {
+            ProgressDisplay.error(summary.toString().stripTrailing());
+        }
+    }
+
+    private static ProgramResult awaitResult(Future<ProgramResult> future, Path program) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ProgramResult(program, 1, 0, "", "Interrupted while waiting for the program\n");
+        } catch (ExecutionException e) {
+            LOGGER.error("Unable to run {}", program, e.getCause());
+            return new ProgramResult(program, 1, 0, "", String.valueOf(e.getCause()) + "\n");
+        }
+    }
+
+    /**
+     * The programs of a batch.
+     *
+     * @param baseDirectory The directory the programs were found in, which output files are named relative to
+     * @param programs      The .ql files to run
+     */
+    public record Batch(Path baseDirectory, List<Path> programs) {}
+
+    /**
+     * The result of a single program of a batch.
+     *
+     * @param program    The program that was run
+     * @param exitCode   The exit code of the program, 0 if it completed successfully
+     * @param wallMillis The wall time of the program, in milliseconds
+     * @param stdOut     The captured standard output of the program
+     * @param stdErr     The captured standard error of the program
+     */
+    public record ProgramResult(Path program, int exitCode, double wallMillis, String stdOut, String stdErr) {
+        public boolean isSuccessful() {
+            return exitCode == 0;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package dev.qilletni.toolchain.run;
+
+import dev.qilletni.api.exceptions.QilletniException;
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.impl.ServiceManager;
+import dev.qilletni.impl.lang.runner.QilletniProgramRunner;
+import dev.qilletni.impl.lib.LibrarySourceFileResolver;
+import dev.qilletni.toolchain.jfr.ProgramExecutionEvent;
+import dev.qilletni.toolchain.qll.LoadedQll;
+import dev.qilletni.toolchain.timing.PhaseTimer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A loaded and validated set of libraries, along with the classloader of their native jars. An environment is loaded
+ * once by {@link LibraryEnvironmentLoader} and may run any number of programs, each with its own
+ * {@link QilletniProgramRunner} and {@link LibrarySourceFileResolver}, so no program state is shared between runs.
+ * Closing it closes the native classloader, unmapping any .qll its classes are loaded from.
+ */
+public class LibraryEnvironment implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LibraryEnvironment.class);
+
+    private final List<QllInfo> libraries;
+    private final List<LoadedQll> librarySources;
+    private final ClassLoader nativeClassLoader;
+
+    /**
+     * @param libraries         The libraries available to programs
+     * @param librarySources    The libraries whose sources are registered for every run, in registration order
+     * @param nativeClassLoader The classloader of every library's native jar
+     */
+    public LibraryEnvironment(List<QllInfo> libraries, List<LoadedQll> librarySources, ClassLoader nativeClassLoader) {
+        this.libraries = List.copyOf(libraries);
+        this.librarySources = List.copyOf(librarySources);
+        this.nativeClassLoader = nativeClassLoader;
+    }
+
+    public List<QllInfo> getLibraries() {
+        return libraries;
+    }
+
+    public List<LoadedQll> getLibrarySources() {
+        return librarySources;
+    }
+
+    public ClassLoader getNativeClassLoader() {
+        return nativeClassLoader;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (nativeClassLoader instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+
+    /**
+     * Creates a new {@link LibrarySourceFileResolver} with every library's sources registered. Sources already read
+     * by a previous run are shared, as they never change.
+     *
+     * @return The created resolver
+     */
+    public LibrarySourceFileResolver createSourceFileResolver() {
+        var librarySourceFileResolver = new LibrarySourceFileResolver();
+        librarySources.forEach(loadedQll -> loadedQll.register(librarySourceFileResolver));
+
+        return librarySourceFileResolver;
+    }
+
+    /**
+     * Runs a Qilletni program with a fresh {@link QilletniProgramRunner}, with the native classloader set as the
+     * current thread's context classloader for the duration of the run.
+     *
+     * @param file The .ql file to run
+     * @return The exit code of the program, 0 if it completed successfully
+     */
+    public int runProgram(Path file) throws IOException {
+        return runProgram(file, PhaseTimer.disabled());
+    }
+
+    /**
+     * Runs a Qilletni program like {@link #runProgram(Path)}, recording each of its phases.
+     *
+     * @param file       The .ql file to run
+     * @param phaseTimer The timer to record the phases of the run in
+     * @return The exit code of the program, 0 if it completed successfully
+     */
+    public int runProgram(Path file, PhaseTimer phaseTimer) throws IOException {
+        var programExecutionEvent = new ProgramExecutionEvent();
+        programExecutionEvent.begin();
+
+        var exitCode = 1;
+
+        try {
+            exitCode = executeProgram(file, phaseTimer);
+            return exitCode;
+        } finally {
+            if (programExecutionEvent.shouldCommit()) {
+                programExecutionEvent.file = file.toAbsolutePath().toString();
+                programExecutionEvent.libraryCount = libraries.size();
+                programExecutionEvent.exitCode = exitCode;
+                programExecutionEvent.commit();
+            }
+        }
+    }
+
+    private int executeProgram(Path file, PhaseTimer phaseTimer) throws IOException {
+        final ClassLoader currentClassLoader = Thread.currentThread().getContextClassLoader();
+
+        try {
+            Thread.currentThread().setContextClassLoader(nativeClassLoader);
+
+            var runLibraries = new ArrayList<>(libraries);
+
+            QilletniProgramRunner runner;
+            try (var phase = phaseTimer.start("createDynamicProvider")) {
+                var dynamicProvider = ServiceManager.createDynamicProvider(runLibraries);
+
+                runner = new QilletniProgramRunner(dynamicProvider, createSourceFileResolver(), runLibraries);
+            }
+
+            LOGGER.debug("Importing initial files");
+
+            try (var phase = phaseTimer.start("importInitialFiles")) {
+                runner.importInitialFiles();
+            }
+
+            try (var phase = phaseTimer.start("runProgram")) {
+                LOGGER.debug("Running program: {}", file.getFileName());
+                runner.runProgram(file);
+            } catch (QilletniException | IOException e) {
+                LOGGER.error("An exception occurred while running {}", file.getFileName(), e);
+                shutdown(runner, phaseTimer);
+                return 1;
+            }
+
+            shutdown(runner, phaseTimer);
+        } finally {
+            Thread.currentThread().setContextClassLoader(currentClassLoader);
+        }
+
+        return 0;
+    }
+
+    private static void shutdown(QilletniProgramRunner runner, PhaseTimer phaseTimer) {
+        try (var phase = phaseTimer.start("shutdown")) {
+            runner.shutdown();
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package dev.qilletni.toolchain.run;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.pkgutil.manifest.models.ResolvedPackage;
+import dev.qilletni.toolchain.VersionProvider;
+import dev.qilletni.toolchain.qll.GradleProjectHelper;
+import dev.qilletni.toolchain.qll.LibraryValidator;
+import dev.qilletni.toolchain.qll.LoadedQll;
+import dev.qilletni.toolchain.qll.NativeCache;
+import dev.qilletni.toolchain.qll.ParallelQllLoader;
+import dev.qilletni.toolchain.qll.QllJarExtractor;
+import dev.qilletni.toolchain.qll.QllLoader;
+import dev.qilletni.toolchain.qll.StartupSnapshot;
+import dev.qilletni.toolchain.qll.StartupSnapshotCache;
+import dev.qilletni.toolchain.timing.PhaseTimer;
+import dev.qilletni.toolchain.utils.PathUtility;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Loads the libraries of a lockfile (and optionally a local library), validates their dependencies, and creates the
+ * classloader of their native jars.
+ */
+public class LibraryEnvironmentLoader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LibraryEnvironmentLoader.class);
+
+    private final PhaseTimer phaseTimer;
+
+    public LibraryEnvironmentLoader() {
+        this(PhaseTimer.disabled());
+    }
+
+    /**
+     * @param phaseTimer The timer to record each phase of loading in
+     */
+    public LibraryEnvironmentLoader(PhaseTimer phaseTimer) {
+        this.phaseTimer = phaseTimer;
+    }
+
+    /**
+     * Loads a {@link LibraryEnvironment}. Any problems are logged.
+     *
+     * @param options The options to load the environment with
+     * @return The loaded environment, or empty if it could not be loaded or its dependencies are not met
+     */
+    public Optional<LibraryEnvironment> load(LibraryEnvironmentOptions options) throws IOException {
+        var localLibrary = options.localLibrary();
+        var lockfilePath = options.lockfilePath();
+
+        var qllLoader = new QllLoader();
+        var qllJarExtractor = new QllJarExtractor(new NativeCache(PathUtility.getNativeCachePath()));
+
+        var loadedLibraries = new ArrayList<QllInfo>();
+        var librarySources = new ArrayList<LoadedQll>();
+        QllInfo localLibraryQll = null;
+        var localNativeJarAdded = false;
+
+        if (localLibrary != null) {
+            LOGGER.info("Loading local library at {}", localLibrary);
+            LoadedQll localLoadedQll;
+            try (var phase = phaseTimer.start("loadLocalLibrary")) {
+                localLoadedQll = qllLoader.readLocalLibrary(localLibrary);
+            }
+
+            localLibraryQll = localLoadedQll.qllInfo();
+            loadedLibraries.add(localLibraryQll);
+            librarySources.add(localLoadedQll);
+
+            if (options.useNativeJar()) {
+                LOGGER.debug("Using native jar");
+                if (GradleProjectHelper.isGradleProject(localLibrary)) {
+                    var gradleProjectHelper = GradleProjectHelper.createProjectHelper(localLibrary).orElseThrow(() -> new RuntimeException("Unable to interact with Gradle project"));
+                    Optional<Path> gradleJarOptional;
+                    try (var phase = phaseTimer.start("findProjectJar")) {
+                        gradleJarOptional = gradleProjectHelper.findProjectJarCached(false);
+                    }
+
+                    if (gradleJarOptional.isPresent()) {
+                        LOGGER.debug("Project jar will be extracted from: {}", gradleJarOptional);
+
+                        var gradleJar = gradleJarOptional.get();
+
+                        // Copy it if it's been created
+                        if (Files.exists(gradleJar)) {
+                            qllJarExtractor.addLocalLibraryJar(gradleJar);
+                            localNativeJarAdded = true;
+                        } else {
+                            LOGGER.error("Expected to find jar file {}, has it been built?", gradleJar);
+                        }
+                    } else {
+                        LOGGER.error("Unable to find jar output found in Gradle project");
+                        return Optional.empty();
+                    }
+                }
+            }
+
+            // TODO: Test local libraries with dependencies
+        }
+
+        var dependencyPath = PathUtility.getDependencyPath();
+        var localDependencyPath = PathUtility.getLocalDependencyPath();
+
+        var localLibraryName = localLibraryQll != null ? localLibraryQll.name() : null;
+
+        var dependencyDirectories = List.of(localDependencyPath, dependencyPath);
+        var startupSnapshotCache = new StartupSnapshotCache(PathUtility.getStartupCachePath(), getToolchainVersion());
+
+        Optional<StartupSnapshot> startupSnapshot = Optional.empty();
+        List<LoadedQll> lockfilePackages = List.of();
+        var allPackagesFound = true;
+
+        if (lockfilePath != null) {
+            try {
+                if (options.useStartupCache()) {
+                    try (var phase = phaseTimer.start("loadStartupSnapshot")) {
+                        startupSnapshot = startupSnapshotCache.load(lockfilePath, dependencyDirectories);
+                    }
+                }
+
+                List<Path> qllPaths;
+                Map<Path, QllInfo> knownQllInfo;
+
+                if (startupSnapshot.isPresent()) {
+                    LOGGER.debug("Using startup snapshot for {}", lockfilePath);
+
+                    var snapshotPackages = startupSnapshot.get().packages();
+                    qllPaths = snapshotPackages.stream().map(StartupSnapshot.Package::qllPath).toList();
+                    knownQllInfo = snapshotPackages.stream().collect(Collectors.toMap(StartupSnapshot.Package::qllPath, StartupSnapshot.Package::qllInfo));
+                } else {
+                    qllPaths = new ArrayList<>();
+                    knownQllInfo = Map.of();
+
+                    List<ResolvedPackage> resolvedPackages;
+                    try (var phase = phaseTimer.start("parseLockfile")) {
+                        resolvedPackages = qllLoader.getResolvedPackages(lockfilePath);
+                    }
+
+                    try (var phase = phaseTimer.start("probePackagePaths")) {
+                        for (var resolvedPackage : resolvedPackages) {
+                            var qllPath = localDependencyPath.resolve(resolvedPackage.resolved() + ".qll");
+                            if (!Files.exists(qllPath)) {
+                                qllPath = dependencyPath.resolve(resolvedPackage.resolved() + ".qll");
+                            }
+
+                            if (Files.notExists(qllPath)) {
+                                LOGGER.error("Unable to find package {}", resolvedPackage.name());
+                                allPackagesFound = false;
+                                continue;
+                            }
+
+                            qllPaths.add(qllPath);
+                        }
+                    }
+                }
+
+                // Packages are read concurrently, but merged in lockfile order to keep the classloader's URL order and
+                // the source resolver registration deterministic
+                var parallelQllLoader = new ParallelQllLoader(qllLoader, options.loadThreads(), phaseTimer);
+                lockfilePackages = parallelQllLoader.loadAll(qllPaths, knownQllInfo);
+
+                for (var loadedQll : lockfilePackages) {
+                    var isLocalLibrary = loadedQll.qllInfo().name().equals(localLibraryName);
+
+                    // The installed copy's native classes would shadow the local jar's, as they share class names
+                    if (isLocalLibrary && localNativeJarAdded) {
+                        LOGGER.debug("Skipping native classes of installed local library {}", localLibraryName);
+                        loadedQll.qllArchive().close();
+                    } else {
+                        try (var phase = phaseTimer.start("registerNativeClasses " + loadedQll.qllPath().getFileName())) {
+                            qllJarExtractor.registerInnerJar(loadedQll.qllArchive());
+                        }
+                    }
+
+                    if (isLocalLibrary) {
+                        LOGGER.debug("Skipping loading local library {} from dependencies", localLibraryName);
+                        continue;
+                    }
+
+                    librarySources.add(loadedQll);
+                    loadedLibraries.add(loadedQll.qllInfo());
+                }
+            } catch (IOException e) {
+                LOGGER.error("An exception occurred while reading dependencies", e);
+                allPackagesFound = false;
+            }
+        }
+
+        URLClassLoader qllJarClassLoader;
+        try (var phase = phaseTimer.start("createClassLoader")) {
+            qllJarClassLoader = qllJarExtractor.createClassLoader();
+        }
+
+        // The snapshot's validation result only covers the lockfile's packages, so a local library is always validated
+        if (startupSnapshot.isPresent() && startupSnapshot.get().dependenciesValid() && localLibraryQll == null) {
+            LOGGER.debug("Skipping dependency validation, no packages have changed since it last passed");
+        } else {
+            boolean dependenciesValid;
+            try (var phase = phaseTimer.start("validate")) {
+                dependenciesValid = new LibraryValidator(loadedLibraries).validate();
+            }
+
+            if (!dependenciesValid) {
+                LOGGER.error("Exiting due to unmet dependencies. Try deleting qilletni.lock and re-installing dependencies");
+                return Optional.empty();
+            }
+
+            if (lockfilePath != null && options.useStartupCache() && allPackagesFound) {
+                if (startupSnapshot.isEmpty()) {
+                    var snapshotPackages = new ArrayList<StartupSnapshot.Package>(lockfilePackages.size());
+                    for (var loadedQll : lockfilePackages) {
+                        snapshotPackages.add(StartupSnapshotCache.describePackage(loadedQll.qllPath(), loadedQll.qllInfo()));
+                    }
+
+                    startupSnapshotCache.store(lockfilePath, dependencyDirectories, new StartupSnapshot(snapshotPackages, localLibraryQll == null));
+                } else if (localLibraryQll == null) {
+                    startupSnapshotCache.store(lockfilePath, dependencyDirectories, new StartupSnapshot(startupSnapshot.get().packages(), true));
+                }
+            }
+        }
+
+        LOGGER.debug("Loaded libraries!");
+
+        return Optional.of(new LibraryEnvironment(loadedLibraries, librarySources, qllJarClassLoader));
+    }
+
+    private static String getToolchainVersion() throws IOException {
+        return new VersionProvider().loadProperties().getProperty("toolchain.version", "unknown");
+    }
+}
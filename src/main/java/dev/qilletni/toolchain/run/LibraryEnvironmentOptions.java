@@ -0,0 +1,14 @@
+package dev.qilletni.toolchain.run;
+
+import java.nio.file.Path;
+
+/**
+ * Options for loading a {@link LibraryEnvironment}.
+ *
+ * @param lockfilePath    The qilletni.lock to load libraries from, or <code>null</code> to use no lockfile
+ * @param localLibrary    If running a library example, the root of the library it's in, otherwise <code>null</code>
+ * @param useNativeJar    If the local library's native jar should be used
+ * @param loadThreads     The maximum number of libraries read concurrently
+ * @param useStartupCache If the cached {@link dev.qilletni.toolchain.qll.StartupSnapshot} may be used
+ */
+public record LibraryEnvironmentOptions(Path lockfilePath, Path localLibrary, boolean useNativeJar, int loadThreads, boolean useStartupCache) {}
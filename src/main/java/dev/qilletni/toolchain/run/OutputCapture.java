@@ -0,0 +1,125 @@
+package dev.qilletni.toolchain.run;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Captures <code>System.out</code> and <code>System.err</code> separately for each program run concurrently in one
+ * JVM. While installed, both streams are replaced with streams that write to the buffers bound to the current thread
+ * (and any threads it starts), or to the original streams on threads without a binding.
+ */
+public class OutputCapture implements AutoCloseable {
+
+    private final PrintStream originalOut;
+    private final PrintStream originalErr;
+
+    private final InheritableThreadLocal<Buffers> boundBuffers = new InheritableThreadLocal<>();
+
+    private OutputCapture() {
+        this.originalOut = System.out;
+        this.originalErr = System.err;
+    }
+
+    /**
+     * Replaces <code>System.out</code> and <code>System.err</code> until the capture is closed.
+     *
+     * @return The installed capture
+     */
+    public static OutputCapture install() {
+        var outputCapture = new OutputCapture();
+
+        System.setOut(new PrintStream(outputCapture.new RoutingOutputStream(false), true, StandardCharsets.UTF_8));
+        System.setErr(new PrintStream(outputCapture.new RoutingOutputStream(true), true, StandardCharsets.UTF_8));
+
+        return outputCapture;
+    }
+
+    /**
+     * Captures the output of the current thread, and of any threads it starts, until {@link Buffers#close()}.
+     *
+     * @return The buffers the output is captured in
+     */
+    public Buffers capture() {
+        var buffers = new Buffers();
+        boundBuffers.set(buffers);
+
+        return buffers;
+    }
+
+    @Override
+    public void close() {
+        System.out.flush();
+        System.err.flush();
+
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+    }
+
+    /**
+     * The captured output of a single program.
+     */
+    public final class Buffers implements AutoCloseable {
+
+        private final ByteArrayOutputStream stdOut = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream stdErr = new ByteArrayOutputStream();
+
+        public String getStdOut() {
+            synchronized (stdOut) {
+                return stdOut.toString(StandardCharsets.UTF_8);
+            }
+        }
+
+        public String getStdErr() {
+            synchronized (stdErr) {
+                return stdErr.toString(StandardCharsets.UTF_8);
+            }
+        }
+
+        /**
+         * Stops capturing the current thread's output.
+         */
+        @Override
+        public void close() {
+            if (boundBuffers.get() == this) {
+                boundBuffers.remove();
+            }
+        }
+    }
+
+    private final class RoutingOutputStream extends OutputStream {
+
+        private final boolean isErr;
+
+        private RoutingOutputStream(boolean isErr) {
+            this.isErr = isErr;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            var buffers = boundBuffers.get();
+
+            if (buffers == null) {
+                var original = isErr ? originalErr : originalOut;
+                original.write(bytes, offset, length);
+                return;
+            }
+
+            var buffer = isErr ? buffers.stdErr : buffers.stdOut;
+            synchronized (buffer) {
+                buffer.write(bytes, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() {
+            (isErr ? originalErr : originalOut).flush();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package dev.qilletni.toolchain.run;
+
+import dev.qilletni.toolchain.logging.ProgressDisplay;
+import dev.qilletni.toolchain.qll.LocalLibrarySourceResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a program again every time it, or a source of the local library it's an example of, changes. The
+ * {@link LibraryEnvironment} stays loaded between runs; only the changed local library sources are read again, and
+ * the environment is only reloaded if the local library's <code>qilletni_info.yml</code> changes.
+ */
+public class RunWatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RunWatcher.class);
+
+    /**
+     * How long to wait for more changes after the first one, so saving several files at once only runs once.
+     */
+    private static final long DEBOUNCE_MILLIS = 150;
+
+    private static final String QILLETNI_INFO_FILE = "qilletni_info.yml";
+
+    private final LibraryEnvironmentLoader environmentLoader;
+    private final LibraryEnvironmentOptions environmentOptions;
+    private final Path file;
+
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    /**
+     * @param environmentLoader  The loader to reload the environment with, if the local library's info changes
+     * @param environmentOptions The options the environment was loaded with
+     * @param file               The .ql file to run
+     */
+    public RunWatcher(LibraryEnvironmentLoader environmentLoader, LibraryEnvironmentOptions environmentOptions, Path file) {
+        this.environmentLoader = environmentLoader;
+        this.environmentOptions = environmentOptions;
+        this.file = file.toAbsolutePath();
+    }
+
+    /**
+     * Runs the program, then runs it again on every change until the process is stopped.
+     *
+     * @param environment The loaded environment to run the program with
+     * @return The exit code of the last run, if watching is interrupted
+     */
+    public int watch(LibraryEnvironment environment) throws IOException {
+        var exitCode = runProgram(environment, System.nanoTime(), 0);
+
+        try (var watchService = FileSystems.getDefault().newWatchService()) {
+            registerDirectory(watchService, file.getParent());
+
+            var localSourcePath = findLocalResolver(environment).map(LocalLibrarySourceResolver::getSourcePath).map(Path::toAbsolutePath);
+            if (localSourcePath.isPresent()) {
+                registerTree(watchService, localSourcePath.get());
+            }
+
+            ProgressDisplay.info("Watching for changes, press Ctrl+C to stop");
+
+            while (true) {
+                var changes = awaitChanges(watchService);
+                var changeDetected = System.nanoTime();
+
+                var relevantChanges = new LinkedHashMap<Path, WatchEvent.Kind<?>>();
+                changes.forEach((path, kind) -> {
+                    if (isRelevant(path, localSourcePath)) {
+                        relevantChanges.put(path, kind);
+                    }
+                });
+
+                if (relevantChanges.isEmpty()) {
+                    continue;
+                }
+
+                LOGGER.debug("Changed: {}", relevantChanges);
+
+                if (localSourcePath.isPresent() && relevantChanges.keySet().stream().anyMatch(path -> isQilletniInfo(path, localSourcePath.get()))) {
+                    ProgressDisplay.info("qilletni_info.yml changed, reloading libraries...");
+
+                    var reloadedEnvironment = environmentLoader.load(environmentOptions);
+                    if (reloadedEnvironment.isEmpty()) {
+                        ProgressDisplay.warn("Unable to reload libraries, waiting for more changes");
+                        continue;
+                    }
+
+                    environment = reloadedEnvironment.get();
+                } else if (localSourcePath.isPresent()) {
+                    invalidateSources(watchService, environment, localSourcePath.get(), relevantChanges);
+                }
+
+                exitCode = runProgram(environment, changeDetected, relevantChanges.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.debug("Stopped watching", e);
+        }
+
+        return exitCode;
+    }
+
+    private int runProgram(LibraryEnvironment environment, long startNanos, int changedFiles) {
+        int exitCode;
+
+        try {
+            exitCode = environment.runProgram(file);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("An exception occurred while running {}", file.getFileName(), e);
+            exitCode = 1;
+        }
+
+        var turnaroundMillis = (System.nanoTime() - startNanos) / 1_000_000.0;
+
+        if (changedFiles > 0) {
+            ProgressDisplay.info("Ran %s in %.1f ms after %d changed file(s), exit code %d", file.getFileName(), turnaroundMillis, changedFiles, exitCode);
+        } else {
+            ProgressDisplay.info("Ran %s in %.1f ms, exit code %d", file.getFileName(), turnaroundMillis, exitCode);
+        }
+
+        return exitCode;
+    }
+
+    /**
+     * Waits for at least one change, then collects changes until none have happened for {@link #DEBOUNCE_MILLIS}.
+     *
+     * @return The changed paths, and the last kind of change seen for each
+     */
+    private Map<Path, WatchEvent.Kind<?>> awaitChanges(WatchService watchService) throws InterruptedException {
+        var changes = new LinkedHashMap<Path, WatchEvent.Kind<?>>();
+
+        var watchKey = watchService.take();
+        while (watchKey != null) {
+            var directory = watchedDirectories.get(watchKey);
+
+            for (var event : watchKey.pollEvents()) {
+                if (directory != null && event.context() instanceof Path relativePath) {
+                    changes.put(directory.resolve(relativePath), event.kind());
+                }
+            }
+
+            if (!watchKey.reset()) {
+                watchedDirectories.remove(watchKey);
+            }
+
+            watchKey = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        return changes;
+    }
+
+    private void invalidateSources(WatchService watchService, LibraryEnvironment environment, Path localSourcePath, Map<Path, WatchEvent.Kind<?>> changes) throws IOException {
+        var localResolverOptional = findLocalResolver(environment);
+        if (localResolverOptional.isEmpty()) {
+            return;
+        }
+
+        var localResolver = localResolverOptional.get();
+        var structureChanged = false;
+
+        for (var change : changes.entrySet()) {
+            var path = change.getKey();
+
+            if (!path.startsWith(localSourcePath)) {
+                continue;
+            }
+
+            if (change.getValue() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                localResolver.invalidate(path);
+            } else {
+                structureChanged = true;
+
+                if (Files.isDirectory(path)) {
+                    registerTree(watchService, path);
+                } else {
+                    localResolver.invalidate(path);
+                }
+            }
+        }
+
+        if (structureChanged) {
+            localResolver.rescan();
+        }
+    }
+
+    private boolean isRelevant(Path path, Optional<Path> localSourcePath) {
+        if (path.getParent().equals(file.getParent()) && path.getFileName().toString().endsWith(".ql")) {
+            return true;
+        }
+
+        return localSourcePath.isPresent() && path.startsWith(localSourcePath.get())
+                && (Files.isDirectory(path) || path.getFileName().toString().endsWith(".ql") || isQilletniInfo(path, localSourcePath.get()));
+    }
+
+    private static boolean isQilletniInfo(Path path, Path localSourcePath) {
+        return path.equals(localSourcePath.resolve(QILLETNI_INFO_FILE));
+    }
+
+    private static Optional<LocalLibrarySourceResolver> findLocalResolver(LibraryEnvironment environment) {
+        return environment.getLibrarySources().stream()
+                .map(loadedQll -> loadedQll.sourceResolver())
+                .filter(LocalLibrarySourceResolver.class::isInstance)
+                .map(LocalLibrarySourceResolver.class::cast)
+                .findFirst();
+    }
+
+    private void registerTree(WatchService watchService, Path root) throws IOException {
+        try (var walk = Files.walk(root)) {
+            for (var directory : walk.filter(Files::isDirectory).toList()) {
+                registerDirectory(watchService, directory);
+            }
+        }
+    }
+
+    private void registerDirectory(WatchService watchService, Path directory) throws IOException {
+        var watchKey = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+        watchedDirectories.put(watchKey, directory);
+    }
+}
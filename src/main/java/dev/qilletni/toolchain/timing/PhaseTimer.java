@@ -0,0 +1,139 @@
+package dev.qilletni.toolchain.timing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Records the wall and CPU time of named phases of a command, such as loading a single package or running a program.
+ * Phases may be timed from any thread, and may overlap. A {@link #disabled()} timer records nothing, so callers can
+ * time phases unconditionally.
+ */
+public class PhaseTimer {
+
+    private static final PhaseTimer DISABLED = new PhaseTimer(false);
+
+    private final boolean enabled;
+    private final long createdNanos = System.nanoTime();
+    private final List<PhaseRecord> records = new ArrayList<>();
+    private final ThreadMXBean threadMXBean;
+
+    private PhaseTimer(boolean enabled) {
+        this.enabled = enabled;
+        this.threadMXBean = enabled ? ManagementFactory.getThreadMXBean() : null;
+    }
+
+    /**
+     * @return A new timer, which records phases from now on
+     */
+    public static PhaseTimer create() {
+        return new PhaseTimer(true);
+    }
+
+    /**
+     * @return A timer which records nothing
+     */
+    public static PhaseTimer disabled() {
+        return DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing a phase on the current thread. The phase ends when the returned {@link Phase} is closed, which
+     * must happen on the same thread for its CPU time to be accurate.
+     *
+     * @param name The name of the phase, such as <code>validate</code> or <code>loadQll foo-1.0.0.qll</code>
+     * @return The started phase
+     */
+    public Phase start(String name) {
+        if (!enabled) {
+            return Phase.NOOP;
+        }
+
+        return new Phase(this, name, System.nanoTime(), currentThreadCpuTime());
+    }
+
+    /**
+     * @return Every recorded phase, slowest first
+     */
+    public List<PhaseRecord> getRecords() {
+        synchronized (records) {
+            return records.stream()
+                    .sorted(Comparator.comparingLong(PhaseRecord::wallNanos).reversed())
+                    .toList();
+        }
+    }
+
+    /**
+     * @return The wall time since this timer was created, in nanoseconds
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - createdNanos;
+    }
+
+    private void record(PhaseRecord phaseRecord) {
+        synchronized (records) {
+            records.add(phaseRecord);
+        }
+    }
+
+    /**
+     * Gets the CPU time of the current thread, or -1 if it can't be measured, which is always the case for virtual
+     * threads.
+     */
+    private long currentThreadCpuTime() {
+        if (!threadMXBean.isCurrentThreadCpuTimeSupported() || Thread.currentThread().isVirtual()) {
+            return -1;
+        }
+
+        return threadMXBean.getCurrentThreadCpuTime();
+    }
+
+    /**
+     * A phase being timed.
+     */
+    public static final class Phase implements AutoCloseable {
+
+        private static final Phase NOOP = new Phase(null, null, 0, 0);
+
+        private final PhaseTimer phaseTimer;
+        private final String name;
+        private final long startNanos;
+        private final long startCpuNanos;
+
+        private Phase(PhaseTimer phaseTimer, String name, long startNanos, long startCpuNanos) {
+            this.phaseTimer = phaseTimer;
+            this.name = name;
+            this.startNanos = startNanos;
+            this.startCpuNanos = startCpuNanos;
+        }
+
+        @Override
+        public void close() {
+            if (phaseTimer == null) {
+                return;
+            }
+
+            var wallNanos = System.nanoTime() - startNanos;
+            var endCpuNanos = phaseTimer.currentThreadCpuTime();
+            var cpuNanos = startCpuNanos < 0 || endCpuNanos < 0 ? -1 : endCpuNanos - startCpuNanos;
+
+            phaseTimer.record(new PhaseRecord(name, wallNanos, cpuNanos, Thread.currentThread().getName()));
+        }
+    }
+
+    /**
+     * A completed phase.
+     *
+     * @param name      The name of the phase
+     * @param wallNanos The wall time of the phase, in nanoseconds
+     * @param cpuNanos  The CPU time of the phase's thread, in nanoseconds, or -1 if it couldn't be measured
+     * @param thread    The name of the thread the phase ran on
+     */
+    public record PhaseRecord(String name, long wallNanos, long cpuNanos, String thread) {}
+}
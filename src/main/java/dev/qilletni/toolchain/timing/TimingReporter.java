@@ -0,0 +1,78 @@
+package dev.qilletni.toolchain.timing;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import dev.qilletni.toolchain.logging.ProgressDisplay;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * Reports the phases recorded by a {@link PhaseTimer}, either as a table or as a JSON file meant to be diffed between
+ * releases.
+ */
+public class TimingReporter {
+
+    /**
+     * Prints every phase as a table, slowest first.
+     *
+     * @param command    The name of the command that was timed
+     * @param phaseTimer The timer to report
+     */
+    public static void printTable(String command, PhaseTimer phaseTimer) {
+        var records = phaseTimer.getRecords();
+        var nameWidth = Math.max(5, records.stream().mapToInt(phaseRecord -> phaseRecord.name().length()).max().orElse(0));
+
+        var table = new StringBuilder("Timings for %s (total %.1f ms)\n".formatted(command, toMillis(phaseTimer.getElapsedNanos())));
+        table.append(("  %-" + nameWidth + "s  %10s  %10s\n").formatted("Phase", "Wall (ms)", "CPU (ms)"));
+
+        for (var phaseRecord : records) {
+            var cpu = phaseRecord.cpuNanos() < 0 ? "-" : "%.1f".formatted(toMillis(phaseRecord.cpuNanos()));
+            table.append(("  %-" + nameWidth + "s  %10.1f  %10s\n").formatted(phaseRecord.name(), toMillis(phaseRecord.wallNanos()), cpu));
+        }
+
+        ProgressDisplay.info(table.toString().stripTrailing());
+    }
+
+    /**
+     * Writes every phase to a JSON file.
+     *
+     * @param command          The name of the command that was timed
+     * @param toolchainVersion The version of the toolchain
+     * @param phaseTimer       The timer to report
+     * @param outputPath       The file to write
+     */
+    public static void writeJson(String command, String toolchainVersion, PhaseTimer phaseTimer, Path outputPath) throws IOException {
+        var root = new JsonObject();
+        root.addProperty("command", command);
+        root.addProperty("toolchainVersion", toolchainVersion);
+        root.addProperty("timestamp", Instant.now().toString());
+        root.addProperty("totalWallNanos", phaseTimer.getElapsedNanos());
+
+        var phases = new JsonArray();
+        for (var phaseRecord : phaseTimer.getRecords()) {
+            var phase = new JsonObject();
+            phase.addProperty("name", phaseRecord.name());
+            phase.addProperty("wallNanos", phaseRecord.wallNanos());
+            phase.addProperty("cpuNanos", phaseRecord.cpuNanos());
+            phase.addProperty("thread", phaseRecord.thread());
+            phases.add(phase);
+        }
+
+        root.add("phases", phases);
+
+        var parent = outputPath.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Files.writeString(outputPath, new GsonBuilder().setPrettyPrinting().create().toJson(root) + "\n");
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,56 @@
+package dev.qilletni.toolchain.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+public class HashUtil {
+
+    /**
+     * Computes the SHA-256 hash of a file's contents.
+     *
+     * @param file The file to hash
+     * @return The lowercase hex encoded hash
+     */
+    public static String sha256(Path file) throws IOException {
+        var digest = newDigest();
+
+        try (var inputStream = Files.newInputStream(file)) {
+            var buffer = new byte[64 * 1024];
+            int read;
+
+            while ((read = inputStream.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Computes the SHA-256 hash of the given bytes.
+     *
+     * @param data The data to hash
+     * @return The lowercase hex encoded hash
+     */
+    public static String sha256(byte[] data) {
+        return HexFormat.of().formatHex(newDigest().digest(data));
+    }
+
+    /**
+     * Creates a new SHA-256 {@link MessageDigest}, for hashing data incrementally.
+     *
+     * @return The created digest
+     */
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
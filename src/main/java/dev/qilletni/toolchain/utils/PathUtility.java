@@ -36,5 +36,55 @@ public class PathUtility {
 
         return qilletniDir;
     }
-    
+
+    public static Path getStartupCachePath() throws IOException {
+        var userHome = System.getProperty("user.home");
+
+        var qilletniDir = Paths.get(userHome, ".qilletni", "startup-cache");
+
+        Files.createDirectories(qilletniDir);
+
+        return qilletniDir;
+    }
+
+    public static Path getNativeCachePath() throws IOException {
+        var userHome = System.getProperty("user.home");
+
+        var qilletniDir = Paths.get(userHome, ".qilletni", "native-cache");
+
+        Files.createDirectories(qilletniDir);
+
+        return qilletniDir;
+    }
+
+    public static Path getCdsPath() throws IOException {
+        var userHome = System.getProperty("user.home");
+
+        var qilletniDir = Paths.get(userHome, ".qilletni", "cds");
+
+        Files.createDirectories(qilletniDir);
+
+        return qilletniDir;
+    }
+
+    public static Path getBuildCachePath() throws IOException {
+        var userHome = System.getProperty("user.home");
+
+        var qilletniDir = Paths.get(userHome, ".qilletni", "build-cache");
+
+        Files.createDirectories(qilletniDir);
+
+        return qilletniDir;
+    }
+
+    public static Path getDaemonSocketPath() throws IOException {
+        var userHome = System.getProperty("user.home");
+
+        var qilletniDir = Paths.get(userHome, ".qilletni");
+
+        Files.createDirectories(qilletniDir);
+
+        return qilletniDir.resolve("daemon.sock");
+    }
+
 }
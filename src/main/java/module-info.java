@@ -8,6 +8,9 @@ module qilletni.toolchain {
     requires org.yaml.snakeyaml;
     requires info.picocli;
     requires com.google.gson;
+    requires java.management;
+    requires jdk.management;
+    requires jdk.jfr;
     requires org.apache.logging.log4j.core;
     requires qilletni.toolchain.logging;
     requires qilletni.pkgutil;
@@ -0,0 +1,91 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.config.QilletniInfoParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DependencyGraphTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void validGraphHasNoProblems() throws IOException {
+        var graph = DependencyGraph.build(List.of(
+                library("app", "1.0.0", Map.of("core", "1.0.0")),
+                library("core", "1.0.0", Map.of("util", "1.0.0")),
+                library("util", "1.0.0", Map.of())));
+
+        assertTrue(graph.isValid());
+        assertTrue(graph.getProblems().isEmpty());
+        assertEquals(List.of(new DependencyGraph.LibraryKey("", "core"), new DependencyGraph.LibraryKey("", "util")),
+                List.copyOf(graph.getTransitiveDependencies(new DependencyGraph.LibraryKey("", "app"))));
+    }
+
+    @Test
+    void reportsEveryProblemInOnePass() throws IOException {
+        var graph = DependencyGraph.build(List.of(
+                library("app", "1.0.0", Map.of("core", "2.0.0", "missing", "1.0.0")),
+                library("core", "1.0.0", Map.of()),
+                library("core", "1.1.0", Map.of())));
+
+        assertFalse(graph.isValid());
+        assertEquals(List.of(DependencyGraph.ProblemKind.MISSING, DependencyGraph.ProblemKind.UNMET_VERSION, DependencyGraph.ProblemKind.DUPLICATE),
+                graph.getProblems().stream().map(DependencyGraph.Problem::kind).sorted().toList());
+    }
+
+    @Test
+    void cyclesAreWarnings() throws IOException {
+        var graph = DependencyGraph.build(List.of(
+                library("a", "1.0.0", Map.of("b", "1.0.0")),
+                library("b", "1.0.0", Map.of("a", "1.0.0"))));
+
+        assertTrue(graph.isValid());
+        assertEquals(1, graph.getProblems().size());
+        assertEquals(DependencyGraph.ProblemKind.CYCLE, graph.getProblems().getFirst().kind());
+    }
+
+    @Test
+    void cyclesAreListedAfterTheCyclesTheyDependOn() throws IOException {
+        var graph = DependencyGraph.build(List.of(
+                library("app", "1.0.0", Map.of("a", "1.0.0")),
+                library("a", "1.0.0", Map.of("b", "1.0.0")),
+                library("b", "1.0.0", Map.of("a", "1.0.0", "c", "1.0.0")),
+                library("c", "1.0.0", Map.of("d", "1.0.0")),
+                library("d", "1.0.0", Map.of("c", "1.0.0"))));
+
+        assertEquals(List.of(List.of("c", "d"), List.of("a", "b")), graph.getCycles().stream()
+                .map(cycle -> cycle.stream().map(DependencyGraph.LibraryKey::name).sorted().toList())
+                .toList());
+    }
+
+    private QllInfo library(String name, String version, Map<String, String> dependencies) throws IOException {
+        var sourceDirectory = Files.createTempDirectory(tempDir, name);
+
+        var info = new StringBuilder("""
+                name: %s
+                version: %s
+                author: test
+                """.formatted(name, version));
+
+        if (!dependencies.isEmpty()) {
+            info.append("dependencies:\n");
+            dependencies.forEach((dependencyName, dependencyVersion) -> info.append("  %s: \"%s\"\n".formatted(dependencyName, dependencyVersion)));
+        }
+
+        Files.writeString(sourceDirectory.resolve("qilletni_info.yml"), info);
+
+        return new QllInfo(QilletniInfoParser.readQilletniInfo(sourceDirectory));
+    }
+}
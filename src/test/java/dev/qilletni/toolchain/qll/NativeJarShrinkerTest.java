@@ -0,0 +1,123 @@
+package dev.qilletni.toolchain.qll;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeJarShrinkerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void keepsOnlyReachableClassesAndResources() throws IOException {
+        var jar = compileJar(Map.of(
+                "lib/Functions.java", "package lib; public class Functions extends Base { public static Helper helper(java.util.List<Generic> list) { return new Helper(); } }",
+                "lib/Base.java", "package lib; public class Base implements Marker {}",
+                "lib/Marker.java", "package lib; public interface Marker {}",
+                "lib/Helper.java", "package lib; public class Helper { Object plugin() throws Exception { return Class.forName(\"lib.Plugin\"); } }",
+                "lib/Generic.java", "package lib; public class Generic {}",
+                "lib/Plugin.java", "package lib; public class Plugin {}",
+                "lib/Unused.java", "package lib; public class Unused { Helper helper; }",
+                "lib/Service.java", "package lib; public interface Service {}",
+                "lib/ServiceImpl.java", "package lib; public class ServiceImpl implements Service {}"
+        ), Map.of(
+                "META-INF/services/lib.Service", "lib.ServiceImpl\n",
+                "config.properties", "a=b\n"
+        ));
+
+        var shrunkJar = tempDir.resolve("shrunk.jar");
+        var shrinkResult = new NativeJarShrinker(List.of()).shrink(jar, List.of("lib.Functions"), shrunkJar);
+
+        assertEquals(Set.of("lib/Functions.class", "lib/Base.class", "lib/Marker.class", "lib/Helper.class", "lib/Generic.class", "lib/Plugin.class", "config.properties"), entryNames(shrunkJar));
+        assertEquals(6, shrinkResult.keptClasses());
+        assertEquals(3, shrinkResult.removedClasses());
+        assertTrue(shrinkResult.removedBytes() > 0);
+    }
+
+    @Test
+    void keepRulesAndServicesKeepUnreferencedClasses() throws IOException {
+        var jar = compileJar(Map.of(
+                "lib/Functions.java", "package lib; public class Functions { Service service; }",
+                "lib/Service.java", "package lib; public interface Service {}",
+                "lib/ServiceImpl.java", "package lib; public class ServiceImpl implements Service { Dependency dependency; }",
+                "lib/Dependency.java", "package lib; public class Dependency {}",
+                "lib/reflect/Loaded.java", "package lib.reflect; public class Loaded {}",
+                "lib/reflect/nested/Deep.java", "package lib.reflect.nested; public class Deep {}",
+                "other/Unused.java", "package other; public class Unused {}"
+        ), Map.of("META-INF/services/lib.Service", "# implementations\nlib.ServiceImpl\n"));
+
+        var shrunkJar = tempDir.resolve("shrunk.jar");
+        new NativeJarShrinker(List.of("lib.reflect.**")).shrink(jar, List.of("lib.Functions"), shrunkJar);
+
+        var entries = entryNames(shrunkJar);
+        assertTrue(entries.containsAll(Set.of("lib/Functions.class", "lib/Service.class", "lib/ServiceImpl.class", "lib/Dependency.class", "META-INF/services/lib.Service")));
+        assertTrue(entries.containsAll(Set.of("lib/reflect/Loaded.class", "lib/reflect/nested/Deep.class")));
+        assertFalse(entries.contains("other/Unused.class"));
+
+        new NativeJarShrinker(List.of("lib.reflect.*")).shrink(jar, List.of("lib.Functions"), shrunkJar);
+
+        entries = entryNames(shrunkJar);
+        assertTrue(entries.contains("lib/reflect/Loaded.class"));
+        assertFalse(entries.contains("lib/reflect/nested/Deep.class"));
+    }
+
+    private Path compileJar(Map<String, String> sources, Map<String, String> resources) throws IOException {
+        var sourceDir = tempDir.resolve("src");
+        var classesDir = tempDir.resolve("classes");
+        Files.createDirectories(classesDir);
+
+        for (var source : sources.entrySet()) {
+            var sourceFile = sourceDir.resolve(source.getKey());
+            Files.createDirectories(sourceFile.getParent());
+            Files.writeString(sourceFile, source.getValue());
+        }
+
+        var arguments = new ArrayList<>(List.of("-d", classesDir.toString()));
+        sources.keySet().forEach(source -> arguments.add(sourceDir.resolve(source).toString()));
+        assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, arguments.toArray(String[]::new)));
+
+        var jar = tempDir.resolve("input.jar");
+
+        try (var zos = new ZipOutputStream(Files.newOutputStream(jar));
+             var classFiles = Files.walk(classesDir)) {
+            for (var classFile : classFiles.filter(Files::isRegularFile).sorted().toList()) {
+                zos.putNextEntry(new ZipEntry(classesDir.relativize(classFile).toString().replace('\\', '/')));
+                zos.write(Files.readAllBytes(classFile));
+                zos.closeEntry();
+            }
+
+            for (var resource : resources.entrySet()) {
+                zos.putNextEntry(new ZipEntry(resource.getKey()));
+                zos.write(resource.getValue().getBytes(StandardCharsets.UTF_8));
+                zos.closeEntry();
+            }
+        }
+
+        return jar;
+    }
+
+    private static Set<String> entryNames(Path jar) throws IOException {
+        try (var archive = QllArchive.open(jar)) {
+            return archive.entries().stream()
+                    .map(QllArchive.Entry::name)
+                    .collect(Collectors.toSet());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package dev.qilletni.toolchain.qll;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QllArchiveTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void readsStoredAndDeflatedEntries() throws IOException {
+        var qllPath = tempDir.resolve("test.qll");
+        var classBytes = "not really a class".getBytes(StandardCharsets.UTF_8);
+
+        try (var zos = new ZipOutputStream(Files.newOutputStream(qllPath))) {
+            writeEntry(zos, "qll.info", "{}".getBytes(StandardCharsets.UTF_8));
+            writeEntry(zos, "qilletni-src/main.ql", "print(\"hi\")\n".repeat(50).getBytes(StandardCharsets.UTF_8));
+
+            var storedEntry = new ZipEntry("native/Foo.class");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(classBytes.length);
+            var crc = new CRC32();
+            crc.update(classBytes);
+            storedEntry.setCrc(crc.getValue());
+            zos.putNextEntry(storedEntry);
+            zos.write(classBytes);
+            zos.closeEntry();
+
+            zos.setComment("trailing comment");
+        }
+
+        var qllArchive = QllArchive.open(qllPath);
+
+        assertEquals(3, qllArchive.entries().size());
+        assertEquals("{}", new String(qllArchive.readAllBytes(qllArchive.getEntry("qll.info").orElseThrow()), StandardCharsets.UTF_8));
+
+        var source = qllArchive.getEntry("qilletni-src/main.ql").orElseThrow();
+        assertEquals(QllArchive.METHOD_DEFLATED, source.method());
+        assertEquals("print(\"hi\")\n".repeat(50), new String(qllArchive.readAllBytes(source), StandardCharsets.UTF_8));
+
+        var nativeClass = qllArchive.getEntry("native/Foo.class").orElseThrow();
+        assertEquals(QllArchive.METHOD_STORED, nativeClass.method());
+        assertArrayEquals(classBytes, qllArchive.readAllBytes(nativeClass));
+    }
+
+    @Test
+    void normalizesWindowsSeparatorsAndListsDirectories() throws IOException {
+        var qllPath = tempDir.resolve("windows.qll");
+
+        try (var zos = new ZipOutputStream(Files.newOutputStream(qllPath))) {
+            writeEntry(zos, "qll.info", "{}".getBytes(StandardCharsets.UTF_8));
+            writeEntry(zos, "qilletni-src\\a.ql", "a".getBytes(StandardCharsets.UTF_8));
+            writeEntry(zos, "qilletni-src\\nested\\b.ql", "b".getBytes(StandardCharsets.UTF_8));
+            writeEntry(zos, "native\\Foo.class", "c".getBytes(StandardCharsets.UTF_8));
+        }
+
+        var qllArchive = QllArchive.open(qllPath);
+        var sources = qllArchive.entriesUnder(QllArchive.SOURCE_DIRECTORY).stream().map(QllArchive.Entry::name).toList();
+
+        assertEquals(List.of("qilletni-src/a.ql", "qilletni-src/nested/b.ql"), sources);
+        assertTrue(qllArchive.getEntry("native/Foo.class").isPresent());
+    }
+
+    @Test
+    void rejectsFilesThatAreNotArchives() throws IOException {
+        var notAnArchive = Files.writeString(tempDir.resolve("broken.qll"), "definitely not a zip file");
+
+        assertThrows(ZipException.class, () -> QllArchive.open(notAnArchive));
+    }
+
+    private static void writeEntry(ZipOutputStream zos, String name, byte[] contents) throws IOException {
+        zos.putNextEntry(new ZipEntry(name));
+        zos.write(contents);
+        zos.closeEntry();
+    }
+}
@@ -0,0 +1,230 @@
+package dev.qilletni.toolchain.qll;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QllArchiveWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void roundTripsCompressedStoredAndRawEntries() throws IOException {
+        var text = "print(\"hi\")\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+        var random = new byte[2048];
+        new Random(1).nextBytes(random);
+        var classBytes = "not really a class".getBytes(StandardCharsets.UTF_8);
+
+        var jarPath = tempDir.resolve("native.jar");
+        try (var zos = new ZipOutputStream(Files.newOutputStream(jarPath))) {
+            zos.putNextEntry(new ZipEntry("lib/Foo.class"));
+            zos.write(text);
+            zos.closeEntry();
+        }
+
+        var jar = QllArchive.open(jarPath);
+        var qllPath = tempDir.resolve("test.qll");
+
+        try (var writer = new QllArchiveWriter(qllPath)) {
+            writer.addEntry("qilletni-src/main.ql", text);
+            writer.addEntry("native/random.bin", random);
+            writer.addAlignedEntry("native/Bar.class", crc(classBytes), ByteBuffer.wrap(classBytes));
+            writer.addRawEntry("native/lib/Foo.class", jar, jar.getEntry("lib/Foo.class").orElseThrow());
+        }
+
+        var qllArchive = QllArchive.open(qllPath);
+        assertEquals(QllArchive.METHOD_DEFLATED, qllArchive.getEntry("qilletni-src/main.ql").orElseThrow().method());
+        assertEquals(QllArchive.METHOD_STORED, qllArchive.getEntry("native/random.bin").orElseThrow().method());
+        assertEquals(QllArchive.METHOD_STORED, qllArchive.getEntry("native/Bar.class").orElseThrow().method());
+        assertEquals(QllArchive.METHOD_DEFLATED, qllArchive.getEntry("native/lib/Foo.class").orElseThrow().method());
+
+        assertArrayEquals(text, qllArchive.readAllBytes(qllArchive.getEntry("qilletni-src/main.ql").orElseThrow()));
+        assertArrayEquals(random, qllArchive.readAllBytes(qllArchive.getEntry("native/random.bin").orElseThrow()));
+        assertArrayEquals(classBytes, qllArchive.readAllBytes(qllArchive.getEntry("native/Bar.class").orElseThrow()));
+        assertArrayEquals(text, qllArchive.readAllBytes(qllArchive.getEntry("native/lib/Foo.class").orElseThrow()));
+
+        try (var zipFile = new ZipFile(qllPath.toFile())) {
+            assertEquals(4, zipFile.size());
+            assertArrayEquals(text, readZipEntry(zipFile, "qilletni-src/main.ql"));
+            assertArrayEquals(random, readZipEntry(zipFile, "native/random.bin"));
+            assertArrayEquals(classBytes, readZipEntry(zipFile, "native/Bar.class"));
+            assertArrayEquals(text, readZipEntry(zipFile, "native/lib/Foo.class"));
+        }
+    }
+
+    @Test
+    void writesZip64EndRecordPastEntryLimit() throws IOException {
+        var entryCount = 0xFFFF + 10;
+        var contents = "x".getBytes(StandardCharsets.UTF_8);
+        var qllPath = tempDir.resolve("many.qll");
+
+        try (var writer = new QllArchiveWriter(qllPath)) {
+            for (int i = 0; i < entryCount; i++) {
+                writer.addCompressedEntry("native/%d.txt".formatted(i), QllArchive.METHOD_STORED, crc(contents), contents.length, ByteBuffer.wrap(contents));
+            }
+        }
+
+        var bytes = ByteBuffer.wrap(Files.readAllBytes(qllPath)).order(ByteOrder.LITTLE_ENDIAN);
+        var endOffset = bytes.limit() - 22;
+        var locatorOffset = endOffset - 20;
+
+        assertEquals(0x06054b50, bytes.getInt(endOffset));
+        assertEquals(0xFFFF, Short.toUnsignedInt(bytes.getShort(endOffset + 10)));
+        assertEquals(0x07064b50, bytes.getInt(locatorOffset));
+
+        var zip64EndOffset = (int) bytes.getLong(locatorOffset + 8);
+        assertEquals(0x06064b50, bytes.getInt(zip64EndOffset));
+        assertEquals(entryCount, bytes.getLong(zip64EndOffset + 32));
+
+        var qllArchive = QllArchive.open(qllPath);
+        assertEquals(entryCount, qllArchive.entries().size());
+        assertArrayEquals(contents, qllArchive.readAllBytes(qllArchive.getEntry("native/%d.txt".formatted(entryCount - 1)).orElseThrow()));
+
+        try (var zipFile = new ZipFile(qllPath.toFile())) {
+            assertEquals(entryCount, zipFile.size());
+            assertArrayEquals(contents, readZipEntry(zipFile, "native/%d.txt".formatted(entryCount - 1)));
+        }
+    }
+
+    @Test
+    void rejectsDuplicateNames() throws IOException {
+        try (var writer = new QllArchiveWriter(tempDir.resolve("duplicate.qll"))) {
+            writer.addEntry("native/Foo.class", new byte[]{1});
+
+            assertThrows(ZipException.class, () -> writer.addEntry("native/Foo.class", new byte[]{2}));
+        }
+    }
+
+    @Test
+    void copiesOneOfDuplicateJarEntries() throws IOException {
+        var jarPath = tempDir.resolve("shadow.jar");
+
+        try (var zos = new ZipOutputStream(Files.newOutputStream(jarPath))) {
+            zos.putNextEntry(new ZipEntry("lib/A.class"));
+            zos.write("first".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("lib/B.class"));
+            zos.write("second".getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+
+        // ZipOutputStream refuses duplicate names, so the second entry is renamed afterwards
+        var jarContents = new String(Files.readAllBytes(jarPath), StandardCharsets.ISO_8859_1).replace("lib/B.class", "lib/A.class");
+        Files.write(jarPath, jarContents.getBytes(StandardCharsets.ISO_8859_1));
+
+        var jar = QllArchive.open(jarPath);
+        assertEquals(1, jar.entries().size());
+
+        var qllPath = tempDir.resolve("shadow.qll");
+        try (var writer = new QllArchiveWriter(qllPath)) {
+            for (var entry : jar.entries()) {
+                writer.addRawEntry(QllArchive.NATIVE_DIRECTORY + entry.name(), jar, entry);
+            }
+        }
+
+        try (var zipFile = new ZipFile(qllPath.toFile()); var originalJar = new ZipFile(jarPath.toFile())) {
+            assertArrayEquals(readZipEntry(originalJar, "lib/A.class"), readZipEntry(zipFile, "native/lib/A.class"));
+        }
+    }
+
+    @Test
+    void alignsPageSizedEntriesToPageBoundaries() throws IOException {
+        var qllPath = tempDir.resolve("aligned.qll");
+        var sizes = new int[]{QllArchiveWriter.PAGE_SIZE, 3 * QllArchiveWriter.PAGE_SIZE + 5, 10_000};
+
+        try (var writer = new QllArchiveWriter(qllPath)) {
+            writer.addEntry("qll.info", "{}".getBytes(StandardCharsets.UTF_8));
+
+            for (int i = 0; i < sizes.length; i++) {
+                var contents = new byte[sizes[i]];
+                new Random(i).nextBytes(contents);
+                writer.addAlignedEntry("native/lib/Page%d.class".formatted(i), crc(contents), ByteBuffer.wrap(contents));
+            }
+        }
+
+        var qllArchive = QllArchive.open(qllPath);
+        var bytes = ByteBuffer.wrap(Files.readAllBytes(qllPath)).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = 0; i < sizes.length; i++) {
+            var entry = qllArchive.getEntry("native/lib/Page%d.class".formatted(i)).orElseThrow();
+            assertEquals(0, getDataOffset(bytes, entry) % QllArchiveWriter.PAGE_SIZE);
+        }
+
+        try (var zipFile = new ZipFile(qllPath.toFile())) {
+            assertEquals(sizes.length + 1, zipFile.size());
+            assertEquals(sizes[1], readZipEntry(zipFile, "native/lib/Page1.class").length);
+        }
+    }
+
+    @Test
+    void smallAlignedEntriesNeverStraddlePages() throws IOException {
+        var qllPath = tempDir.resolve("small.qll");
+        var random = new Random(2);
+        var contents = new byte[200][];
+
+        try (var writer = new QllArchiveWriter(qllPath)) {
+            for (int i = 0; i < contents.length; i++) {
+                contents[i] = new byte[1 + random.nextInt(QllArchiveWriter.PAGE_SIZE - 1)];
+                random.nextBytes(contents[i]);
+                writer.addAlignedEntry("native/lib/Small%d.class".formatted(i), crc(contents[i]), ByteBuffer.wrap(contents[i]));
+            }
+        }
+
+        var qllArchive = QllArchive.open(qllPath);
+        var bytes = ByteBuffer.wrap(Files.readAllBytes(qllPath)).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = 0; i < contents.length; i++) {
+            var entry = qllArchive.getEntry("native/lib/Small%d.class".formatted(i)).orElseThrow();
+            var dataOffset = getDataOffset(bytes, entry);
+
+            assertEquals(dataOffset / QllArchiveWriter.PAGE_SIZE, (dataOffset + entry.size() - 1) / QllArchiveWriter.PAGE_SIZE);
+            assertArrayEquals(contents[i], qllArchive.readAllBytes(entry));
+        }
+    }
+
+    @Test
+    void paddingLeavesRoomForTheExtraFieldHeader() {
+        assertEquals(0, QllArchiveWriter.getAlignmentPadding(2 * QllArchiveWriter.PAGE_SIZE, QllArchiveWriter.PAGE_SIZE * 2));
+        assertEquals(0, QllArchiveWriter.getAlignmentPadding(100, 200));
+        assertEquals(6, QllArchiveWriter.getAlignmentPadding(QllArchiveWriter.PAGE_SIZE - 6, 200));
+        assertEquals(3 + QllArchiveWriter.PAGE_SIZE, QllArchiveWriter.getAlignmentPadding(QllArchiveWriter.PAGE_SIZE - 3, 200));
+        assertEquals(QllArchiveWriter.PAGE_SIZE - 1, QllArchiveWriter.getAlignmentPadding(QllArchiveWriter.PAGE_SIZE + 1, QllArchiveWriter.PAGE_SIZE));
+    }
+
+    /**
+     * Gets the offset of an entry's data from its local header, which {@link QllArchive.Entry} doesn't expose.
+     */
+    private static long getDataOffset(ByteBuffer bytes, QllArchive.Entry entry) {
+        var headerOffset = (int) entry.localHeaderOffset();
+        return headerOffset + 30 + Short.toUnsignedInt(bytes.getShort(headerOffset + 26)) + Short.toUnsignedInt(bytes.getShort(headerOffset + 28));
+    }
+
+    private static long crc(byte[] contents) {
+        var crc = new CRC32();
+        crc.update(contents);
+        return crc.getValue();
+    }
+
+    private static byte[] readZipEntry(ZipFile zipFile, String name) throws IOException {
+        try (var inputStream = zipFile.getInputStream(zipFile.getEntry(name))) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
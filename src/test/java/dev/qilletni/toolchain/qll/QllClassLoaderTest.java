@@ -0,0 +1,136 @@
+package dev.qilletni.toolchain.qll;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QllClassLoaderTest {
+
+    private static final String GREETER_SOURCE = "package lib; public class Greeter { public static String greet() { return \"%s\"; } }";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void definesClassesFromStoredQll() throws Exception {
+        var qllPath = writeStoredQll("qll", compileGreeter("qll"));
+
+        try (var classLoader = new QllClassLoader(List.of(new QllClassLoader.ArchiveSource(QllArchive.open(qllPath))))) {
+            var greeter = classLoader.loadClass("lib.Greeter");
+
+            assertEquals(classLoader, greeter.getClassLoader());
+            assertEquals("qll", greeter.getMethod("greet").invoke(null));
+            assertEquals(qllPath.toUri().toURL(), greeter.getProtectionDomain().getCodeSource().getLocation());
+            assertEquals("jar:" + qllPath.toUri() + "!/native/lib/greeting.txt", classLoader.getResource("lib/greeting.txt").toString());
+        }
+    }
+
+    @Test
+    void definesPackagesFromManifests() throws Exception {
+        var qllSource = new QllClassLoader.ArchiveSource(QllArchive.open(writeStoredQll("qll", compileGreeter("qll"))));
+        var jarSource = new QllClassLoader.UrlSource(writeJar("jar", compileGreeter("jar")).toUri().toURL());
+
+        try (var classLoader = new QllClassLoader(List.of(qllSource))) {
+            assertEquals("qll", classLoader.loadClass("lib.Greeter").getPackage().getImplementationVersion());
+        }
+
+        try (var classLoader = new QllClassLoader(List.of(jarSource, qllSource))) {
+            assertEquals("jar", classLoader.loadClass("lib.Greeter").getPackage().getImplementationVersion());
+        }
+    }
+
+    @Test
+    void looksUpSourcesInRegistrationOrder() throws Exception {
+        var qllSource = new QllClassLoader.ArchiveSource(QllArchive.open(writeStoredQll("qll", compileGreeter("qll"))));
+        var jarSource = new QllClassLoader.UrlSource(writeJar("jar", compileGreeter("jar")).toUri().toURL());
+
+        try (var classLoader = new QllClassLoader(List.of(jarSource, qllSource))) {
+            assertEquals("jar", classLoader.loadClass("lib.Greeter").getMethod("greet").invoke(null));
+            assertEquals("jar", readResource(classLoader));
+        }
+
+        try (var classLoader = new QllClassLoader(List.of(qllSource, jarSource))) {
+            assertEquals("qll", classLoader.loadClass("lib.Greeter").getMethod("greet").invoke(null));
+            assertEquals("qll", readResource(classLoader));
+            assertEquals(2, Collections.list(classLoader.getResources("lib/greeting.txt")).size());
+        }
+    }
+
+    private byte[] compileGreeter(String greeting) throws IOException {
+        var sourceFile = tempDir.resolve(greeting).resolve("src/lib/Greeter.java");
+        var classesDir = tempDir.resolve(greeting).resolve("classes");
+        Files.createDirectories(sourceFile.getParent());
+        Files.createDirectories(classesDir);
+        Files.writeString(sourceFile, GREETER_SOURCE.formatted(greeting));
+
+        assertEquals(0, ToolProvider.getSystemJavaCompiler().run(null, null, null, "-d", classesDir.toString(), sourceFile.toString()));
+
+        return Files.readAllBytes(classesDir.resolve("lib/Greeter.class"));
+    }
+
+    private Path writeStoredQll(String greeting, byte[] classBytes) throws IOException {
+        var qllPath = tempDir.resolve(greeting + ".qll");
+
+        try (var writer = new QllArchiveWriter(qllPath)) {
+            writer.addEntry("qll.info", "{}".getBytes(StandardCharsets.UTF_8));
+
+            var manifest = manifest(greeting);
+            writer.addAlignedEntry("native/META-INF/MANIFEST.MF", crc(manifest), ByteBuffer.wrap(manifest));
+            writer.addAlignedEntry("native/lib/Greeter.class", crc(classBytes), ByteBuffer.wrap(classBytes));
+
+            var resource = greeting.getBytes(StandardCharsets.UTF_8);
+            writer.addAlignedEntry("native/lib/greeting.txt", crc(resource), ByteBuffer.wrap(resource));
+        }
+
+        assertTrue(QllArchive.open(qllPath).isStoredUnder(QllArchive.NATIVE_DIRECTORY));
+        return qllPath;
+    }
+
+    private Path writeJar(String greeting, byte[] classBytes) throws IOException {
+        var jarPath = tempDir.resolve(greeting + ".jar");
+
+        try (var zos = new ZipOutputStream(Files.newOutputStream(jarPath))) {
+            zos.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            zos.write(manifest(greeting));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("lib/Greeter.class"));
+            zos.write(classBytes);
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("lib/greeting.txt"));
+            zos.write(greeting.getBytes(StandardCharsets.UTF_8));
+            zos.closeEntry();
+        }
+
+        return jarPath;
+    }
+
+    private static byte[] manifest(String version) {
+        return "Manifest-Version: 1.0\nImplementation-Version: %s\n\n".formatted(version).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readResource(ClassLoader classLoader) throws IOException {
+        try (var inputStream = classLoader.getResourceAsStream("lib/greeting.txt")) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long crc(byte[] contents) {
+        var crc = new CRC32();
+        crc.update(contents);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,96 @@
+package dev.qilletni.toolchain.qll;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.config.QilletniInfoParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class QllPackagerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void packagesTheSameBytesWithAnyNumberOfThreads() throws IOException {
+        var random = new Random(1);
+        var sourcePath = writeSources(random);
+        var nativeJarPath = writeNativeJar(random);
+        var qllInfo = new QllInfo(QilletniInfoParser.readQilletniInfo(sourcePath));
+
+        for (var layout : QllPackager.Layout.values()) {
+            var singleThreaded = tempDir.resolve("single-%s.qll".formatted(layout));
+            var multiThreaded = tempDir.resolve("multi-%s.qll".formatted(layout));
+
+            new QllPackager(QllPackager.CompressionLevel.NORMAL, 1, layout).packageLibrary(qllInfo, sourcePath, nativeJarPath, singleThreaded);
+            new QllPackager(QllPackager.CompressionLevel.NORMAL, 8, layout).packageLibrary(qllInfo, sourcePath, nativeJarPath, multiThreaded);
+
+            assertArrayEquals(Files.readAllBytes(singleThreaded), Files.readAllBytes(multiThreaded), layout + " layout");
+        }
+    }
+
+    /**
+     * Writes more sources than the worker threads have room for at once, some of them incompressible.
+     */
+    private Path writeSources(Random random) throws IOException {
+        var sourcePath = tempDir.resolve("qilletni-src");
+        Files.createDirectories(sourcePath);
+
+        Files.writeString(sourcePath.resolve("qilletni_info.yml"), """
+                name: test
+                version: 1.0.0
+                author: test
+                """);
+
+        for (int i = 0; i < 100; i++) {
+            var sourceFile = sourcePath.resolve("pkg%d/file%d.ql".formatted(i % 7, i));
+            Files.createDirectories(sourceFile.getParent());
+
+            if (i % 10 == 0) {
+                var contents = new byte[random.nextInt(8192)];
+                random.nextBytes(contents);
+                Files.write(sourceFile, contents);
+            } else {
+                Files.writeString(sourceFile, "print(\"file %d\")\n".formatted(i).repeat(1 + random.nextInt(200)));
+            }
+        }
+
+        return sourcePath;
+    }
+
+    private Path writeNativeJar(Random random) throws IOException {
+        var jarPath = tempDir.resolve("native.jar");
+
+        try (var zos = new ZipOutputStream(Files.newOutputStream(jarPath))) {
+            for (int i = 0; i < 20; i++) {
+                var contents = "class %d\n".formatted(i).repeat(1 + random.nextInt(100)).getBytes(StandardCharsets.UTF_8);
+                var entry = new ZipEntry("lib/Class%d.class".formatted(i));
+
+                if (i % 2 == 0) {
+                    var crc = new CRC32();
+                    crc.update(contents);
+
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(contents.length);
+                    entry.setCrc(crc.getValue());
+                }
+
+                zos.putNextEntry(entry);
+                zos.write(contents);
+                zos.closeEntry();
+            }
+        }
+
+        return jarPath;
+    }
+}
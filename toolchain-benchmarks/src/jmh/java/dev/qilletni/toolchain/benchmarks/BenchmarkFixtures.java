@@ -0,0 +1,224 @@
+package dev.qilletni.toolchain.benchmarks;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.config.QilletniInfoParser;
+import dev.qilletni.toolchain.qll.QllInfoGenerator;
+import dev.qilletni.toolchain.qll.QllJarExtractor;
+import dev.qilletni.toolchain.qll.QllPackager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Generates synthetic libraries, native jars and .qll files for benchmarks. Contents are generated from a fixed seed,
+ * so every run benchmarks identical fixtures.
+ */
+public final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {}
+
+    /**
+     * The size of a generated library.
+     *
+     * @param sourceFiles      The number of .ql files
+     * @param linesPerFile     The number of lines in each .ql file
+     * @param nativeClasses    The number of entries in the native jar
+     * @param nativeClassBytes The size of each native jar entry
+     */
+    public record LibrarySize(int sourceFiles, int linesPerFile, int nativeClasses, int nativeClassBytes) {
+        public static final LibrarySize SMALL = new LibrarySize(5, 20, 10, 2_048);
+        public static final LibrarySize LARGE = new LibrarySize(200, 200, 500, 8_192);
+
+        public static LibrarySize named(String name) {
+            return switch (name) {
+                case "small" -> SMALL;
+                case "large" -> LARGE;
+                default -> throw new IllegalArgumentException("Unknown library size " + name);
+            };
+        }
+    }
+
+    /**
+     * Writes the project layout of a library, i.e. a <code>qilletni-src</code> directory with a
+     * <code>qilletni_info.yml</code> and .ql sources in nested packages.
+     *
+     * @param projectRoot  The directory to write the project to
+     * @param name         The name of the library
+     * @param size         The size of the library
+     * @param dependencies The library's dependencies, from name to version constraint
+     * @return The project root
+     */
+    public static Path writeLibraryProject(Path projectRoot, String name, LibrarySize size, Map<String, String> dependencies) throws IOException {
+        var sourceDirectory = projectRoot.resolve("qilletni-src");
+        Files.createDirectories(sourceDirectory);
+
+        writeQilletniInfo(sourceDirectory, name, "1.0.0", dependencies);
+
+        var random = new Random(name.hashCode());
+        for (int i = 0; i < size.sourceFiles(); i++) {
+            var sourceFile = sourceDirectory.resolve("pkg%d/file%d.ql".formatted(i % 10, i));
+            Files.createDirectories(sourceFile.getParent());
+
+            var source = new StringBuilder();
+            for (int line = 0; line < size.linesPerFile(); line++) {
+                source.append("fun f%d_%d(a, b) { return a + b * %d }\n".formatted(i, line, random.nextInt(1000)));
+            }
+
+            Files.writeString(sourceFile, source);
+        }
+
+        return projectRoot;
+    }
+
+    /**
+     * Writes a <code>qilletni_info.yml</code>.
+     *
+     * @param sourceDirectory The <code>qilletni-src</code> directory to write it to
+     * @param name            The name of the library
+     * @param version         The version of the library
+     * @param dependencies    The library's dependencies, from name to version constraint
+     */
+    public static void writeQilletniInfo(Path sourceDirectory, String name, String version, Map<String, String> dependencies) throws IOException {
+        var info = new StringBuilder("""
+                name: %s
+                version: %s
+                author: benchmarks
+                description: Generated benchmark fixture
+                """.formatted(name, version));
+
+        if (!dependencies.isEmpty()) {
+            info.append("dependencies:\n");
+            dependencies.forEach((dependencyName, constraint) -> info.append("  %s: \"%s\"\n".formatted(dependencyName, constraint)));
+        }
+
+        Files.writeString(sourceDirectory.resolve("qilletni_info.yml"), info);
+    }
+
+    /**
+     * Writes a jar of incompressible pseudo-class entries, standing in for a library's shadow jar.
+     *
+     * @param jarPath The jar to write
+     * @param size    The size of the library
+     * @return The jar path
+     */
+    public static Path writeNativeJar(Path jarPath, LibrarySize size) throws IOException {
+        var random = new Random(size.nativeClasses());
+
+        try (var jarOutputStream = new JarOutputStream(Files.newOutputStream(jarPath))) {
+            for (int i = 0; i < size.nativeClasses(); i++) {
+                jarOutputStream.putNextEntry(new JarEntry("dev/qilletni/fixture/pkg%d/Class%d.class".formatted(i % 20, i)));
+
+                var contents = new byte[size.nativeClassBytes()];
+                random.nextBytes(contents);
+                jarOutputStream.write(contents);
+
+                jarOutputStream.closeEntry();
+            }
+        }
+
+        return jarPath;
+    }
+
+    /**
+     * Packages a complete .qll, the same way <code>qilletni build</code> does.
+     *
+     * @param workDirectory The directory to generate the library in
+     * @param name          The name of the library
+     * @param size          The size of the library
+     * @return The path of the packaged .qll
+     */
+    public static Path writeQll(Path workDirectory, String name, LibrarySize size) throws IOException {
+        var projectRoot = writeLibraryProject(workDirectory.resolve(name + "-project"), name, size, Map.of());
+        var sourceDirectory = projectRoot.resolve("qilletni-src");
+        var nativeJar = writeNativeJar(workDirectory.resolve(name + ".jar"), size);
+
+        var qllPath = workDirectory.resolve(name + ".qll");
+        new QllPackager().packageLibrary(new QllInfo(QilletniInfoParser.readQilletniInfo(sourceDirectory)), sourceDirectory, nativeJar, qllPath);
+
+        return qllPath;
+    }
+
+    /**
+     * Stages the contents of a .qll in a directory, without packaging it.
+     *
+     * @param workDirectory The directory to generate the library in
+     * @param name          The name of the library
+     * @param size          The size of the library
+     * @return The staging directory, ready to be packaged
+     */
+    public static Path stageQll(Path workDirectory, String name, LibrarySize size) throws IOException {
+        var projectRoot = writeLibraryProject(workDirectory.resolve(name + "-project"), name, size, Map.of());
+        var sourceDirectory = projectRoot.resolve("qilletni-src");
+
+        var stagingDirectory = workDirectory.resolve(name + "-staging");
+        var stagedSourceDirectory = stagingDirectory.resolve("qilletni-src");
+
+        try (var walk = Files.walk(sourceDirectory)) {
+            for (var source : walk.filter(Files::isRegularFile).toList()) {
+                var destination = stagedSourceDirectory.resolve(sourceDirectory.relativize(source).toString());
+                Files.createDirectories(destination.getParent());
+                Files.copy(source, destination);
+            }
+        }
+
+        QllJarExtractor.copyExtractedJar(writeNativeJar(workDirectory.resolve(name + ".jar"), size), stagingDirectory);
+        QllInfoGenerator.writeQllInfo(new QllInfo(QilletniInfoParser.readQilletniInfo(sourceDirectory)), stagingDirectory);
+
+        return stagingDirectory;
+    }
+
+    /**
+     * Generates libraries which each depend on up to two earlier libraries, the shape of a large lockfile.
+     *
+     * @param workDirectory The directory to write the libraries' info to
+     * @param count         The number of libraries
+     * @return The libraries' info
+     */
+    public static List<QllInfo> generateLibraries(Path workDirectory, int count) throws IOException {
+        var libraries = new ArrayList<QllInfo>(count);
+
+        for (int i = 0; i < count; i++) {
+            var dependencies = new LinkedHashMap<String, String>();
+            if (i > 0) {
+                dependencies.put("lib" + (i - 1), "1.0.0");
+            }
+
+            if (i > 1) {
+                dependencies.put("lib" + (i / 2), "1.0.0");
+            }
+
+            var sourceDirectory = Files.createDirectories(workDirectory.resolve("lib" + i).resolve("qilletni-src"));
+            writeQilletniInfo(sourceDirectory, "lib" + i, "1.0.0", dependencies);
+
+            libraries.add(new QllInfo(QilletniInfoParser.readQilletniInfo(sourceDirectory)));
+        }
+
+        return libraries;
+    }
+
+    /**
+     * Deletes a directory and everything in it, if it exists.
+     *
+     * @param directory The directory to delete
+     */
+    public static void deleteRecursively(Path directory) throws IOException {
+        if (Files.notExists(directory)) {
+            return;
+        }
+
+        try (var walk = Files.walk(directory)) {
+            for (var path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
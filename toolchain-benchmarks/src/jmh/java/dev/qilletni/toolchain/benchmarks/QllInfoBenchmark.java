@@ -0,0 +1,72 @@
+package dev.qilletni.toolchain.benchmarks;
+
+import dev.qilletni.api.lib.qll.QilletniInfoData;
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.config.QilletniInfoParser;
+import dev.qilletni.toolchain.qll.LibraryValidator;
+import dev.qilletni.toolchain.qll.QllInfoGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading and writing library info, and validating the dependencies of many libraries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QllInfoBenchmark {
+
+    @Param({"10", "100", "500"})
+    public int libraryCount;
+
+    private Path workDirectory;
+    private Path sourceDirectory;
+    private QllInfo qllInfo;
+    private List<QllInfo> libraries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDirectory = Files.createTempDirectory("qll-info-benchmark");
+
+        sourceDirectory = Files.createDirectories(workDirectory.resolve("info").resolve("qilletni-src"));
+        BenchmarkFixtures.writeQilletniInfo(sourceDirectory, "fixture", "1.2.3", Map.of("dependency-a", "1.0.0", "dependency-b", "2.0.0"));
+        qllInfo = new QllInfo(QilletniInfoParser.readQilletniInfo(sourceDirectory));
+
+        libraries = BenchmarkFixtures.generateLibraries(workDirectory.resolve("libraries"), libraryCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteRecursively(workDirectory);
+    }
+
+    @Benchmark
+    public QilletniInfoData readQilletniInfo() throws IOException {
+        return QilletniInfoParser.readQilletniInfo(sourceDirectory);
+    }
+
+    @Benchmark
+    public QllInfo qllInfoJsonRoundTrip() {
+        return QllInfoGenerator.fromJson(QllInfoGenerator.toJson(qllInfo));
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return new LibraryValidator(libraries).validate();
+    }
+}
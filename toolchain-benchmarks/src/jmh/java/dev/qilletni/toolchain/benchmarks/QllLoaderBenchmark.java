@@ -0,0 +1,80 @@
+package dev.qilletni.toolchain.benchmarks;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.impl.lib.LibrarySourceFileResolver;
+import dev.qilletni.toolchain.qll.QllLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks loading packaged and local libraries with {@link QllLoader}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QllLoaderBenchmark {
+
+    @Param({"small", "large"})
+    public String size;
+
+    private Path workDirectory;
+    private Path qllPath;
+    private Path localLibraryRoot;
+    private QllLoader qllLoader;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDirectory = Files.createTempDirectory("qll-loader-benchmark");
+
+        var librarySize = BenchmarkFixtures.LibrarySize.named(size);
+        qllPath = BenchmarkFixtures.writeQll(workDirectory, "fixture", librarySize);
+        localLibraryRoot = BenchmarkFixtures.writeLibraryProject(workDirectory.resolve("local"), "local", librarySize, Map.of());
+
+        qllLoader = new QllLoader();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteRecursively(workDirectory);
+    }
+
+    @Benchmark
+    public QllInfo loadQll() throws IOException {
+        return qllLoader.loadQll(new LibrarySourceFileResolver(), qllPath);
+    }
+
+    /**
+     * Loads a .qll and resolves every source in it, as a program importing the whole library would.
+     */
+    @Benchmark
+    public void loadQllAndResolveSources(Blackhole blackhole) throws IOException {
+        var loadedQll = qllLoader.readQll(qllPath);
+        var sourceFiles = BenchmarkFixtures.LibrarySize.named(size).sourceFiles();
+
+        for (int i = 0; i < sourceFiles; i++) {
+            blackhole.consume(loadedQll.sourceResolver().apply("pkg%d/file%d.ql".formatted(i % 10, i)));
+        }
+
+        loadedQll.qllArchive().close();
+    }
+
+    @Benchmark
+    public QllInfo loadLocalLibrary() throws IOException {
+        return qllLoader.loadLocalLibrary(new LibrarySourceFileResolver(), localLibraryRoot);
+    }
+}
@@ -0,0 +1,85 @@
+package dev.qilletni.toolchain.benchmarks;
+
+import dev.qilletni.api.lib.qll.QllInfo;
+import dev.qilletni.toolchain.config.QilletniInfoParser;
+import dev.qilletni.toolchain.qll.QllJarExtractor;
+import dev.qilletni.toolchain.qll.QllPackager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the steps of <code>qilletni build</code> after Gradle has run: packaging a library straight from its
+ * sources and native jar, and for comparison, packaging a staged directory and extracting a jar into one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QllPackagingBenchmark {
+
+    @Param({"small", "large"})
+    public String size;
+
+    private Path workDirectory;
+    private QllInfo qllInfo;
+    private Path sourceDirectory;
+    private Path stagingDirectory;
+    private Path nativeJar;
+    private Path extractionDirectory;
+    private Path qllDestination;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDirectory = Files.createTempDirectory("qll-packaging-benchmark");
+
+        var librarySize = BenchmarkFixtures.LibrarySize.named(size);
+        stagingDirectory = BenchmarkFixtures.stageQll(workDirectory, "fixture", librarySize);
+        sourceDirectory = workDirectory.resolve("fixture-project").resolve("qilletni-src");
+        qllInfo = new QllInfo(QilletniInfoParser.readQilletniInfo(sourceDirectory));
+        nativeJar = BenchmarkFixtures.writeNativeJar(workDirectory.resolve("native-input.jar"), librarySize);
+
+        extractionDirectory = workDirectory.resolve("extracted");
+        qllDestination = workDirectory.resolve("packaged.qll");
+    }
+
+    @Setup(Level.Invocation)
+    public void cleanOutputs() throws IOException {
+        BenchmarkFixtures.deleteRecursively(extractionDirectory);
+        Files.deleteIfExists(qllDestination);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkFixtures.deleteRecursively(workDirectory);
+    }
+
+    @Benchmark
+    public Path packageLibrary() throws IOException {
+        new QllPackager().packageLibrary(qllInfo, sourceDirectory, nativeJar, qllDestination);
+        return qllDestination;
+    }
+
+    @Benchmark
+    public Path packageQll() throws IOException {
+        new QllPackager().packageQll(stagingDirectory, qllDestination);
+        return qllDestination;
+    }
+
+    @Benchmark
+    public Path copyExtractedJar() throws IOException {
+        QllJarExtractor.copyExtractedJar(nativeJar, extractionDirectory);
+        return extractionDirectory;
+    }
+}
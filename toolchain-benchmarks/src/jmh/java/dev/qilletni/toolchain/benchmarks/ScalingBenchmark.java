@@ -0,0 +1,267 @@
+package dev.qilletni.toolchain.benchmarks;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times <code>qilletni run</code>, <code>build --all</code> and <code>doc</code> end to end, each in a fresh JVM,
+ * against generated corpora of increasing size. Results are printed as a table and written as JSON and CSV.
+ * <p>
+ * The marginal cost of each command (its time minus its time at the smallest corpus) is fitted against the corpus size
+ * on a log-log scale. A slope above <code>--max-exponent</code> means the command grows more than linearly, which
+ * fails the benchmark with exit code 1. Only <code>run</code> and <code>build</code> take all N libraries as input;
+ * <code>doc</code> documents a single library, so its exponent only fits noise and is reported without failing.
+ * <p>
+ * Options: <code>--toolchain-jar &lt;jar&gt;</code> (required), <code>--output &lt;dir&gt;</code>,
+ * <code>--sizes 1,10,50,100</code>, <code>--files-per-library 20</code>, <code>--lines-per-file 50</code>,
+ * <code>--native-classes 50</code>, <code>--native-class-bytes 4096</code>, <code>--repetitions 3</code> and
+ * <code>--max-exponent 1.2</code>.
+ */
+public class ScalingBenchmark {
+
+    private static final List<String> COMMANDS = List.of("run", "build", "doc");
+
+    /**
+     * The commands whose input grows with the corpus, and so whose exponent is checked.
+     */
+    private static final List<String> SCALED_COMMANDS = List.of("run", "build");
+
+    public static void main(String[] args) throws Exception {
+        var options = parseOptions(args);
+
+        var toolchainJar = Path.of(require(options, "toolchain-jar"));
+        var outputDirectory = Files.createDirectories(Path.of(options.getOrDefault("output", "build/results/scaling")));
+        var sizes = Arrays.stream(options.getOrDefault("sizes", "1,10,50,100").split(",")).mapToInt(size -> Integer.parseInt(size.trim())).sorted().toArray();
+        var librarySize = new BenchmarkFixtures.LibrarySize(
+                Integer.parseInt(options.getOrDefault("files-per-library", "20")),
+                Integer.parseInt(options.getOrDefault("lines-per-file", "50")),
+                Integer.parseInt(options.getOrDefault("native-classes", "50")),
+                Integer.parseInt(options.getOrDefault("native-class-bytes", "4096")));
+        var repetitions = Integer.parseInt(options.getOrDefault("repetitions", "3"));
+        var maxExponent = Double.parseDouble(options.getOrDefault("max-exponent", "1.2"));
+
+        // command -> median millis per size, in the same order as sizes
+        var results = new LinkedHashMap<String, double[]>();
+        COMMANDS.forEach(command -> results.put(command, new double[sizes.length]));
+
+        var corporaRoot = Files.createTempDirectory("qilletni-scaling");
+
+        try {
+            for (int i = 0; i < sizes.length; i++) {
+                System.out.printf("Generating corpus of %d libraries...%n", sizes[i]);
+                var corpus = ScalingCorpus.generate(corporaRoot.resolve("corpus-" + sizes[i]), sizes[i], librarySize);
+                var runner = new ToolchainRunner(toolchainJar, corpus);
+
+                for (var command : COMMANDS) {
+                    results.get(command)[i] = runner.medianMillis(command, repetitions);
+                    System.out.printf("  %-5s %10.1f ms%n", command, results.get(command)[i]);
+                }
+            }
+        } finally {
+            BenchmarkFixtures.deleteRecursively(corporaRoot);
+        }
+
+        var exponents = new LinkedHashMap<String, Double>();
+        results.forEach((command, millis) -> exponents.put(command, marginalExponent(sizes, millis)));
+
+        printTable(sizes, results, exponents);
+        writeResults(outputDirectory, sizes, librarySize, results, exponents);
+
+        var regressions = exponents.entrySet().stream()
+                .filter(exponent -> SCALED_COMMANDS.contains(exponent.getKey()) && exponent.getValue() > maxExponent)
+                .map(Map.Entry::getKey)
+                .toList();
+
+        if (!regressions.isEmpty()) {
+            System.err.printf("Super-linear scaling (exponent > %.2f) in: %s%n", maxExponent, String.join(", ", regressions));
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Fits <code>log(t(n) - t(n0)) = k * log(n - n0) + c</code> by least squares, where <code>n0</code> is the smallest
+     * size, and returns <code>k</code>. Sizes whose marginal time is not positive (i.e. within noise) are skipped.
+     *
+     * @return The fitted exponent, or 0 if there are too few points to fit
+     */
+    static double marginalExponent(int[] sizes, double[] millis) {
+        var xs = new ArrayList<Double>();
+        var ys = new ArrayList<Double>();
+
+        for (int i = 1; i < sizes.length; i++) {
+            var marginalMillis = millis[i] - millis[0];
+
+            if (marginalMillis > 0 && sizes[i] > sizes[0]) {
+                xs.add(Math.log(sizes[i] - sizes[0]));
+                ys.add(Math.log(marginalMillis));
+            }
+        }
+
+        if (xs.size() < 2) {
+            return 0;
+        }
+
+        var meanX = xs.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+        var meanY = ys.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+
+        double covariance = 0;
+        double variance = 0;
+        for (int i = 0; i < xs.size(); i++) {
+            covariance += (xs.get(i) - meanX) * (ys.get(i) - meanY);
+            variance += (xs.get(i) - meanX) * (xs.get(i) - meanX);
+        }
+
+        return variance == 0 ? 0 : covariance / variance;
+    }
+
+    private static void printTable(int[] sizes, Map<String, double[]> results, Map<String, Double> exponents) {
+        var header = new StringBuilder("%-10s".formatted("libraries"));
+        COMMANDS.forEach(command -> header.append("%12s".formatted(command + " (ms)")));
+        System.out.println(header);
+
+        for (int i = 0; i < sizes.length; i++) {
+            var row = new StringBuilder("%-10d".formatted(sizes[i]));
+            for (var command : COMMANDS) {
+                row.append("%12.1f".formatted(results.get(command)[i]));
+            }
+
+            System.out.println(row);
+        }
+
+        var exponentRow = new StringBuilder("%-10s".formatted("exponent"));
+        COMMANDS.forEach(command -> exponentRow.append("%12.2f".formatted(exponents.get(command))));
+        System.out.println(exponentRow);
+    }
+
+    private static void writeResults(Path outputDirectory, int[] sizes, BenchmarkFixtures.LibrarySize librarySize, Map<String, double[]> results, Map<String, Double> exponents) throws IOException {
+        var root = new JsonObject();
+
+        var corpus = new JsonObject();
+        corpus.addProperty("filesPerLibrary", librarySize.sourceFiles());
+        corpus.addProperty("linesPerFile", librarySize.linesPerFile());
+        corpus.addProperty("nativeClasses", librarySize.nativeClasses());
+        corpus.addProperty("nativeClassBytes", librarySize.nativeClassBytes());
+        root.add("corpus", corpus);
+
+        var sizesArray = new JsonArray();
+        Arrays.stream(sizes).forEach(sizesArray::add);
+        root.add("sizes", sizesArray);
+
+        var commands = new JsonObject();
+        results.forEach((command, millis) -> {
+            var commandResult = new JsonObject();
+
+            var millisArray = new JsonArray();
+            Arrays.stream(millis).forEach(millisArray::add);
+            commandResult.add("medianMillis", millisArray);
+            commandResult.addProperty("exponent", exponents.get(command));
+            commandResult.addProperty("checked", SCALED_COMMANDS.contains(command));
+
+            commands.add(command, commandResult);
+        });
+        root.add("commands", commands);
+
+        Files.writeString(outputDirectory.resolve("scaling.json"), new GsonBuilder().setPrettyPrinting().create().toJson(root) + "\n");
+
+        // For plotting
+        var csv = new StringBuilder("libraries," + String.join(",", COMMANDS) + "\n");
+        for (int i = 0; i < sizes.length; i++) {
+            csv.append(sizes[i]);
+            for (var command : COMMANDS) {
+                csv.append(',').append("%.1f".formatted(results.get(command)[i]));
+            }
+
+            csv.append('\n');
+        }
+
+        Files.writeString(outputDirectory.resolve("scaling.csv"), csv);
+
+        System.out.printf("Wrote results to %s%n", outputDirectory.toAbsolutePath());
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        var options = new LinkedHashMap<String, String>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --<option> <value>, got " + args[i]);
+            }
+
+            options.put(args[i].substring(2), args[++i]);
+        }
+
+        return options;
+    }
+
+    private static String require(Map<String, String> options, String name) {
+        var value = options.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("--%s is required".formatted(name));
+        }
+
+        return value;
+    }
+
+    /**
+     * Runs the toolchain jar in a fresh JVM, with the corpus' directory as its user home.
+     */
+    private record ToolchainRunner(Path toolchainJar, ScalingCorpus corpus) {
+
+        double medianMillis(String command, int repetitions) throws IOException, InterruptedException {
+            var millis = new double[repetitions];
+
+            for (int i = 0; i < repetitions; i++) {
+                millis[i] = timeMillis(command);
+            }
+
+            Arrays.sort(millis);
+            return millis[repetitions / 2];
+        }
+
+        private double timeMillis(String command) throws IOException, InterruptedException {
+            var outputDirectory = Files.createTempDirectory(corpus.home(), command);
+
+            var toolchainArgs = switch (command) {
+                case "run" -> List.of("run", "--no-startup-cache", "--lockfile", corpus.lockfile().toString(), corpus.program().toString());
+                // The build cache would restore every library after the first repetition
+                case "build" -> List.of("build", corpus.librariesDirectory().toString(), "--all", "--no-build-cache", "--output-file", outputDirectory.toString());
+                case "doc" -> List.of("doc", corpus.libraryQll().toString(), "--output-file", outputDirectory.toString(), "--cache-path", outputDirectory.resolve("cache").toString());
+                default -> throw new IllegalArgumentException("Unknown command " + command);
+            };
+
+            var processCommand = new ArrayList<String>();
+            processCommand.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            processCommand.add("-Duser.home=" + corpus.home());
+            processCommand.add("-jar");
+            processCommand.add(toolchainJar.toString());
+            processCommand.addAll(toolchainArgs);
+
+            var start = System.nanoTime();
+            var process = new ProcessBuilder(processCommand)
+                    .directory(corpus.lockfile().getParent().toFile())
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            var exitCode = process.waitFor();
+            var elapsedMillis = (System.nanoTime() - start) / 1_000_000.0;
+
+            BenchmarkFixtures.deleteRecursively(outputDirectory);
+
+            if (exitCode != 0) {
+                throw new IOException("qilletni %s exited with code %d for %d libraries".formatted(command, exitCode, corpus.libraryCount()));
+            }
+
+            return elapsedMillis;
+        }
+    }
+}
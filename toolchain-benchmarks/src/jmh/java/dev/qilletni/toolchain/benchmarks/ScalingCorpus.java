@@ -0,0 +1,92 @@
+package dev.qilletni.toolchain.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A generated ecosystem of libraries for end-to-end scaling benchmarks: a fake user home with N packaged libraries in
+ * <code>.qilletni/packages</code>, a lockfile referencing all of them, a program to run, and the N unbuilt library
+ * projects they were packaged from.
+ *
+ * @param home               The directory used as <code>user.home</code>
+ * @param lockfile           The lockfile referencing every library
+ * @param program            A minimal program to run with the lockfile
+ * @param librariesDirectory The directory holding every unbuilt library project, for <code>qilletni build --all</code>
+ * @param libraryQll         One of the packaged libraries, for <code>qilletni doc</code>
+ * @param libraryCount       The number of libraries in the corpus
+ */
+public record ScalingCorpus(Path home, Path lockfile, Path program, Path librariesDirectory, Path libraryQll, int libraryCount) {
+
+    /**
+     * Generates a corpus, building every library with <code>QllPackager</code>.
+     *
+     * @param root         The directory to generate the corpus in
+     * @param libraryCount The number of libraries
+     * @param size         The size of each library
+     * @return The generated corpus
+     */
+    public static ScalingCorpus generate(Path root, int libraryCount, BenchmarkFixtures.LibrarySize size) throws IOException {
+        var home = root.resolve("home");
+        var packagesDirectory = Files.createDirectories(home.resolve(".qilletni").resolve("packages"));
+        var workDirectory = Files.createDirectories(root.resolve("work"));
+        var librariesDirectory = Files.createDirectories(root.resolve("libraries"));
+
+        var resolvedNames = new ArrayList<String>(libraryCount);
+        Path firstQll = null;
+
+        for (int i = 0; i < libraryCount; i++) {
+            var name = "scaling-lib%d".formatted(i);
+            var builtQll = BenchmarkFixtures.writeQll(workDirectory.resolve(name), name, size);
+            BenchmarkFixtures.writeLibraryProject(librariesDirectory.resolve(name), name, size, Map.of());
+
+            var resolvedName = name + "-1.0.0";
+            var packagedQll = Files.move(builtQll, packagesDirectory.resolve(resolvedName + ".qll"));
+            BenchmarkFixtures.deleteRecursively(workDirectory.resolve(name));
+
+            resolvedNames.add(resolvedName);
+            if (firstQll == null) {
+                firstQll = packagedQll;
+            }
+        }
+
+        var projectDirectory = Files.createDirectories(root.resolve("project"));
+        var lockfile = writeLockfile(projectDirectory.resolve("qilletni.lock"), resolvedNames);
+
+        var program = projectDirectory.resolve("main.ql");
+        Files.writeString(program, "print(\"scaling\")\n");
+
+        return new ScalingCorpus(home, lockfile, program, librariesDirectory, firstQll, libraryCount);
+    }
+
+    /**
+     * Writes a lockfile resolving every library to <code>&lt;name&gt;-&lt;version&gt;.qll</code> in the packages
+     * directory. The file is written as JSON, which is also valid YAML.
+     * <p>
+     * This is the only place that knows the lockfile's layout, which is owned by qilletni-pkgutil's
+     * <code>LockFile</code>; update it alongside pkgutil if the format changes.
+     */
+    private static Path writeLockfile(Path lockfile, List<String> resolvedNames) throws IOException {
+        var packages = new ArrayList<String>(resolvedNames.size());
+
+        for (var resolvedName : resolvedNames) {
+            var name = resolvedName.substring(0, resolvedName.lastIndexOf('-'));
+            packages.add("""
+                        "%s": {"name": "%s", "version": "1.0.0", "resolved": "%s"}""".formatted(name, name, resolvedName));
+        }
+
+        Files.writeString(lockfile, """
+                {
+                  "version": 1,
+                  "packages": {
+                %s
+                  }
+                }
+                """.formatted(String.join(",\n", packages)));
+
+        return lockfile;
+    }
+}